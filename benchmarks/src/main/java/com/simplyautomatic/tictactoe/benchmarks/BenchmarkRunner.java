@@ -0,0 +1,33 @@
+package com.simplyautomatic.tictactoe.benchmarks;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs benchmarks, reporting throughput and allocation rate (GC profiler) by 
+ * default. Accepts the standard JMH command line options, such as a benchmark 
+ * name pattern, "-rf json -rff results.json" to save results for comparison.
+ */
+public class BenchmarkRunner {
+	
+	/**
+	 * Main method: run benchmarks
+	 * @param args JMH command line options
+	 * @throws RunnerException
+	 * @throws CommandLineOptionException 
+	 */
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.mode(Mode.Throughput)
+				.addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,60 @@
+package com.simplyautomatic.tictactoe.benchmarks;
+
+import com.simplyautomatic.tictactoe.BoardStateRepository;
+import com.simplyautomatic.tictactoe.CachedBoardStateRepository;
+import com.simplyautomatic.tictactoe.GameBoard;
+import com.simplyautomatic.tictactoe.RandomLearningStrategy;
+import com.simplyautomatic.tictactoe.SelfPlaySimulator;
+import com.simplyautomatic.tictactoe.Token;
+import java.awt.Point;
+import java.io.File;
+import java.io.IOException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmarks of full CPU move decisions, from an opening position: the learning 
+ * A.I. against a store trained by self-play. See {@link SolverMoveBenchmark} for 
+ * the exact solver.
+ */
+@State(Scope.Thread)
+public class CpuMoveBenchmark {
+	private static final int TRAINING_GAMES = 2000;
+	
+	@Param({"3", "4", "6"})
+	public int size;
+	
+	private File databaseFile;
+	private CachedBoardStateRepository losingMoves;
+	private RandomLearningStrategy learner;
+	private GameBoard board;
+	
+	@Setup(Level.Trial)
+	public void setUp() throws IOException, InterruptedException {
+		databaseFile = File.createTempFile("tictactoe-benchmark", ".db");
+		losingMoves = new CachedBoardStateRepository(new BoardStateRepository(databaseFile.getPath()));
+		new SelfPlaySimulator(losingMoves, size, 1).run(TRAINING_GAMES);
+		learner = new RandomLearningStrategy(losingMoves);
+		board = new GameBoard(size);
+		board.placeToken(Token.X, 1, 1);
+		board.placeToken(Token.O, 2, 2);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		losingMoves.close();
+		for (String suffix : new String[] {"", "-wal", "-shm"}) {
+			new File(databaseFile.getPath() + suffix).delete();
+		}
+	}
+	
+	@Benchmark
+	public Point learnerMove() {
+		return learner.selectMove(board, Token.X);
+	}
+}
@@ -0,0 +1,66 @@
+package com.simplyautomatic.tictactoe.benchmarks;
+
+import com.simplyautomatic.tictactoe.GameBoard;
+import com.simplyautomatic.tictactoe.Token;
+import java.util.Arrays;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of GameBoard moves, win checks, copies and keys, on a half-filled board.
+ */
+@State(Scope.Thread)
+public class GameBoardBenchmark {
+	@Param({"3", "4", "8", "16", "32"})
+	public int size;
+	
+	private GameBoard board;
+	private int[] emptyCells;
+	private int nextEmptyCell;
+	
+	@Setup
+	public void setUp() {
+		board = new GameBoard(size);
+		emptyCells = new int[size * size];
+		int numEmptyCells = 0;
+		Token token = Token.X;
+		for (int cell = 0; cell < size * size; cell++) {
+			// Fill alternate cells, avoiding completing a line
+			if (cell % 2 == 0 && cell % size != size - 1) {
+				board.placeToken(token, cell / size + 1, cell % size + 1);
+				token = token.getOpponent();
+			} else {
+				emptyCells[numEmptyCells++] = cell;
+			}
+		}
+		emptyCells = Arrays.copyOf(emptyCells, numEmptyCells);
+	}
+	
+	@Benchmark
+	public boolean placeTokenAndCheckWin() {
+		int cell = emptyCells[nextEmptyCell];
+		nextEmptyCell = (nextEmptyCell + 1) % emptyCells.length;
+		board.placeToken(Token.X, cell / size + 1, cell % size + 1);
+		boolean won = board.isWon() || board.isDrawn();
+		board.removeToken(cell / size + 1, cell % size + 1);
+		return won;
+	}
+	
+	@Benchmark
+	public GameBoard copy() {
+		return new GameBoard(board);
+	}
+	
+	@Benchmark
+	public byte[] getCanonicalKey() {
+		return board.getCanonicalKey();
+	}
+	
+	@Benchmark
+	public long getCanonicalZobristHash() {
+		return board.getCanonicalZobristHash();
+	}
+}
@@ -0,0 +1,52 @@
+package com.simplyautomatic.tictactoe.benchmarks;
+
+import com.simplyautomatic.tictactoe.Matrix;
+import java.util.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks of Matrix symmetry transforms.
+ */
+@State(Scope.Thread)
+public class MatrixBenchmark {
+	@Param({"3", "4", "8", "16", "32"})
+	public int size;
+	
+	private Matrix matrix;
+	
+	@Setup
+	public void setUp() {
+		matrix = new Matrix(size);
+		int value = 1;
+		for (int row = 1; row <= size; row++) {
+			for (int column = 1; column <= size; column++) {
+				matrix.setValue(row, column, value);
+				value = value == 1 ? -1 : value == -1 ? 0 : 1;
+			}
+		}
+	}
+	
+	@Benchmark
+	public Matrix rotate() {
+		return matrix.rotate();
+	}
+	
+	@Benchmark
+	public Matrix mirror() {
+		return matrix.mirror();
+	}
+	
+	@Benchmark
+	public Matrix flip() {
+		return matrix.flip();
+	}
+	
+	@Benchmark
+	public List<String> getAllEquivalentStrings() {
+		return matrix.getAllEquivalentStrings();
+	}
+}
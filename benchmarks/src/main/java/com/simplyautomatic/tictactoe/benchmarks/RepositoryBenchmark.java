@@ -0,0 +1,95 @@
+package com.simplyautomatic.tictactoe.benchmarks;
+
+import com.simplyautomatic.tictactoe.BoardEncoding;
+import com.simplyautomatic.tictactoe.BoardStateRepository;
+import com.simplyautomatic.tictactoe.GameBoard;
+import com.simplyautomatic.tictactoe.Token;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmarks of BoardStateRepository adds and lookups. A cold database starts 
+ * empty; a warm database is filled with random 5x5 board states, and has been 
+ * read in full before measuring.
+ */
+@State(Scope.Thread)
+public class RepositoryBenchmark {
+	private static final int BOARD_SIZE = 5;
+	private static final int WARM_STATES = 100000;
+	
+	@Param({"cold", "warm"})
+	public String database;
+	
+	private File databaseFile;
+	private BoardStateRepository repository;
+	private List<byte[]> storedKeys;
+	private Random random;
+	private int nextKey;
+	
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		databaseFile = File.createTempFile("tictactoe-benchmark", ".db");
+		repository = new BoardStateRepository(databaseFile.getPath());
+		random = new Random(42);
+		storedKeys = new ArrayList<>();
+		if ("warm".equals(database)) {
+			for (int i = 0; i < WARM_STATES; i++) {
+				storedKeys.add(randomKey());
+			}
+			repository.addAll(storedKeys);
+			repository.forEach(key -> { });
+		} else {
+			storedKeys.add(randomKey());
+			repository.add(storedKeys.get(0));
+		}
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		repository.close();
+		for (String suffix : new String[] {"", "-wal", "-shm"}) {
+			new File(databaseFile.getPath() + suffix).delete();
+		}
+	}
+	
+	@Benchmark
+	public void add() {
+		repository.add(randomKey());
+	}
+	
+	@Benchmark
+	public boolean containsStored() {
+		nextKey = (nextKey + 1) % storedKeys.size();
+		return repository.contains(storedKeys.get(nextKey));
+	}
+	
+	@Benchmark
+	public boolean containsMissing() {
+		return repository.contains(randomKey());
+	}
+	
+	// Helper to make the key of a random board
+	private byte[] randomKey() {
+		GameBoard board = new GameBoard(BOARD_SIZE);
+		Token token = Token.X;
+		for (int move = 0; move < 8; move++) {
+			int row = random.nextInt(BOARD_SIZE) + 1;
+			int column = random.nextInt(BOARD_SIZE) + 1;
+			if (board.getTokenAt(row, column) == null) {
+				board.placeToken(token, row, column);
+				token = token.getOpponent();
+			}
+		}
+		return BoardEncoding.encode(board);
+	}
+}
@@ -0,0 +1,45 @@
+package com.simplyautomatic.tictactoe.benchmarks;
+
+import com.simplyautomatic.tictactoe.GameBoard;
+import com.simplyautomatic.tictactoe.NegamaxSolver;
+import com.simplyautomatic.tictactoe.Token;
+import java.awt.Point;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark of the exact solver's move, from an opening position, on each board 
+ * size it can solve. The transposition table is cleared before each move, so 
+ * every move is solved from scratch, not looked up from the one before.
+ */
+@State(Scope.Thread)
+public class SolverMoveBenchmark {
+	
+	@Param({"3", "4"})
+	public int size;
+	
+	private NegamaxSolver solver;
+	private GameBoard board;
+	
+	@Setup(Level.Trial)
+	public void setUp() {
+		solver = new NegamaxSolver();
+		board = new GameBoard(size);
+		board.placeToken(Token.X, 1, 1);
+		board.placeToken(Token.O, 2, 2);
+	}
+	
+	@Setup(Level.Invocation)
+	public void clearSolver() {
+		solver.clear();
+	}
+	
+	@Benchmark
+	public Point solverMove() {
+		return solver.findBestMove(board, Token.X);
+	}
+}
@@ -0,0 +1,129 @@
+package com.simplyautomatic.tictactoe;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe writer of board states to a store. Any number of threads may add
+ * board states, which are queued, and written by a single background thread in
+ * batches, so each batch is one transaction. Closing the writer writes any queued
+ * board states before returning.
+ */
+public class BatchedBoardStateWriter implements AutoCloseable {
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+	private static final byte[] END_OF_QUEUE = new byte[0];
+
+	private final BoardStateStore store;
+	private final int batchSize;
+	private final BlockingQueue<byte[]> queue;
+	private final Thread writerThread;
+	private final AtomicLong numWritten;
+	private volatile boolean closed;
+
+	/**
+	 * Construct a writer to specified store, with default batch size
+	 * @param store 
+	 */
+	public BatchedBoardStateWriter(BoardStateStore store) {
+		this(store, DEFAULT_BATCH_SIZE);
+	}
+	
+	/**
+	 * Construct a writer to specified store
+	 * @param store
+	 * @param batchSize maximum number of board states to write in one batch
+	 */
+	public BatchedBoardStateWriter(BoardStateStore store, int batchSize) {
+		this.store = store;
+		this.batchSize = batchSize;
+		this.queue = new LinkedBlockingQueue<>();
+		this.numWritten = new AtomicLong();
+		this.writerThread = new Thread(this::writeBatches, "board-state-writer");
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+	}
+	
+	/**
+	 * Queue a board state key to be written
+	 * @param boardKey
+	 * @throws IllegalStateException if writer is closed
+	 */
+	public void add(byte[] boardKey) throws IllegalStateException {
+		// Check and enqueue under the lock close() takes, so no key is queued after END_OF_QUEUE
+		synchronized (queue) {
+			if (closed) {
+				throw new IllegalStateException("Writer is closed");
+			}
+			queue.add(boardKey);
+		}
+	}
+	
+	/**
+	 * Get number of board states written to the store so far
+	 * @return 
+	 */
+	public long getNumWritten() {
+		return numWritten.get();
+	}
+	
+	/**
+	 * Write all queued board states, and stop the writer thread. The store is not closed.
+	 */
+	@Override
+	public void close() {
+		synchronized (queue) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			queue.add(END_OF_QUEUE);
+		}
+		try {
+			writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	// Writer thread loop: wait for board states, then write all that are queued, in batches
+	private void writeBatches() {
+		List<byte[]> batch = new ArrayList<>(batchSize);
+		boolean endOfQueue = false;
+		while (!endOfQueue || !queue.isEmpty()) {
+			try {
+				if (!endOfQueue) {
+					batch.add(queue.take());
+				}
+			} catch (InterruptedException e) {
+				endOfQueue = true;
+			}
+			queue.drainTo(batch, batchSize - batch.size());
+			if (batch.remove(END_OF_QUEUE)) {
+				endOfQueue = true;
+			}
+			try {
+				store.addAll(batch);
+				numWritten.addAndGet(batch.size());
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+				writeEach(batch);
+			}
+			batch.clear();
+		}
+	}
+	
+	// Helper to write a failed batch one board state at a time, so only bad keys are lost
+	private void writeEach(List<byte[]> batch) {
+		for (byte[] boardKey : batch) {
+			try {
+				store.add(boardKey);
+				numWritten.incrementAndGet();
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
@@ -0,0 +1,260 @@
+package com.simplyautomatic.tictactoe;
+
+/**
+ * Primitive bitboard storage for a grid of tokens. Cells are 0-indexed in
+ * row-major order, and hold the numerical value of a token (1 or -1), or 0 if empty.
+ * Each token has its own bit set: boards up to 8x8 fit in a single pair of longs,
+ * larger boards use a pair of long arrays. Huge boards, of more than
+ * {@link #MAX_DENSE_CELLS} cells, are stored sparsely instead: the bit sets are
+ * split into fixed-size chunks, each allocated only once a token is placed in it,
+ * so memory grows with the area played in, not the size of the board.
+ */
+public class BitBoard {
+	public static final int MAX_DENSE_CELLS = 1 << 16;
+	private static final int WORD_BITS = Long.SIZE;
+	private static final int CHUNK_WORDS_BITS = 8;
+	private static final int CHUNK_WORDS = 1 << CHUNK_WORDS_BITS;
+
+	private final int numRows;
+	private final int numColumns;
+	private final int numCells;
+
+	// Bit sets for boards up to 8x8
+	private long xBits;
+	private long oBits;
+
+	// Bit sets for larger boards, or null if board is small or huge
+	private final long[] xWords;
+	private final long[] oWords;
+
+	// Chunks of bit sets for huge boards, each null until used, or null if board is not huge
+	private final long[][] xChunks;
+	private final long[][] oChunks;
+
+	/**
+	 * Construct an empty bitboard, of width and height specified.
+	 * @param size 
+	 */
+	public BitBoard(int size) {
+		this(size, size);
+	}
+	
+	/**
+	 * Construct an empty bitboard, of specified number of rows and columns.
+	 * @param numRows
+	 * @param numColumns 
+	 */
+	public BitBoard(int numRows, int numColumns) {
+		this.numRows = numRows;
+		this.numColumns = numColumns;
+		this.numCells = numRows * numColumns;
+		int numWords = (int) (((long) numCells + WORD_BITS - 1) / WORD_BITS);
+		if (numCells <= WORD_BITS || numCells > MAX_DENSE_CELLS) {
+			this.xWords = null;
+			this.oWords = null;
+		} else {
+			this.xWords = new long[numWords];
+			this.oWords = new long[numWords];
+		}
+		if (numCells > MAX_DENSE_CELLS) {
+			int numChunks = (numWords + CHUNK_WORDS - 1) / CHUNK_WORDS;
+			this.xChunks = new long[numChunks][];
+			this.oChunks = new long[numChunks][];
+		} else {
+			this.xChunks = null;
+			this.oChunks = null;
+		}
+	}
+	
+	/**
+	 * Copy-constructor, to make a new bitboard identical to existing one
+	 * @param other 
+	 */
+	public BitBoard(BitBoard other) {
+		this.numRows = other.numRows;
+		this.numColumns = other.numColumns;
+		this.numCells = other.numCells;
+		this.xBits = other.xBits;
+		this.oBits = other.oBits;
+		this.xWords = other.xWords != null ? other.xWords.clone() : null;
+		this.oWords = other.oWords != null ? other.oWords.clone() : null;
+		this.xChunks = other.xChunks != null ? copyChunks(other.xChunks) : null;
+		this.oChunks = other.oChunks != null ? copyChunks(other.oChunks) : null;
+	}
+	
+	// Helper to deep-copy chunks, copying only those in use
+	private static long[][] copyChunks(long[][] chunks) {
+		long[][] copy = new long[chunks.length][];
+		for (int chunk = 0; chunk < chunks.length; chunk++) {
+			if (chunks[chunk] != null) {
+				copy[chunk] = chunks[chunk].clone();
+			}
+		}
+		return copy;
+	}
+	
+	/**
+	 * Get number of rows.
+	 * @return 
+	 */
+	public int getNumRows() {
+		return numRows;
+	}
+	
+	/**
+	 * Get number of columns.
+	 * @return 
+	 */
+	public int getNumColumns() {
+		return numColumns;
+	}
+	
+	/**
+	 * Get total number of cells.
+	 * @return 
+	 */
+	public int getNumCells() {
+		return numCells;
+	}
+	
+	/**
+	 * Get value at specified (0-indexed) cell.
+	 * @param cell
+	 * @return 1 for X, -1 for O, 0 if empty
+	 */
+	public int getValue(int cell) {
+		if (xChunks != null) {
+			return getChunkedValue(cell);
+		}
+		if (xWords == null) {
+			long mask = 1L << cell;
+			if ((xBits & mask) != 0) {
+				return Token.X.getValue();
+			}
+			return (oBits & mask) != 0 ? Token.O.getValue() : 0;
+		}
+		int word = cell / WORD_BITS;
+		long mask = 1L << cell;
+		if ((xWords[word] & mask) != 0) {
+			return Token.X.getValue();
+		}
+		return (oWords[word] & mask) != 0 ? Token.O.getValue() : 0;
+	}
+	
+	/**
+	 * Set value at specified (0-indexed) cell.
+	 * @param cell
+	 * @param value 1 for X, -1 for O, 0 to clear
+	 */
+	public void setValue(int cell, int value) {
+		if (xChunks != null) {
+			setChunkedValue(cell, value);
+			return;
+		}
+		long mask = 1L << cell;
+		if (xWords == null) {
+			xBits &= ~mask;
+			oBits &= ~mask;
+			if (value == Token.X.getValue()) {
+				xBits |= mask;
+			} else if (value == Token.O.getValue()) {
+				oBits |= mask;
+			}
+			return;
+		}
+		int word = cell / WORD_BITS;
+		xWords[word] &= ~mask;
+		oWords[word] &= ~mask;
+		if (value == Token.X.getValue()) {
+			xWords[word] |= mask;
+		} else if (value == Token.O.getValue()) {
+			oWords[word] |= mask;
+		}
+	}
+	
+	// Helper to get value at (0-indexed) cell of a huge board: empty if its chunk is unused
+	private int getChunkedValue(int cell) {
+		int word = cell / WORD_BITS;
+		int chunk = word >>> CHUNK_WORDS_BITS;
+		if (xChunks[chunk] == null) {
+			return 0;
+		}
+		long mask = 1L << cell;
+		if ((xChunks[chunk][word & (CHUNK_WORDS - 1)] & mask) != 0) {
+			return Token.X.getValue();
+		}
+		return (oChunks[chunk][word & (CHUNK_WORDS - 1)] & mask) != 0 ? Token.O.getValue() : 0;
+	}
+	
+	// Helper to set value at (0-indexed) cell of a huge board, allocating its chunk if needed
+	private void setChunkedValue(int cell, int value) {
+		int word = cell / WORD_BITS;
+		int chunk = word >>> CHUNK_WORDS_BITS;
+		long mask = 1L << cell;
+		if (xChunks[chunk] == null) {
+			if (value == 0) {
+				return;
+			}
+			xChunks[chunk] = new long[CHUNK_WORDS];
+			oChunks[chunk] = new long[CHUNK_WORDS];
+		}
+		word &= CHUNK_WORDS - 1;
+		xChunks[chunk][word] &= ~mask;
+		oChunks[chunk][word] &= ~mask;
+		if (value == Token.X.getValue()) {
+			xChunks[chunk][word] |= mask;
+		} else if (value == Token.O.getValue()) {
+			oChunks[chunk][word] |= mask;
+		}
+	}
+	
+	/**
+	 * Determine whether the bitboard is stored sparsely, as it is huge
+	 * @return 
+	 */
+	public boolean isSparse() {
+		return xChunks != null;
+	}
+	
+	/**
+	 * Convert the bitboard to a simple string of cell values, matching the format
+	 * of {@link Matrix#toString()}
+	 * @return 
+	 */
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder(numCells + 8);
+		for (int cell = 0; cell < numCells; cell++) {
+			text.append(getValue(cell));
+		}
+		return text.toString();
+	}
+	
+	/**
+	 * Main method, for testing
+	 * @param args 
+	 */
+	public static void main(String[] args) {
+		BitBoard small = new BitBoard(3);
+		small.setValue(0, 1);
+		small.setValue(4, -1);
+		small.setValue(8, 1);
+		System.out.println(small + " / copy " + new BitBoard(small));
+		small.setValue(8, 0);
+		System.out.println(small);
+		BitBoard large = new BitBoard(9);
+		large.setValue(0, 1);
+		large.setValue(64, -1);
+		large.setValue(80, 1);
+		BitBoard copy = new BitBoard(large);
+		large.setValue(80, 0);
+		System.out.println(large + "\n" + copy);
+		BitBoard huge = new BitBoard(10000);
+		huge.setValue(50005000, 1);
+		huge.setValue(99999999, -1);
+		BitBoard hugeCopy = new BitBoard(huge);
+		huge.setValue(50005000, 0);
+		System.out.println("huge: " + huge.getValue(50005000) + " " + huge.getValue(99999999) + " / copy "
+				+ hugeCopy.getValue(50005000) + " " + hugeCopy.getValue(99999999));
+	}
+}
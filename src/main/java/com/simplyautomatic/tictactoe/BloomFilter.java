@@ -0,0 +1,69 @@
+package com.simplyautomatic.tictactoe;
+
+/**
+ * Simple Bloom filter of byte array keys. Lookups may return false positives, at
+ * roughly the configured rate once the expected number of keys has been added, but
+ * never false negatives.
+ */
+public class BloomFilter {
+	private final long[] bits;
+	private final long numBits;
+	private final int numHashes;
+
+	/**
+	 * Construct a Bloom filter, sized for the expected number of keys and false
+	 * positive probability.
+	 * @param expectedKeys
+	 * @param falsePositiveRate 
+	 */
+	public BloomFilter(long expectedKeys, double falsePositiveRate) {
+		long optimalBits = (long) Math.ceil(-Math.max(expectedKeys, 1) * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+		int numWords = (int) Math.min((optimalBits + Long.SIZE - 1) / Long.SIZE, Integer.MAX_VALUE - 8);
+		this.bits = new long[Math.max(numWords, 1)];
+		this.numBits = (long) bits.length * Long.SIZE;
+		this.numHashes = Math.max(1, (int) Math.round((double) numBits / Math.max(expectedKeys, 1) * Math.log(2)));
+	}
+	
+	/**
+	 * Add a key to the filter.
+	 * @param key 
+	 */
+	public void add(byte[] key) {
+		long hash1 = hash(key, 0x9E3779B97F4A7C15L);
+		long hash2 = hash(key, 0xC2B2AE3D27D4EB4FL) | 1;
+		for (int i = 0; i < numHashes; i++) {
+			long bit = Math.floorMod(hash1 + i * hash2, numBits);
+			bits[(int) (bit >>> 6)] |= 1L << bit;
+		}
+	}
+	
+	/**
+	 * Check whether a key may have been added to the filter.
+	 * @param key
+	 * @return false if key was definitely never added
+	 */
+	public boolean mightContain(byte[] key) {
+		long hash1 = hash(key, 0x9E3779B97F4A7C15L);
+		long hash2 = hash(key, 0xC2B2AE3D27D4EB4FL) | 1;
+		for (int i = 0; i < numHashes; i++) {
+			long bit = Math.floorMod(hash1 + i * hash2, numBits);
+			if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	// Helper to compute a 64-bit hash of a key, mixing each byte with specified seed
+	private static long hash(byte[] key, long seed) {
+		long hash = seed ^ key.length;
+		for (byte b : key) {
+			hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+			hash ^= hash >>> 29;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
@@ -0,0 +1,261 @@
+package com.simplyautomatic.tictactoe;
+
+/**
+ * Compact binary encodings of game boards, used as storage keys and for hashing.
+ * <p>
+ * The byte encoding is fixed-width for each board size: one byte holding the board
+ * size, followed by 2 bits per cell (0 empty, 1 X, 2 O), packed in row-major order
+ * starting from the high bits of each byte. Since cell codes follow the same order
+ * as {@link GameBoard#getCanonicalSymmetry()}, comparing keys as unsigned bytes
+ * orders boards the same way. Boards which are rectangular, or won by fewer than a
+ * full line, have a longer header instead: a zero byte, then one byte each for the
+ * number of rows, number of columns, and number in a row to win.
+ * <p>
+ * The long encoding packs cells in base 3 instead, which fits boards of up to 39
+ * cells (3^39 is the largest power of 3 below 2^63), such as 6x6, in a single long,
+ * for in-memory hashing where the size is known.
+ */
+public final class BoardEncoding {
+	public static final int MAX_ENCODED_SIZE = 255;
+	public static final int MAX_PACKED_CELLS = 39;
+	private static final int CELLS_PER_BYTE = 4;
+	private static final int BITS_PER_CELL = 2;
+	private static final int SHAPE_HEADER_LENGTH = 4;
+
+	private BoardEncoding() {
+	}
+	
+	/**
+	 * Determine whether boards of specified shape can be encoded: if not, they
+	 * cannot be stored, or learned from.
+	 * @param numRows
+	 * @param numColumns
+	 * @return 
+	 */
+	public static boolean canEncode(int numRows, int numColumns) {
+		return numRows <= MAX_ENCODED_SIZE && numColumns <= MAX_ENCODED_SIZE;
+	}
+	
+	/**
+	 * Get the length of the byte encoding, for specified board size.
+	 * @param boardSize
+	 * @return 
+	 */
+	public static int getKeyLength(int boardSize) {
+		return 1 + (boardSize * boardSize + CELLS_PER_BYTE - 1) / CELLS_PER_BYTE;
+	}
+	
+	/**
+	 * Get the length of the byte encoding, for specified board shape.
+	 * @param numRows
+	 * @param numColumns
+	 * @param winLength
+	 * @return 
+	 */
+	public static int getKeyLength(int numRows, int numColumns, int winLength) {
+		if (numRows == numColumns && winLength == numRows) {
+			return getKeyLength(numRows);
+		}
+		return SHAPE_HEADER_LENGTH + (numRows * numColumns + CELLS_PER_BYTE - 1) / CELLS_PER_BYTE;
+	}
+	
+	/**
+	 * Encode a board as bytes.
+	 * @param board
+	 * @return 
+	 */
+	public static byte[] encode(GameBoard board) {
+		return encode(board, Symmetry.IDENTITY);
+	}
+	
+	/**
+	 * Encode a board as bytes, after transforming it by specified symmetry.
+	 * @param board
+	 * @param symmetry
+	 * @return
+	 * @throws IllegalArgumentException if board is too large to encode
+	 */
+	public static byte[] encode(GameBoard board, int symmetry) throws IllegalArgumentException {
+		int numRows = board.getNumRows();
+		int numColumns = board.getNumColumns();
+		if (!canEncode(numRows, numColumns)) {
+			throw new IllegalArgumentException("Board too large to encode: " + numRows + "x" + numColumns);
+		}
+		byte[] key = new byte[getKeyLength(numRows, numColumns, board.getWinLength())];
+		int headerLength = key.length - (numRows * numColumns + CELLS_PER_BYTE - 1) / CELLS_PER_BYTE;
+		if (headerLength == 1) {
+			key[0] = (byte) numRows;
+		} else {
+			key[1] = (byte) numRows;
+			key[2] = (byte) numColumns;
+			key[3] = (byte) board.getWinLength();
+		}
+		int numCells = numRows * numColumns;
+		for (int cell = 0; cell < numCells; cell++) {
+			int code = toCode(board.getSymmetricValue(symmetry, cell));
+			int shift = (CELLS_PER_BYTE - 1 - cell % CELLS_PER_BYTE) * BITS_PER_CELL;
+			key[headerLength + cell / CELLS_PER_BYTE] |= code << shift;
+		}
+		return key;
+	}
+	
+	/**
+	 * Decode a board from bytes produced by {@link #encode(GameBoard)}.
+	 * @param key
+	 * @return
+	 * @throws IllegalArgumentException if key is not a valid encoding
+	 */
+	public static GameBoard decode(byte[] key) throws IllegalArgumentException {
+		int numRows = key.length > 0 ? key[0] & 0xFF : 0;
+		int numColumns = numRows;
+		int winLength = numRows;
+		int headerLength = 1;
+		if (numRows == 0 && key.length >= SHAPE_HEADER_LENGTH) {
+			numRows = key[1] & 0xFF;
+			numColumns = key[2] & 0xFF;
+			winLength = key[3] & 0xFF;
+			headerLength = SHAPE_HEADER_LENGTH;
+		}
+		if (numRows == 0 || numColumns == 0 || winLength == 0 || winLength > Math.max(numRows, numColumns)
+				|| key.length != getKeyLength(numRows, numColumns, winLength)) {
+			throw new IllegalArgumentException("Invalid board key");
+		}
+		GameBoard board = new GameBoard(numRows, numColumns, winLength);
+		int numCells = numRows * numColumns;
+		for (int cell = 0; cell < numCells; cell++) {
+			int shift = (CELLS_PER_BYTE - 1 - cell % CELLS_PER_BYTE) * BITS_PER_CELL;
+			int code = (key[headerLength + cell / CELLS_PER_BYTE] >> shift) & 3;
+			if (code == 3) {
+				throw new IllegalArgumentException("Invalid board key");
+			} else if (code != 0) {
+				board.placeToken(fromCode(code), cell / numColumns + 1, cell % numColumns + 1);
+			}
+		}
+		return board;
+	}
+	
+	/**
+	 * Decode a square board from its board string (see {@link GameBoard#getBoardString()}),
+	 * as stored by older versions: the token value of each cell (0, 1 or -1), in 
+	 * row-major order.
+	 * @param boardString
+	 * @return
+	 * @throws IllegalArgumentException if string is not a valid board string
+	 */
+	public static GameBoard decodeBoardString(String boardString) throws IllegalArgumentException {
+		int[] values = new int[boardString.length()];
+		int numCells = 0;
+		for (int index = 0; index < boardString.length(); index++) {
+			char c = boardString.charAt(index);
+			if (c == '-' && index + 1 < boardString.length() && boardString.charAt(index + 1) == '1') {
+				values[numCells++] = Token.O.getValue();
+				index++;
+			} else if (c == '0' || c == '1') {
+				values[numCells++] = c - '0';
+			} else {
+				throw new IllegalArgumentException("Invalid board string: " + boardString);
+			}
+		}
+		int boardSize = (int) Math.round(Math.sqrt(numCells));
+		if (boardSize < 1 || boardSize * boardSize != numCells || boardSize > MAX_ENCODED_SIZE) {
+			throw new IllegalArgumentException("Invalid board string: " + boardString);
+		}
+		GameBoard board = new GameBoard(boardSize);
+		for (int cell = 0; cell < numCells; cell++) {
+			if (values[cell] != 0) {
+				board.placeToken(Token.valueOf(values[cell]), cell / boardSize + 1, cell % boardSize + 1);
+			}
+		}
+		return board;
+	}
+	
+	/**
+	 * Pack a board into a long, in base 3.
+	 * @param board
+	 * @return 
+	 */
+	public static long pack(GameBoard board) {
+		return pack(board, Symmetry.IDENTITY);
+	}
+	
+	/**
+	 * Pack a board into a long, in base 3, after transforming it by specified symmetry.
+	 * @param board
+	 * @param symmetry
+	 * @return
+	 * @throws IllegalArgumentException if board has too many cells to pack
+	 */
+	public static long pack(GameBoard board, int symmetry) throws IllegalArgumentException {
+		int numCells = board.getNumRows() * board.getNumColumns();
+		if (numCells > MAX_PACKED_CELLS) {
+			throw new IllegalArgumentException("Board too large to pack: " + board.getNumRows() + "x" + board.getNumColumns());
+		}
+		long packed = 0;
+		for (int cell = 0; cell < numCells; cell++) {
+			packed = packed * 3 + toCode(board.getSymmetricValue(symmetry, cell));
+		}
+		return packed;
+	}
+	
+	/**
+	 * Unpack a board of specified size from a long produced by {@link #pack(GameBoard)}.
+	 * @param packed
+	 * @param boardSize
+	 * @return 
+	 */
+	public static GameBoard unpack(long packed, int boardSize) {
+		GameBoard board = new GameBoard(boardSize);
+		for (int cell = boardSize * boardSize - 1; cell >= 0; cell--) {
+			int code = (int) (packed % 3);
+			packed /= 3;
+			if (code != 0) {
+				board.placeToken(fromCode(code), cell / boardSize + 1, cell % boardSize + 1);
+			}
+		}
+		return board;
+	}
+	
+	/**
+	 * Convert a key to a hex string, for debugging.
+	 * @param key
+	 * @return 
+	 */
+	public static String toHexString(byte[] key) {
+		StringBuilder text = new StringBuilder(2 * key.length);
+		for (byte b : key) {
+			text.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return text.toString();
+	}
+	
+	// Helper to convert token value to cell code
+	private static int toCode(int value) {
+		return value == 0 ? 0 : value == Token.X.getValue() ? 1 : 2;
+	}
+	
+	// Helper to convert (non-zero) cell code to token
+	private static Token fromCode(int code) {
+		return code == 1 ? Token.X : Token.O;
+	}
+	
+	/**
+	 * Main method, for testing
+	 * @param args 
+	 */
+	public static void main(String[] args) {
+		GameBoard gb = new GameBoard(3);
+		gb.placeToken(Token.X, 1, 1);
+		gb.placeToken(Token.O, 2, 2);
+		gb.placeToken(Token.X, 3, 3);
+		byte[] key = encode(gb);
+		System.out.println(gb.getBoardString() + " -> " + toHexString(key) + " -> " + decode(key).getBoardString());
+		long packed = pack(gb);
+		System.out.println(gb.getBoardString() + " -> " + packed + " -> " + unpack(packed, 3).getBoardString());
+		System.out.println("canonical: " + toHexString(gb.getCanonicalKey()));
+		GameBoard gomoku = new GameBoard(6, 7, 4);
+		gomoku.placeToken(Token.X, 6, 1);
+		gomoku.placeToken(Token.O, 5, 1);
+		key = gomoku.getCanonicalKey();
+		System.out.println(gomoku.getBoardString() + " -> " + toHexString(key) + " -> " + decode(key).getBoardString());
+	}
+}
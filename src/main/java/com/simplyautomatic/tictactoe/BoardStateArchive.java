@@ -0,0 +1,297 @@
+package com.simplyautomatic.tictactoe;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Bulk export, compaction and merging of board state stores. Keys are streamed
+ * one at a time, and written to stores in batches, so stores of any size can be
+ * processed without loading them into memory.
+ * <p>
+ * Stores are exported to archive files: a header (magic number and version), then
+ * each key (see {@link BoardEncoding}) as a 2-byte length followed by the key bytes,
+ * read and written through buffered file channels.
+ * <p>
+ * Keys are canonicalized as they are added to a store, so compacting a store, or
+ * merging stores trained on different machines, also converts any non-canonical
+ * keys and removes symmetric duplicates. Board strings in the legacy losing_moves
+ * table of older SQLite databases are converted too.
+ */
+public final class BoardStateArchive {
+	public static final String FILE_EXTENSION = ".keys";
+	static final int MAGIC = 0x5454544B;
+	static final int VERSION = 1;
+	private static final int HEADER_SIZE = 8;
+	private static final int LENGTH_SIZE = 2;
+	private static final int MAX_KEY_LENGTH = 0xFFFF;
+	private static final int BUFFER_SIZE = 1 << 17;
+
+	private BoardStateArchive() {
+	}
+	
+	/**
+	 * Export every key in a store to an archive file, replacing any existing file
+	 * @param store
+	 * @param file
+	 * @return number of keys exported
+	 * @throws IOException 
+	 */
+	public static long exportStore(BoardStateStore store, File file) throws IOException {
+		try (ArchiveWriter writer = new ArchiveWriter(file)) {
+			store.forEach(writer::write);
+			return writer.numWritten;
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+	
+	/**
+	 * Perform an action for each key in an archive file, streaming keys rather than
+	 * loading them all at once
+	 * @param file
+	 * @param action
+	 * @return number of keys read
+	 * @throws IOException if file cannot be read, or is not a valid archive
+	 */
+	public static long forEachKey(File file, Consumer<byte[]> action) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			buffer.flip();
+			if (!fill(channel, buffer, HEADER_SIZE) || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+				throw new IOException("Not a board state archive: " + file);
+			}
+			long numRead = 0;
+			while (fill(channel, buffer, LENGTH_SIZE)) {
+				int length = buffer.getShort() & MAX_KEY_LENGTH;
+				if (!fill(channel, buffer, length)) {
+					throw new IOException("Board state archive is truncated: " + file);
+				}
+				byte[] boardKey = new byte[length];
+				buffer.get(boardKey);
+				action.accept(boardKey);
+				numRead++;
+			}
+			if (buffer.hasRemaining()) {
+				throw new IOException("Board state archive is truncated: " + file);
+			}
+			return numRead;
+		}
+	}
+	
+	// Helper to read from a channel until a buffer holds at least specified number
+	// of bytes, returning false if the end of the channel is reached first
+	private static boolean fill(FileChannel channel, ByteBuffer buffer, int length) throws IOException {
+		while (buffer.remaining() < length) {
+			buffer.compact();
+			int numRead = channel.read(buffer);
+			buffer.flip();
+			if (numRead < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Add the canonical form of every key in a store to another store. If the
+	 * source is a SQLite repository, its legacy board strings are added too.
+	 * @param source
+	 * @param target
+	 * @return number of keys read, not counting any which are invalid
+	 */
+	public static long addCanonical(BoardStateStore source, BoardStateStore target) {
+		try (CanonicalBatch batch = new CanonicalBatch(target)) {
+			source.forEach(batch::addKey);
+			if (source instanceof BoardStateRepository) {
+				((BoardStateRepository) source).forEachLegacyState(batch::addBoardString);
+			}
+			return batch.numAdded;
+		}
+	}
+	
+	/**
+	 * Add the canonical form of every key in an archive file to a store.
+	 * @param file
+	 * @param target
+	 * @return number of keys read, not counting any which are invalid
+	 * @throws IOException if file cannot be read, or is not a valid archive
+	 */
+	public static long addCanonical(File file, BoardStateStore target) throws IOException {
+		try (CanonicalBatch batch = new CanonicalBatch(target)) {
+			forEachKey(file, batch::addKey);
+			return batch.numAdded;
+		}
+	}
+	
+	/**
+	 * Open a store by filename: a memory-mapped store for names ending in ".map",
+	 * otherwise a SQLite repository.
+	 * @param filename
+	 * @return
+	 * @throws IOException 
+	 */
+	public static BoardStateStore openStore(String filename) throws IOException {
+		if (filename.endsWith(".map")) {
+			return new MappedBoardStateStore(new File(filename));
+		}
+		return new BoardStateRepository(filename);
+	}
+	
+	/**
+	 * Writer of keys to an archive file.
+	 */
+	private static final class ArchiveWriter implements Closeable {
+		private final FileChannel channel;
+		private final ByteBuffer buffer;
+		private long numWritten;
+
+		// Create the file, and write its header
+		private ArchiveWriter(File file) throws IOException {
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+			buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+		}
+
+		// Write a key, as its length then its bytes
+		private void write(byte[] boardKey) throws UncheckedIOException {
+			if (boardKey.length > MAX_KEY_LENGTH) {
+				throw new IllegalArgumentException("Key too long to archive: " + boardKey.length + " bytes");
+			}
+			try {
+				if (buffer.remaining() < LENGTH_SIZE + boardKey.length) {
+					flush();
+				}
+				buffer.putShort((short) boardKey.length);
+				buffer.put(boardKey);
+				numWritten++;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		// Write the buffered bytes to the file
+		private void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				flush();
+			} finally {
+				channel.close();
+			}
+		}
+	}
+	
+	/**
+	 * Batch of canonical keys to add to a store, added whenever the batch is full,
+	 * so each batch is one transaction.
+	 */
+	private static final class CanonicalBatch implements AutoCloseable {
+		private final BoardStateStore target;
+		private final List<byte[]> boardKeys = new ArrayList<>(BatchedBoardStateWriter.DEFAULT_BATCH_SIZE);
+		private long numAdded;
+
+		private CanonicalBatch(BoardStateStore target) {
+			this.target = target;
+		}
+
+		// Add a key, in canonical form, skipping invalid keys
+		private void addKey(byte[] boardKey) {
+			try {
+				add(BoardEncoding.decode(boardKey));
+			} catch (IllegalArgumentException e) {
+				System.err.println("Skipping invalid key: " + BoardEncoding.toHexString(boardKey));
+			}
+		}
+
+		// Add a legacy board string, as a canonical key, skipping invalid strings
+		private void addBoardString(String boardString) {
+			try {
+				add(BoardEncoding.decodeBoardString(boardString));
+			} catch (IllegalArgumentException e) {
+				System.err.println("Skipping invalid board string: " + boardString);
+			}
+		}
+
+		// Helper to add a board's canonical key, adding the batch to the store when full
+		private void add(GameBoard board) {
+			boardKeys.add(board.getCanonicalKey());
+			numAdded++;
+			if (boardKeys.size() >= BatchedBoardStateWriter.DEFAULT_BATCH_SIZE) {
+				flush();
+			}
+		}
+
+		// Helper to add the batch to the store
+		private void flush() {
+			target.addAll(boardKeys);
+			boardKeys.clear();
+		}
+
+		@Override
+		public void close() {
+			flush();
+		}
+	}
+	
+	/**
+	 * Main method: export, compact or merge stores. Stores are SQLite databases, or
+	 * memory-mapped stores if named *.map.
+	 * @param args one of: "export" store archive; "compact" store newStore; or
+	 * "merge" targetStore, then any number of stores and archives (named *.keys)
+	 * @throws IOException 
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3 || !(args[0].equals("export") || args[0].equals("compact") || args[0].equals("merge"))) {
+			System.out.println("Usage: export <store> <archive" + FILE_EXTENSION + ">");
+			System.out.println("       compact <store> <new store>");
+			System.out.println("       merge <target store> <store or archive" + FILE_EXTENSION + ">...");
+			return;
+		}
+		long startNanos = System.nanoTime();
+		if (args[0].equals("export")) {
+			try (BoardStateStore store = openStore(args[1])) {
+				System.out.println("Exported " + exportStore(store, new File(args[2])) + " keys to " + args[2]);
+			}
+		} else {
+			boolean compact = args[0].equals("compact");
+			String targetFilename = compact ? args[2] : args[1];
+			List<String> sourceFilenames = compact ? Arrays.asList(args[1]) : Arrays.asList(args).subList(2, args.length);
+			try (BoardStateStore target = openStore(targetFilename)) {
+				for (String sourceFilename : sourceFilenames) {
+					if (new File(sourceFilename).getCanonicalFile().equals(new File(targetFilename).getCanonicalFile())) {
+						throw new IllegalArgumentException("Cannot add a store to itself: " + sourceFilename);
+					}
+					long numRead;
+					if (sourceFilename.endsWith(FILE_EXTENSION)) {
+						numRead = addCanonical(new File(sourceFilename), target);
+					} else {
+						try (BoardStateStore source = openStore(sourceFilename)) {
+							numRead = addCanonical(source, target);
+						}
+					}
+					System.out.println("Read " + numRead + " keys from " + sourceFilename);
+				}
+				System.out.println(targetFilename + " now holds " + target.size() + " keys");
+			}
+		}
+		System.out.println("Done in " + (System.nanoTime() - startNanos) / 1000000 + " ms");
+	}
+}
@@ -2,62 +2,224 @@ package com.simplyautomatic.tictactoe;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.Consumer;
 
 /**
  * A repository of tic-tac-toe moves/board states, using SQLite for storage.
- * For this simple app, SQLExceptions are reported but ignored.
+ * Board states are stored as binary keys (see {@link BoardEncoding}).
+ * The database uses write-ahead logging, and statements are prepared once and
+ * reused. Use {@link #addAll(Collection)} to add many states in one transaction.
+ * Methods are synchronized, so a repository may be shared between threads.
+ * For this simple app, SQLExceptions are reported but ignored, and counted in
+ * {@link GameMetrics}, along with the latency of each lookup and insert; only a
+ * failed batch is rethrown, so its caller can retry or count its keys as lost.
  */
-public class BoardStateRepository {
+public class BoardStateRepository implements BoardStateStore {
 	private static final String DATABASE_FILENAME = "tictactoe.db";
+	private static final GameMetrics METRICS = GameMetrics.getInstance();
 	private final Connection repoConnection;
+	private final PreparedStatement insertStatement;
+	private final PreparedStatement containsStatement;
 
 	/**
-	 * Create a new repository.
+	 * Create a new repository, in the default database file.
 	 */
 	public BoardStateRepository() {
+		this(DATABASE_FILENAME);
+	}
+	
+	/**
+	 * Create a new repository, in specified database file.
+	 * @param databaseFilename 
+	 */
+	public BoardStateRepository(String databaseFilename) {
 		Connection connection = null;
+		PreparedStatement insert = null;
+		PreparedStatement contains = null;
 		try {
-			connection = DriverManager.getConnection("jdbc:sqlite:" + DATABASE_FILENAME);
-			Statement statement = connection.createStatement();
-			statement.executeUpdate("CREATE TABLE IF NOT EXISTS losing_moves (board_state STRING PRIMARY KEY)");
+			connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFilename);
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("PRAGMA journal_mode=WAL");
+				statement.execute("PRAGMA synchronous=NORMAL");
+				statement.executeUpdate("CREATE TABLE IF NOT EXISTS losing_states (board_key BLOB PRIMARY KEY)");
+			}
+			insert = connection.prepareStatement("INSERT OR IGNORE INTO losing_states VALUES (?)");
+			contains = connection.prepareStatement("SELECT 1 FROM losing_states WHERE board_key = ? LIMIT 1");
 		} catch (SQLException e) {
+			METRICS.recordStoreError();
 			e.printStackTrace();
 		} finally {
 			repoConnection = connection;
+			insertStatement = insert;
+			containsStatement = contains;
+		}
+	}
+	
+	/**
+	 * Add a board state key to repository
+	 * @param boardKey 
+	 */
+	@Override
+	public synchronized void add(byte[] boardKey) {
+		long startNanos = System.nanoTime();
+		try {
+			insertStatement.setBytes(1, boardKey);
+			insertStatement.executeUpdate();
+			METRICS.getStoreInsertLatency().recordSince(startNanos);
+		} catch (SQLException e) {
+			METRICS.recordStoreError();
+			e.printStackTrace();
 		}
 	}
 	
 	/**
-	 * Add a board state to repository
-	 * @param boardState 
+	 * Add many board state keys to repository, in a single transaction
+	 * @param boardKeys 
+	 * @throws RuntimeException if the transaction failed and was rolled back
 	 */
-	public void add(String boardState) {
-		if (contains(boardState)) {
+	@Override
+	public synchronized void addAll(Collection<byte[]> boardKeys) throws RuntimeException {
+		if (boardKeys.isEmpty()) {
 			return;
 		}
-		try (Statement statement = repoConnection.createStatement()) {
-			statement.executeUpdate("INSERT INTO losing_moves VALUES ('" + boardState + "')");
+		long startNanos = System.nanoTime();
+		try {
+			repoConnection.setAutoCommit(false);
+			try {
+				for (byte[] boardKey : boardKeys) {
+					insertStatement.setBytes(1, boardKey);
+					insertStatement.addBatch();
+				}
+				insertStatement.executeBatch();
+				repoConnection.commit();
+				METRICS.getStoreInsertLatency().recordSince(startNanos);
+			} catch (SQLException e) {
+				insertStatement.clearBatch();
+				repoConnection.rollback();
+				throw e;
+			} finally {
+				repoConnection.setAutoCommit(true);
+			}
+		} catch (SQLException e) {
+			METRICS.recordStoreError();
+			throw new RuntimeException("Batch insert of " + boardKeys.size() + " board states failed", e);
+		}
+	}
+	
+	/**
+	 * Check whether board state key is in repository
+	 * @param boardKey
+	 * @return 
+	 */
+	@Override
+	public synchronized boolean contains(byte[] boardKey) {
+		long startNanos = System.nanoTime();
+		try {
+			containsStatement.setBytes(1, boardKey);
+			try (ResultSet rs = containsStatement.executeQuery()) {
+				return rs.next();
+			} finally {
+				METRICS.getStoreLookupLatency().recordSince(startNanos);
+			}
 		} catch (SQLException e) {
+			METRICS.recordStoreError();
 			e.printStackTrace();
+			return false;
 		}
 	}
 	
 	/**
-	 * Check whether board state is in repository
-	 * @param boardState 
+	 * Get number of board states in repository
 	 * @return 
 	 */
-	public boolean contains(String boardState) {
-		String query = "SELECT COUNT(board_state) FROM losing_moves "
-				+ "WHERE board_state = '" + boardState + "'";
+	@Override
+	public synchronized long size() {
+		String query = "SELECT COUNT(*) FROM losing_states";
 		try (Statement statement = repoConnection.createStatement(); ResultSet rs = statement.executeQuery(query);) {
-			return rs.next() && rs.getInt(1) > 0;
+			return rs.next() ? rs.getLong(1) : 0;
 		} catch (SQLException e) {
+			METRICS.recordStoreError();
+			e.printStackTrace();
+			return 0;
+		}
+	}
+	
+	/**
+	 * Perform an action for each board state key in repository, streaming keys 
+	 * rather than loading them all at once
+	 * @param action 
+	 */
+	@Override
+	public synchronized void forEach(Consumer<byte[]> action) {
+		String query = "SELECT board_key FROM losing_states";
+		try (Statement statement = repoConnection.createStatement(); ResultSet rs = statement.executeQuery(query);) {
+			while (rs.next()) {
+				action.accept(rs.getBytes(1));
+			}
+		} catch (SQLException e) {
+			METRICS.recordStoreError();
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Perform an action for each board state string in the legacy losing_moves table 
+	 * written by older versions (see {@link BoardEncoding#decodeBoardString(String)}),
+	 * if the database has one, streaming states rather than loading them all at once.
+	 * The table's column has numeric affinity, so SQLite stored states as numbers, 
+	 * dropping any leading empty cells: these are restored, assuming the smallest 
+	 * square board that fits.
+	 * @param action 
+	 */
+	public synchronized void forEachLegacyState(Consumer<String> action) {
+		String tableQuery = "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'losing_moves'";
+		String query = "SELECT board_state FROM losing_moves";
+		try (Statement statement = repoConnection.createStatement()) {
+			try (ResultSet rs = statement.executeQuery(tableQuery)) {
+				if (!rs.next()) {
+					return;
+				}
+			}
+			try (ResultSet rs = statement.executeQuery(query)) {
+				while (rs.next()) {
+					action.accept(padLegacyState(rs.getString(1)));
+				}
+			}
+		} catch (SQLException e) {
+			METRICS.recordStoreError();
+			e.printStackTrace();
+		}
+	}
+	
+	// Helper to restore leading empty cells to a legacy board state string
+	private static String padLegacyState(String boardState) {
+		int numCells = boardState.length() - (int) boardState.chars().filter(c -> c == '-').count();
+		int boardSize = (int) Math.ceil(Math.sqrt(numCells));
+		StringBuilder padded = new StringBuilder(boardSize * boardSize + 8);
+		for (int cell = numCells; cell < boardSize * boardSize; cell++) {
+			padded.append('0');
+		}
+		return padded.append(boardState).toString();
+	}
+	
+	/**
+	 * Close the repository, and its database connection
+	 */
+	@Override
+	public synchronized void close() {
+		try {
+			insertStatement.close();
+			containsStatement.close();
+			repoConnection.close();
+		} catch (SQLException e) {
+			METRICS.recordStoreError();
 			e.printStackTrace();
-			return false;
 		}
 	}
 	
@@ -66,15 +228,16 @@ public class BoardStateRepository {
 	 * @return 
 	 */
 	@Override
-	public String toString() {
+	public synchronized String toString() {
 		StringBuilder text = new StringBuilder();
-		String query = "SELECT * FROM losing_moves";
+		String query = "SELECT * FROM losing_states";
 		try (Statement statement = repoConnection.createStatement(); ResultSet rs = statement.executeQuery(query);) {
 			while(rs.next()) {
-				text.append(rs.getString(1));
+				text.append(BoardEncoding.decode(rs.getBytes(1)).getBoardString());
 				text.append("\n");
 			}
 		} catch (SQLException e) {
+			METRICS.recordStoreError();
 			e.printStackTrace();
 		}
 		return text.toString();
@@ -82,16 +245,28 @@ public class BoardStateRepository {
 	
 	/**
 	 * Main method, for testing
-	 * @param args 
+	 * @param args
 	 * @throws java.sql.SQLException 
 	 */
 	public static void main(String[] args) throws SQLException {
-		BoardStateRepository repo = new BoardStateRepository();
-		repo.add("test1");
-		repo.add("test2");
-		System.out.println("1? " + repo.contains("test1"));
-		System.out.println("2? " + repo.contains("test2"));
-		System.out.println("3? " + repo.contains("test3"));
-		System.out.println("all:\n" + repo.toString());
+		try (BoardStateRepository repo = new BoardStateRepository()) {
+			GameBoard board = new GameBoard(3);
+			board.placeToken(Token.X, 1, 1);
+			byte[] test1 = board.getCanonicalKey();
+			board.placeToken(Token.O, 2, 2);
+			byte[] test2 = board.getCanonicalKey();
+			board.placeToken(Token.X, 3, 3);
+			byte[] test3 = board.getCanonicalKey();
+			board.placeToken(Token.O, 1, 3);
+			byte[] test4 = board.getCanonicalKey();
+			repo.add(test1);
+			repo.add(test1);
+			repo.addAll(Arrays.asList(test2, test4));
+			System.out.println("1? " + repo.contains(test1));
+			System.out.println("2? " + repo.contains(test2));
+			System.out.println("3? " + repo.contains(test3));
+			System.out.println("4? " + repo.contains(test4));
+			System.out.println("all:\n" + repo.toString());
+		}
 	}
 }
@@ -0,0 +1,49 @@
+package com.simplyautomatic.tictactoe;
+
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * A persistent set of tic-tac-toe board states, stored as binary keys (see
+ * {@link BoardEncoding}). Used by the A.I. to remember losing moves.
+ */
+public interface BoardStateStore extends AutoCloseable {
+
+	/**
+	 * Add a board state key to store, if not already present
+	 * @param boardKey 
+	 */
+	void add(byte[] boardKey);
+
+	/**
+	 * Add many board state keys to store, in a single transaction where supported
+	 * @param boardKeys 
+	 */
+	void addAll(Collection<byte[]> boardKeys);
+
+	/**
+	 * Check whether board state key is in store
+	 * @param boardKey
+	 * @return 
+	 */
+	boolean contains(byte[] boardKey);
+
+	/**
+	 * Get number of board states in store
+	 * @return 
+	 */
+	long size();
+
+	/**
+	 * Perform an action for each board state key in store, streaming keys
+	 * rather than loading them all at once
+	 * @param action 
+	 */
+	void forEach(Consumer<byte[]> action);
+
+	/**
+	 * Close the store, releasing any resources
+	 */
+	@Override
+	void close();
+}
@@ -0,0 +1,322 @@
+package com.simplyautomatic.tictactoe;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * A read-through cache in front of a {@link BoardStateStore}. A Bloom filter
+ * of every stored key answers most lookups for unknown board states without
+ * querying the database, and a bounded cache holds recently-found board states.
+ * As board states are added, the Bloom filter is rebuilt at double the capacity
+ * whenever it fills, so its false positive rate stays near its target. Methods
+ * are synchronized, so a cache may be shared between threads.
+ */
+public class CachedBoardStateRepository implements BoardStateStore {
+	public static final int DEFAULT_CACHE_SIZE = 10000;
+	private static final GameMetrics METRICS = GameMetrics.getInstance();
+	private static final double BLOOM_FALSE_POSITIVE_RATE = 0.01;
+	private static final long MIN_BLOOM_KEYS = 1 << 16;
+
+	/**
+	 * Cache eviction policies.
+	 */
+	public enum EvictionPolicy {
+		/** Evict the least-recently looked-up board state */
+		LRU,
+		/** Evict the least-frequently looked-up board state (the least recently looked-up of a tie) */
+		LFU,
+		/** Evict the earliest-cached board state */
+		FIFO
+	}
+	
+	private final BoardStateStore repository;
+	private final Map<ByteBuffer, Boolean> cache;
+	private BloomFilter bloomFilter;
+	private long bloomFilterCapacity;
+	private long numBloomFilterKeys;
+
+	// Statistics:
+	private long bloomFilterRejections;
+	private long cacheHits;
+	private long cacheMisses;
+
+	/**
+	 * Create a cache with default size and LRU eviction, in front of specified repository.
+	 * @param repository 
+	 */
+	public CachedBoardStateRepository(BoardStateStore repository) {
+		this(repository, DEFAULT_CACHE_SIZE, EvictionPolicy.LRU);
+	}
+	
+	/**
+	 * Create a cache in front of specified repository. All keys currently in the
+	 * repository are loaded into the Bloom filter.
+	 * @param repository
+	 * @param cacheSize maximum number of board states to cache
+	 * @param evictionPolicy 
+	 */
+	public CachedBoardStateRepository(BoardStateStore repository, final int cacheSize, EvictionPolicy evictionPolicy) {
+		this.repository = repository;
+		rebuildBloomFilter(Math.max(2 * repository.size(), MIN_BLOOM_KEYS));
+		if (evictionPolicy == EvictionPolicy.LFU) {
+			this.cache = new LfuCache(cacheSize);
+		} else {
+			this.cache = new LinkedHashMap<ByteBuffer, Boolean>(16, 0.75f, evictionPolicy == EvictionPolicy.LRU) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Boolean> eldest) {
+					return size() > cacheSize;
+				}
+			};
+		}
+	}
+	
+	/**
+	 * Add a board state key to repository
+	 * @param boardKey 
+	 */
+	@Override
+	public synchronized void add(byte[] boardKey) {
+		repository.add(boardKey);
+		addToBloomFilter(boardKey);
+	}
+	
+	/**
+	 * Add many board state keys to repository, in a single transaction
+	 * @param boardKeys 
+	 */
+	@Override
+	public synchronized void addAll(Collection<byte[]> boardKeys) {
+		repository.addAll(boardKeys);
+		boardKeys.forEach(this::addToBloomFilter);
+	}
+	
+	// Helper to add a key to the Bloom filter, first rebuilding it at double the
+	// capacity if full. Keys are counted even if already present, so it may be
+	// rebuilt early, but never late.
+	private void addToBloomFilter(byte[] boardKey) {
+		if (numBloomFilterKeys >= bloomFilterCapacity) {
+			rebuildBloomFilter(2 * Math.max(bloomFilterCapacity, repository.size()));
+		}
+		bloomFilter.add(boardKey);
+		numBloomFilterKeys++;
+	}
+	
+	// Helper to replace the Bloom filter with one of specified capacity, holding every
+	// key in the repository
+	private void rebuildBloomFilter(long capacity) {
+		BloomFilter newBloomFilter = new BloomFilter(capacity, BLOOM_FALSE_POSITIVE_RATE);
+		long[] numKeys = new long[1];
+		repository.forEach(boardKey -> {
+			newBloomFilter.add(boardKey);
+			numKeys[0]++;
+		});
+		bloomFilter = newBloomFilter;
+		bloomFilterCapacity = capacity;
+		numBloomFilterKeys = numKeys[0];
+	}
+	
+	/**
+	 * Check whether board state key is in repository, querying the database only
+	 * if the key may be present but is not cached
+	 * @param boardKey
+	 * @return 
+	 */
+	@Override
+	public synchronized boolean contains(byte[] boardKey) {
+		if (!bloomFilter.mightContain(boardKey)) {
+			bloomFilterRejections++;
+			METRICS.recordBloomFilterRejection();
+			return false;
+		}
+		ByteBuffer cacheKey = ByteBuffer.wrap(boardKey);
+		if (cache.get(cacheKey) != null) {
+			cacheHits++;
+			METRICS.recordCacheHit();
+			return true;
+		}
+		cacheMisses++;
+		METRICS.recordCacheMiss();
+		boolean found = repository.contains(boardKey);
+		if (found) {
+			cache.put(cacheKey, Boolean.TRUE);
+		}
+		return found;
+	}
+	
+	/**
+	 * Get number of board states in repository
+	 * @return 
+	 */
+	@Override
+	public long size() {
+		return repository.size();
+	}
+	
+	/**
+	 * Perform an action for each board state key in repository
+	 * @param action 
+	 */
+	@Override
+	public void forEach(Consumer<byte[]> action) {
+		repository.forEach(action);
+	}
+	
+	/**
+	 * Get number of lookups answered by the Bloom filter, without the cache or database
+	 * @return 
+	 */
+	public synchronized long getBloomFilterRejections() {
+		return bloomFilterRejections;
+	}
+	
+	/**
+	 * Get number of lookups answered by the cache
+	 * @return 
+	 */
+	public synchronized long getCacheHits() {
+		return cacheHits;
+	}
+	
+	/**
+	 * Get number of lookups passed through to the database
+	 * @return 
+	 */
+	public synchronized long getCacheMisses() {
+		return cacheMisses;
+	}
+	
+	/**
+	 * Close the underlying repository
+	 */
+	@Override
+	public void close() {
+		repository.close();
+	}
+	
+	/**
+	 * Get a summary of cache statistics
+	 * @return 
+	 */
+	@Override
+	public synchronized String toString() {
+		return "bloom filter rejections=" + bloomFilterRejections + ", cache hits=" + cacheHits
+				+ ", cache misses=" + cacheMisses + ", cached=" + cache.size();
+	}
+	
+	/**
+	 * A bounded map which evicts its least-frequently looked-up key, in constant time:
+	 * keys are grouped by use count, each group in order of last use.
+	 */
+	private static class LfuCache extends HashMap<ByteBuffer, Boolean> {
+		private static final long serialVersionUID = 1L;
+		private final int maxSize;
+		private final Map<ByteBuffer, Integer> useCounts = new HashMap<>();
+		private final Map<Integer, LinkedHashSet<ByteBuffer>> keysByUseCount = new HashMap<>();
+		private int minUseCount;
+		
+		LfuCache(int maxSize) {
+			this.maxSize = maxSize;
+		}
+		
+		@Override
+		public Boolean get(Object key) {
+			Boolean value = super.get(key);
+			if (value != null) {
+				use((ByteBuffer) key);
+			}
+			return value;
+		}
+		
+		@Override
+		public Boolean put(ByteBuffer key, Boolean value) {
+			if (containsKey(key)) {
+				use(key);
+				return super.put(key, value);
+			}
+			if (maxSize <= 0) {
+				return null;
+			}
+			if (size() >= maxSize) {
+				evict();
+			}
+			useCounts.put(key, 1);
+			keysByUseCount.computeIfAbsent(1, useCount -> new LinkedHashSet<>()).add(key);
+			minUseCount = 1;
+			return super.put(key, value);
+		}
+		
+		// Helper to move a key into the group for its next use count
+		private void use(ByteBuffer key) {
+			int useCount = useCounts.get(key);
+			LinkedHashSet<ByteBuffer> keys = keysByUseCount.get(useCount);
+			keys.remove(key);
+			if (keys.isEmpty()) {
+				keysByUseCount.remove(useCount);
+				if (minUseCount == useCount) {
+					minUseCount++;
+				}
+			}
+			useCounts.put(key, useCount + 1);
+			keysByUseCount.computeIfAbsent(useCount + 1, count -> new LinkedHashSet<>()).add(key);
+		}
+		
+		// Helper to remove the least recently used key of those least frequently used
+		private void evict() {
+			LinkedHashSet<ByteBuffer> keys = keysByUseCount.get(minUseCount);
+			ByteBuffer eldest = keys.iterator().next();
+			keys.remove(eldest);
+			if (keys.isEmpty()) {
+				keysByUseCount.remove(minUseCount);
+			}
+			useCounts.remove(eldest);
+			super.remove(eldest);
+		}
+	}
+	
+	/**
+	 * Main method, for testing
+	 * @param args 
+	 */
+	public static void main(String[] args) {
+		try (CachedBoardStateRepository repo = new CachedBoardStateRepository(new BoardStateRepository(), 2, EvictionPolicy.LRU)) {
+			GameBoard board = new GameBoard(3);
+			board.placeToken(Token.X, 1, 1);
+			byte[] test1 = board.getCanonicalKey();
+			board.placeToken(Token.O, 2, 2);
+			byte[] test2 = board.getCanonicalKey();
+			board.placeToken(Token.X, 3, 3);
+			byte[] test3 = board.getCanonicalKey();
+			repo.add(test1);
+			repo.add(test2);
+			for (int i = 0; i < 3; i++) {
+				System.out.println("1? " + repo.contains(test1) + ", 2? " + repo.contains(test2) + ", 3? " + repo.contains(test3));
+			}
+			System.out.println(repo);
+		}
+		try (CachedBoardStateRepository repo = new CachedBoardStateRepository(new BoardStateRepository(), 2, EvictionPolicy.LFU)) {
+			GameBoard board = new GameBoard(3);
+			board.placeToken(Token.X, 1, 1);
+			byte[] test1 = board.getCanonicalKey();
+			board.placeToken(Token.O, 2, 2);
+			byte[] test2 = board.getCanonicalKey();
+			board.placeToken(Token.X, 3, 3);
+			byte[] test3 = board.getCanonicalKey();
+			repo.add(test1);
+			repo.add(test2);
+			repo.add(test3);
+			// Look up 1 repeatedly first, so it stays cached while 2 and 3 evict each other
+			for (int i = 0; i < 3; i++) {
+				repo.contains(test1);
+			}
+			for (int i = 0; i < 3; i++) {
+				System.out.println("1? " + repo.contains(test1) + ", 2? " + repo.contains(test2) + ", 3? " + repo.contains(test3));
+			}
+			System.out.println(repo);
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package com.simplyautomatic.tictactoe;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * A thread-safe {@link BoardStateStore} for many concurrent games, in front of a
+ * persistent store. Every stored key is held in memory in a concurrent set, so
+ * lookups never lock or touch the database. New keys are added to the set at once,
+ * and queued to be written to the persistent store in batches by a single
+ * background writer thread. Closing the store writes any queued keys, then closes
+ * the persistent store.
+ */
+public class ConcurrentBoardStateStore implements BoardStateStore {
+	private final BoardStateStore store;
+	private final Set<ByteBuffer> keys;
+	private final BatchedBoardStateWriter writer;
+	private volatile boolean closed;
+
+	/**
+	 * Create a concurrent store in front of specified persistent store. All keys
+	 * currently in the persistent store are loaded into memory.
+	 * @param store 
+	 */
+	public ConcurrentBoardStateStore(BoardStateStore store) {
+		this.store = store;
+		this.keys = ConcurrentHashMap.newKeySet((int) Math.min(Math.max(2 * store.size(), 16), Integer.MAX_VALUE));
+		store.forEach(boardKey -> keys.add(ByteBuffer.wrap(boardKey)));
+		this.writer = new BatchedBoardStateWriter(store);
+	}
+	
+	/**
+	 * Add a board state key, queueing it to be written if not already present
+	 * @param boardKey 
+	 * @throws IllegalStateException if store is closed
+	 */
+	@Override
+	public void add(byte[] boardKey) throws IllegalStateException {
+		if (closed) {
+			throw new IllegalStateException("Store is closed");
+		}
+		ByteBuffer key = ByteBuffer.wrap(boardKey.clone());
+		if (keys.add(key)) {
+			try {
+				writer.add(key.array());
+			} catch (IllegalStateException e) {
+				// Closed meanwhile: don't report a key as stored which never will be
+				keys.remove(key);
+				throw e;
+			}
+		}
+	}
+	
+	/**
+	 * Add many board state keys, queueing any not already present to be written
+	 * @param boardKeys 
+	 */
+	@Override
+	public void addAll(Collection<byte[]> boardKeys) {
+		boardKeys.forEach(this::add);
+	}
+	
+	/**
+	 * Check whether board state key is in store, without locking
+	 * @param boardKey
+	 * @return 
+	 */
+	@Override
+	public boolean contains(byte[] boardKey) {
+		return keys.contains(ByteBuffer.wrap(boardKey));
+	}
+	
+	/**
+	 * Get number of board states in store, including any not yet written
+	 * @return 
+	 */
+	@Override
+	public long size() {
+		return keys.size();
+	}
+	
+	/**
+	 * Perform an action for each board state key in store, including any not yet
+	 * written. Keys added meanwhile may or may not be included.
+	 * @param action 
+	 */
+	@Override
+	public void forEach(Consumer<byte[]> action) {
+		keys.forEach(key -> action.accept(key.array().clone()));
+	}
+	
+	/**
+	 * Get number of board states written to the persistent store since opening
+	 * @return 
+	 */
+	public long getNumWritten() {
+		return writer.getNumWritten();
+	}
+	
+	/**
+	 * Write any queued board states, then close the persistent store
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		writer.close();
+		store.close();
+	}
+	
+	/**
+	 * Get a summary of store contents
+	 * @return 
+	 */
+	@Override
+	public String toString() {
+		return "board states=" + keys.size() + ", written=" + writer.getNumWritten();
+	}
+	
+	/**
+	 * Main method, for testing
+	 * @param args 
+	 */
+	public static void main(String[] args) {
+		try (ConcurrentBoardStateStore repo = new ConcurrentBoardStateStore(new BoardStateRepository())) {
+			GameBoard board = new GameBoard(3);
+			board.placeToken(Token.X, 1, 1);
+			byte[] test1 = board.getCanonicalKey();
+			board.placeToken(Token.O, 2, 2);
+			byte[] test2 = board.getCanonicalKey();
+			repo.add(test1);
+			repo.add(test1);
+			System.out.println("1? " + repo.contains(test1) + ", 2? " + repo.contains(test2));
+			System.out.println(repo);
+		}
+	}
+}
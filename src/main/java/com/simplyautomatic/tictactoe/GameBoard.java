@@ -1,47 +1,210 @@
 package com.simplyautomatic.tictactoe;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 /**
- * Implementation of a tic-tac-toe game board, of arbitrary size.
+ * Implementation of a tic-tac-toe game board, of arbitrary size. Boards may also be
+ * rectangular, and be won by fewer than a full line of tokens in a row (e.g. 5 in a
+ * row on a 15x15 board, as in gomoku).
  */
 public class GameBoard {
-	private final Matrix boardMatrix;
-	private final int boardSize;
+	public static final int MAX_SIZE = 32768;
+
+	// Directions of lines through a cell (row and column steps): across, down, and diagonals
+	private static final int[][] LINE_DIRECTIONS = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+	
+	// Largest number of tokens in a line weighted separately by the line score
+	private static final int MAX_WEIGHTED_TOKENS = 8;
+
+	private final BitBoard cells;
+	private final int numRows;
+	private final int numColumns;
+	private final int winLength;
+	private final boolean fullLineWins;
 	private final int numBoardPositions;
 	private int numMoves;
 	
+	// Running totals of token values along each row, column and diagonal, and the
+	// number of winning lines completely filled by each token, so wins are detected 
+	// in O(1). If a win needs fewer than a full line, the winning lines counted are
+	// instead every run of winLength cells, counted around each cell as it changes.
+	// The number of tokens on each line is kept too, so with its total, the number 
+	// of each token on it is known.
+	private final int[] rowTotals;
+	private final int[] columnTotals;
+	private int mainDiagonalTotal;
+	private int antiDiagonalTotal;
+	private final int[] rowCounts;
+	private final int[] columnCounts;
+	private int mainDiagonalCount;
+	private int antiDiagonalCount;
+	private int numXLines;
+	private int numOLines;
+	
+	// Zobrist hashes of the board, as transformed by each symmetry, updated as tokens 
+	// are placed and removed
+	private final long[] zobristHashes;
+	
+	// Cell permutation of each symmetry transform, shared by all boards of this shape,
+	// or null if the board is huge, when symmetric cells are computed instead
+	private final int[][] permutations;
+	
+	// Every (0-indexed) cell, with the free cells first, and the position of each cell
+	// in that list, so a cell is moved between free and occupied in O(1) by a swap. 
+	// Huge boards store only the cells moved by swaps, in the sparse lists instead.
+	private final int[] freeCells;
+	private final int[] freeCellPositions;
+	private final SparseIntArray sparseFreeCells;
+	private final SparseIntArray sparseFreeCellPositions;
+	
 	/**
-	 * Construct a game board of specified size.
+	 * Construct a game board of specified size, won by filling a row, column or diagonal.
 	 * @param boardSize 
 	 */
 	public GameBoard(int boardSize) {
-		this.boardMatrix = new Matrix(boardSize);
+		this(boardSize, boardSize, boardSize);
+	}
+	
+	/**
+	 * Construct a game board of specified shape, won by filling specified number of
+	 * cells in a row, column or diagonal.
+	 * @param numRows
+	 * @param numColumns
+	 * @param winLength number of tokens in a row needed to win
+	 * @throws IllegalArgumentException if board is larger than {@link #MAX_SIZE}, or win length is longer than the board
+	 */
+	public GameBoard(int numRows, int numColumns, int winLength) throws IllegalArgumentException {
+		if (numRows < 1 || numRows > MAX_SIZE || numColumns < 1 || numColumns > MAX_SIZE) {
+			throw new IllegalArgumentException("Invalid board size: " + numRows + "x" + numColumns);
+		}
+		if (winLength < 1 || winLength > Math.max(numRows, numColumns)) {
+			throw new IllegalArgumentException("Invalid win length: " + winLength);
+		}
+		this.cells = new BitBoard(numRows, numColumns);
 		this.numMoves = 0;
-		this.boardSize = boardSize;
-		this.numBoardPositions = boardSize * boardSize;
+		this.numRows = numRows;
+		this.numColumns = numColumns;
+		this.winLength = winLength;
+		this.fullLineWins = numRows == numColumns && winLength == numRows;
+		this.numBoardPositions = numRows * numColumns;
+		this.rowTotals = new int[numRows];
+		this.columnTotals = new int[numColumns];
+		this.rowCounts = new int[numRows];
+		this.columnCounts = new int[numColumns];
+		this.zobristHashes = new long[Symmetry.NUM_SYMMETRIES];
+		if (cells.isSparse()) {
+			this.permutations = null;
+			this.freeCells = null;
+			this.freeCellPositions = null;
+			this.sparseFreeCells = new SparseIntArray();
+			this.sparseFreeCellPositions = new SparseIntArray();
+		} else {
+			this.permutations = Symmetry.getPermutations(numRows, numColumns);
+			this.freeCells = new int[numBoardPositions];
+			this.freeCellPositions = new int[numBoardPositions];
+			for (int cell = 0; cell < numBoardPositions; cell++) {
+				freeCells[cell] = cell;
+				freeCellPositions[cell] = cell;
+			}
+			this.sparseFreeCells = null;
+			this.sparseFreeCellPositions = null;
+		}
+		// Start from a key just past the last cell, so empty boards of each size differ
+		Arrays.fill(zobristHashes, getZobristKey(numBoardPositions, 0));
 	}
-
+	
 	/**
 	 * Copy-constructor, to make a new board identical to existing one
-	 * @param other
+	 * @param other 
 	 */
 	public GameBoard(GameBoard other) {
-		this.boardMatrix = other.boardMatrix.deepCopy();
+		this.cells = new BitBoard(other.cells);
 		this.numMoves = other.numMoves;
-		this.boardSize = other.boardSize;
+		this.numRows = other.numRows;
+		this.numColumns = other.numColumns;
+		this.winLength = other.winLength;
+		this.fullLineWins = other.fullLineWins;
 		this.numBoardPositions = other.numBoardPositions;
+		this.rowTotals = other.rowTotals.clone();
+		this.columnTotals = other.columnTotals.clone();
+		this.mainDiagonalTotal = other.mainDiagonalTotal;
+		this.antiDiagonalTotal = other.antiDiagonalTotal;
+		this.rowCounts = other.rowCounts.clone();
+		this.columnCounts = other.columnCounts.clone();
+		this.mainDiagonalCount = other.mainDiagonalCount;
+		this.antiDiagonalCount = other.antiDiagonalCount;
+		this.numXLines = other.numXLines;
+		this.numOLines = other.numOLines;
+		this.zobristHashes = other.zobristHashes.clone();
+		this.permutations = other.permutations;
+		this.freeCells = other.freeCells != null ? other.freeCells.clone() : null;
+		this.freeCellPositions = other.freeCellPositions != null ? other.freeCellPositions.clone() : null;
+		this.sparseFreeCells = other.sparseFreeCells != null ? new SparseIntArray(other.sparseFreeCells) : null;
+		this.sparseFreeCellPositions = other.sparseFreeCellPositions != null
+				? new SparseIntArray(other.sparseFreeCellPositions) : null;
 	}
-
+	
 	/**
-	 * Get board size.
+	 * Get board size: the width and height of a square board, or the number of 
+	 * rows of a rectangular board.
 	 * @return 
 	 */
 	public int getBoardSize() {
-		return boardSize;
+		return numRows;
+	}
+	
+	/**
+	 * Get number of rows.
+	 * @return 
+	 */
+	public int getNumRows() {
+		return numRows;
+	}
+	
+	/**
+	 * Get number of columns.
+	 * @return 
+	 */
+	public int getNumColumns() {
+		return numColumns;
+	}
+	
+	/**
+	 * Get number of tokens in a row needed to win.
+	 * @return 
+	 */
+	public int getWinLength() {
+		return winLength;
+	}
+	
+	/**
+	 * Determine whether the board is square.
+	 * @return 
+	 */
+	public boolean isSquare() {
+		return numRows == numColumns;
+	}
+	
+	/**
+	 * Determine whether the board is huge, so stored sparsely (see {@link BitBoard}):
+	 * its memory use grows with the number of moves, not its size, but methods which
+	 * visit every cell, such as board strings and canonical forms, are slow.
+	 * @return 
+	 */
+	public boolean isSparse() {
+		return cells.isSparse();
+	}
+	
+	/**
+	 * Get number of tokens placed on the board.
+	 * @return 
+	 */
+	public int getNumMoves() {
+		return numMoves;
 	}
 	
 	/**
@@ -52,13 +215,112 @@ public class GameBoard {
 	 * @throws IllegalArgumentException if position is occupied/illegal move
 	 */
 	public void placeToken(Token token, int row, int column) throws IllegalArgumentException {
-		if (boardMatrix.getValue(row, column) != 0) {
+		int cell = getCellIndex(row, column);
+		if (cells.getValue(cell) != 0) {
 			throw new IllegalArgumentException("Position already occupied");
 		}
-		boardMatrix.setValue(row, column, token.getValue());
+		cells.setValue(cell, token.getValue());
+		updateLineTotals(row - 1, column - 1, token.getValue(), 1);
+		if (!fullLineWins) {
+			updateWinningRuns(row - 1, column - 1, token.getValue(), 1);
+		}
+		updateZobristHashes(cell, token.getValue());
+		swapFreeCells(cell, numBoardPositions - numMoves - 1);
 		numMoves++;
 	}
 	
+	/**
+	 * Remove the token at specified (1-indexed) position, undoing a previous move.
+	 * @param row
+	 * @param column
+	 * @throws IllegalArgumentException if position is empty
+	 */
+	public void removeToken(int row, int column) throws IllegalArgumentException {
+		int cell = getCellIndex(row, column);
+		int value = cells.getValue(cell);
+		if (value == 0) {
+			throw new IllegalArgumentException("Position not occupied");
+		}
+		cells.setValue(cell, 0);
+		updateLineTotals(row - 1, column - 1, -value, -1);
+		if (!fullLineWins) {
+			updateWinningRuns(row - 1, column - 1, value, -1);
+		}
+		updateZobristHashes(cell, value);
+		swapFreeCells(cell, numBoardPositions - numMoves);
+		numMoves--;
+	}
+	
+	// Helper to swap a cell with the cell at specified position of the free cell list:
+	// the last free cell when placing a token, or the first occupied cell when removing
+	private void swapFreeCells(int cell, int position) {
+		if (freeCells == null) {
+			int otherCell = sparseFreeCells.get(position);
+			int cellPosition = sparseFreeCellPositions.get(cell);
+			sparseFreeCells.set(cellPosition, otherCell);
+			sparseFreeCellPositions.set(otherCell, cellPosition);
+			sparseFreeCells.set(position, cell);
+			sparseFreeCellPositions.set(cell, position);
+			return;
+		}
+		int otherCell = freeCells[position];
+		int cellPosition = freeCellPositions[cell];
+		freeCells[cellPosition] = otherCell;
+		freeCellPositions[otherCell] = cellPosition;
+		freeCells[position] = cell;
+		freeCellPositions[cell] = position;
+	}
+	
+	/**
+	 * Get number of free (empty) cells.
+	 * @return 
+	 */
+	public int getNumFreeCells() {
+		return numBoardPositions - numMoves;
+	}
+	
+	/**
+	 * Get a free (empty) cell, from the list of free cells, which is kept up to date
+	 * as tokens are placed and removed, in no particular order. Cells are 0-indexed, 
+	 * in row-major order.
+	 * @param index index in list, from 0 to {@link #getNumFreeCells()} - 1
+	 * @return
+	 * @throws ArrayIndexOutOfBoundsException if index is out of range
+	 */
+	public int getFreeCell(int index) throws ArrayIndexOutOfBoundsException {
+		if (index < 0 || index >= getNumFreeCells()) {
+			throw new ArrayIndexOutOfBoundsException("No free cell at index " + index);
+		}
+		return freeCells != null ? freeCells[index] : sparseFreeCells.get(index);
+	}
+	
+	/**
+	 * Get a copy of the list of free (empty) cells (see {@link #getFreeCell(int)}).
+	 * @return 
+	 */
+	public int[] getFreeCells() {
+		if (freeCells == null) {
+			return IntStream.range(0, getNumFreeCells()).map(sparseFreeCells::get).toArray();
+		}
+		return Arrays.copyOf(freeCells, getNumFreeCells());
+	}
+	
+	/**
+	 * Get a cell holding a token, from the list of occupied cells, in no particular 
+	 * order, so e.g. moves near existing tokens can be found without visiting every
+	 * cell of a huge board.
+	 * @param index index in list, from 0 to {@link #getNumMoves()} - 1
+	 * @return 0-indexed cell, in row-major order
+	 * @throws ArrayIndexOutOfBoundsException if index is out of range
+	 */
+	public int getOccupiedCell(int index) throws ArrayIndexOutOfBoundsException {
+		if (index < 0 || index >= numMoves) {
+			throw new ArrayIndexOutOfBoundsException("No occupied cell at index " + index);
+		}
+		int position = getNumFreeCells() + index;
+		return freeCells != null ? freeCells[position] : sparseFreeCells.get(position);
+	}
+	
 	/**
 	 * Gets the token currently at specified (1-indexed) position.
 	 * @param row
@@ -66,7 +328,7 @@ public class GameBoard {
 	 * @return Token at position, or null if none
 	 */
 	public Token getTokenAt(int row, int column) {
-		int value = boardMatrix.getValue(row, column);
+		int value = cells.getValue(getCellIndex(row, column));
 		if (value != 0) {
 			return Token.valueOf(value);
 		}
@@ -78,10 +340,9 @@ public class GameBoard {
 	 * @return Token of winner, or null if game not yet won
 	 */
 	public Token getWinningToken() {
-		int  largestScore = getLargestRowColumnDiagonalScore();
-		if (largestScore == Token.X.getValue() * boardSize) {
+		if (numXLines > 0) {
 			return Token.X;
-		} else if (largestScore == Token.O.getValue() * boardSize) {
+		} else if (numOLines > 0) {
 			return Token.O;
 		} else {
 			return null;
@@ -96,22 +357,205 @@ public class GameBoard {
 		return getWinningToken() != null;
 	}
 	
+	// Helper to convert (1-indexed) row/column to bitboard cell index
+	private int getCellIndex(int row, int column) throws ArrayIndexOutOfBoundsException {
+		if (row < 1 || row > numRows || column < 1 || column > numColumns) {
+			throw new ArrayIndexOutOfBoundsException("Position out of bounds: " + row + "," + column);
+		}
+		return (row - 1) * numColumns + (column - 1);
+	}
+	
+	// Helper to add a token value to the totals, and a count to the token counts, of
+	// every line through (0-indexed) row/column
+	private void updateLineTotals(int row, int column, int delta, int count) {
+		rowTotals[row] = updateLineTotal(rowTotals[row], delta);
+		columnTotals[column] = updateLineTotal(columnTotals[column], delta);
+		rowCounts[row] += count;
+		columnCounts[column] += count;
+		if (isSquare() && row == column) {
+			mainDiagonalTotal = updateLineTotal(mainDiagonalTotal, delta);
+			mainDiagonalCount += count;
+		}
+		if (isSquare() && row == numColumns - 1 - column) {
+			antiDiagonalTotal = updateLineTotal(antiDiagonalTotal, delta);
+			antiDiagonalCount += count;
+		}
+	}
+	
+	// Helper to update a single line total, keeping count of completely-filled lines
+	private int updateLineTotal(int total, int delta) {
+		if (!fullLineWins) {
+			return total + delta;
+		}
+		countFilledLine(total, -1);
+		total += delta;
+		countFilledLine(total, 1);
+		return total;
+	}
+	
+	// Helper to adjust count of completely-filled lines, if line total shows one
+	private void countFilledLine(int total, int count) {
+		if (total == Token.X.getValue() * winLength) {
+			numXLines += count;
+		} else if (total == Token.O.getValue() * winLength) {
+			numOLines += count;
+		}
+	}
+	
+	// Helper to adjust count of winning runs by those through (0-indexed) row/column,
+	// when a token value is placed (count 1) or removed (count -1) there. Only the
+	// nearest winLength - 1 cells each way along each line are examined.
+	private void updateWinningRuns(int row, int column, int value, int count) {
+		int numRuns = 0;
+		for (int[] direction : LINE_DIRECTIONS) {
+			int before = countRun(row, column, -direction[0], -direction[1], value);
+			int after = countRun(row, column, direction[0], direction[1], value);
+			// Runs of winLength cells through this cell, within the run of before + 1 + after cells
+			numRuns += Math.max(0, before + after + 2 - winLength);
+		}
+		if (value == Token.X.getValue()) {
+			numXLines += count * numRuns;
+		} else {
+			numOLines += count * numRuns;
+		}
+	}
+	
+	// Helper to count cells holding a token value in a row from (0-indexed) row/column,
+	// in specified direction, not counting the cell itself, up to winLength - 1 cells
+	private int countRun(int row, int column, int rowStep, int columnStep, int value) {
+		int length = 0;
+		while (length < winLength - 1) {
+			row += rowStep;
+			column += columnStep;
+			if (row < 0 || row >= numRows || column < 0 || column >= numColumns
+					|| cells.getValue(row * numColumns + column) != value) {
+				break;
+			}
+			length++;
+		}
+		return length;
+	}
+	
+	// Helper to toggle a token value at (0-indexed) cell in the hash of every symmetric board
+	private void updateZobristHashes(int cell, int value) {
+		for (int symmetry = 0; symmetry < Symmetry.NUM_SYMMETRIES; symmetry++) {
+			int transform = Symmetry.getTransform(symmetry);
+			if (!Symmetry.isValid(transform, numRows, numColumns)) {
+				continue;
+			}
+			int symmetricCell = getSourceCell(Symmetry.getInverse(transform), cell);
+			int symmetricValue = Symmetry.isTokenSwap(symmetry) ? -value : value;
+			zobristHashes[symmetry] ^= getZobristKey(symmetricCell, symmetricValue);
+		}
+	}
+	
+	// Helper to get the Zobrist key for a token value at (0-indexed) cell. Keys are 
+	// computed by mixing the board shape, cell and token, so no tables are needed.
+	private long getZobristKey(int cell, int value) {
+		long shape = ((long) numRows << 40) ^ ((long) numColumns << 52) ^ ((long) (numRows - winLength) << 58);
+		long key = shape ^ ((long) cell << 1) ^ (value > 0 ? 0 : 1);
+		key = (key ^ (key >>> 30)) * 0xBF58476D1CE4E5B9L + 0x9E3779B97F4A7C15L;
+		key = (key ^ (key >>> 27)) * 0x94D049BB133111EBL;
+		return key ^ (key >>> 31);
+	}
+	
+	/**
+	 * Score the position for a player, by the winning lines still open: each line 
+	 * (row, column or diagonal, or run of winLength cells, if a win needs fewer than 
+	 * a full line) holding only the player's tokens adds a weight, 8 times larger 
+	 * for each token on it, and each holding only the opponent's tokens subtracts
+	 * one. Full lines are scored from their running totals and counts, in 
+	 * O(rows + columns); runs are scored by sliding along each line holding any 
+	 * tokens, so this is meant for boards small enough to search.
+	 * @param perspective player to score for
+	 * @return score, positive if the player has more, or longer, open lines
+	 */
+	public long getLineScore(Token perspective) {
+		long score = 0;
+		if (fullLineWins) {
+			for (int index = 0; index < numRows; index++) {
+				score += getLineWeight(rowCounts[index], rowTotals[index]);
+				score += getLineWeight(columnCounts[index], columnTotals[index]);
+			}
+			score += getLineWeight(mainDiagonalCount, mainDiagonalTotal);
+			score += getLineWeight(antiDiagonalCount, antiDiagonalTotal);
+			return perspective.getValue() * score;
+		}
+		for (int row = 0; row < numRows; row++) {
+			if (rowCounts[row] > 0) {
+				score += getRunScore(row, 0, 0, 1, numColumns);
+			}
+		}
+		for (int column = 0; column < numColumns; column++) {
+			if (columnCounts[column] > 0) {
+				score += getRunScore(0, column, 1, 0, numRows);
+			}
+		}
+		// Diagonals start on the top row, or the first (or for anti-diagonals, last) column
+		for (int start = 1 - numRows; start < numColumns; start++) {
+			int row = Math.max(0, -start);
+			int column = Math.max(0, start);
+			int length = Math.min(numRows - row, numColumns - column);
+			if (length >= winLength) {
+				score += getRunScore(row, column, 1, 1, length);
+				score += getRunScore(row, numColumns - 1 - column, 1, -1, length);
+			}
+		}
+		return perspective.getValue() * score;
+	}
+	
+	// Helper to score the runs of winLength cells along a line, from (0-indexed) 
+	// row/column, in specified direction, for specified number of cells
+	private long getRunScore(int row, int column, int rowStep, int columnStep, int length) {
+		long score = 0;
+		int count = 0;
+		int total = 0;
+		for (int index = 0; index < length; index++) {
+			int value = cells.getValue((row + index * rowStep) * numColumns + column + index * columnStep);
+			count += value != 0 ? 1 : 0;
+			total += value;
+			if (index >= winLength) {
+				// Slide the run along, dropping its first cell
+				int first = index - winLength;
+				int firstValue = cells.getValue((row + first * rowStep) * numColumns + column + first * columnStep);
+				count -= firstValue != 0 ? 1 : 0;
+				total -= firstValue;
+			}
+			if (index >= winLength - 1) {
+				score += getLineWeight(count, total);
+			}
+		}
+		return score;
+	}
+	
+	// Helper to weight a line, for X, from its number of tokens and their total value:
+	// only a line holding tokens of one player alone can still be won
+	private static long getLineWeight(int count, int total) {
+		if (count == 0 || Math.abs(total) != count) {
+			return 0;
+		}
+		long weight = 1L << (3 * (Math.min(count, MAX_WEIGHTED_TOKENS) - 1));
+		return total > 0 ? weight : -weight;
+	}
+	
 	// Helper to get largest-magnitude (regardless of sign) score from all rows/cols/diags
 	public int getLargestRowColumnDiagonalScore() {
 		int largestScore = 0;
-		for (int index = 1; index <= boardSize; index++) {
-			if (Math.abs(boardMatrix.getRowTotal(index)) > Math.abs(largestScore)) {
-				largestScore = boardMatrix.getRowTotal(index);
+		for (int index = 0; index < numRows; index++) {
+			if (Math.abs(rowTotals[index]) > Math.abs(largestScore)) {
+				largestScore = rowTotals[index];
 			}
-			if (Math.abs(boardMatrix.getColumnTotal(index)) > Math.abs(largestScore)) {
-				largestScore = boardMatrix.getColumnTotal(index);
+		}
+		for (int index = 0; index < numColumns; index++) {
+			if (Math.abs(columnTotals[index]) > Math.abs(largestScore)) {
+				largestScore = columnTotals[index];
 			}
 		}
-		if (Math.abs(boardMatrix.getMainDiagonalTotal()) > Math.abs(largestScore)) {
-			largestScore = boardMatrix.getMainDiagonalTotal();
+		if (Math.abs(mainDiagonalTotal) > Math.abs(largestScore)) {
+			largestScore = mainDiagonalTotal;
 		}
-		if (Math.abs(boardMatrix.getAntiDiagonalTotal()) > Math.abs(largestScore)) {
-			largestScore = boardMatrix.getAntiDiagonalTotal();
+		if (Math.abs(antiDiagonalTotal) > Math.abs(largestScore)) {
+			largestScore = antiDiagonalTotal;
 		}
 		return largestScore;
 	}
@@ -129,7 +573,7 @@ public class GameBoard {
 	 * @return 
 	 */
 	public String getBoardString() {
-		return boardMatrix.toString();
+		return cells.toString();
 	}
 	
 	/**
@@ -139,21 +583,229 @@ public class GameBoard {
 	 * @return 
 	 */
 	public List<String> getAllEquivalentBoardStrings() {
-		// Get all equivalent forms of board, and of opposite board (switch X and O)
-		List<String> equivalentBoardStrings = boardMatrix.getAllEquivalentStrings();
-		equivalentBoardStrings.addAll(boardMatrix.deepCopy().negate().getAllEquivalentStrings());
+		// Get all equivalent forms of board, then of opposite board (switch X and O)
+		List<String> equivalentBoardStrings = new ArrayList<>();
+		for (int symmetry = 0; symmetry < Symmetry.NUM_SYMMETRIES; symmetry++) {
+			if (isValidSymmetry(symmetry)) {
+				equivalentBoardStrings.add(getSymmetricBoardString(symmetry));
+			}
+		}
 		return equivalentBoardStrings;
 	}
 	
+	/**
+	 * Get a canonical String representation of the board, which is identical for 
+	 * all equivalent boards (see {@link #getAllEquivalentBoardStrings()}). This is 
+	 * the board string of whichever equivalent board sorts first, found without 
+	 * building any intermediate boards.
+	 * @return 
+	 */
+	public String getCanonicalBoardString() {
+		return getSymmetricBoardString(getCanonicalSymmetry());
+	}
+	
+	// Helper to get the board string of the board transformed by specified symmetry
+	private String getSymmetricBoardString(int symmetry) {
+		StringBuilder text = new StringBuilder(numBoardPositions + 8);
+		for (int cell = 0; cell < numBoardPositions; cell++) {
+			text.append(getSymmetricValue(symmetry, cell));
+		}
+		return text.toString();
+	}
+	
+	/**
+	 * Get a canonical binary key for the board, which is identical for all 
+	 * equivalent boards: the {@link BoardEncoding} of the canonical board.
+	 * @return
+	 * @throws IllegalArgumentException if board is too large to encode
+	 */
+	public byte[] getCanonicalKey() {
+		checkEncodable();
+		return BoardEncoding.encode(this, getCanonicalSymmetry());
+	}
+	
+	/**
+	 * Get a canonical binary key for the board, as seen by specified player, which 
+	 * is identical for all boards equivalent from that player's perspective (see 
+	 * {@link #getCanonicalSymmetry(Token)}).
+	 * @param perspective
+	 * @return
+	 * @throws IllegalArgumentException if board is too large to encode
+	 */
+	public byte[] getCanonicalKey(Token perspective) {
+		checkEncodable();
+		return BoardEncoding.encode(this, getCanonicalSymmetry(perspective));
+	}
+	
+	// Helper to check the board can be encoded, before finding its canonical form,
+	// which would visit every cell of a huge board
+	private void checkEncodable() throws IllegalArgumentException {
+		if (!BoardEncoding.canEncode(numRows, numColumns)) {
+			throw new IllegalArgumentException("Board too large to encode: " + numRows + "x" + numColumns);
+		}
+	}
+	
+	/**
+	 * Get the symmetry (see {@link Symmetry}) which transforms this board into its 
+	 * canonical form. Equivalent boards are ordered by comparing cells in turn, 
+	 * with empty cells first, then X, then O.
+	 * @return 
+	 */
+	public int getCanonicalSymmetry() {
+		return getCanonicalSymmetry(0, Symmetry.NUM_SYMMETRIES);
+	}
+	
+	/**
+	 * Get the symmetry which transforms this board into its canonical form, as seen
+	 * by specified player: tokens are swapped if needed so the player's tokens are X, 
+	 * and only rotations, mirrors and transposes are considered. Boards are then 
+	 * equivalent only if the same player is in the same position, as needed when 
+	 * evaluating positions for the player to move.
+	 * @param perspective
+	 * @return 
+	 */
+	public int getCanonicalSymmetry(Token perspective) {
+		int first = perspective == Token.X ? 0 : Symmetry.NUM_TRANSFORMS;
+		return getCanonicalSymmetry(first, first + Symmetry.NUM_TRANSFORMS);
+	}
+	
+	// Helper to find the symmetry, within specified range, giving the canonical board
+	private int getCanonicalSymmetry(int firstSymmetry, int endSymmetry) {
+		int bestSymmetry = firstSymmetry;
+		for (int symmetry = firstSymmetry + 1; symmetry < endSymmetry; symmetry++) {
+			if (!isValidSymmetry(symmetry)) {
+				continue;
+			}
+			for (int cell = 0; cell < numBoardPositions; cell++) {
+				int order = Integer.compare(getCellOrder(getSymmetricValue(symmetry, cell)),
+						getCellOrder(getSymmetricValue(bestSymmetry, cell)));
+				if (order < 0) {
+					bestSymmetry = symmetry;
+				}
+				if (order != 0) {
+					break;
+				}
+			}
+		}
+		return bestSymmetry;
+	}
+	
+	/**
+	 * Get the Zobrist hash of the board. Equal boards have equal hashes, and the 
+	 * hash is updated incrementally as tokens are placed and removed.
+	 * @return 
+	 */
+	public long getZobristHash() {
+		return zobristHashes[Symmetry.IDENTITY];
+	}
+	
+	/**
+	 * Get the Zobrist hash of the board, as transformed by specified symmetry.
+	 * @param symmetry
+	 * @return 
+	 */
+	public long getZobristHash(int symmetry) {
+		return zobristHashes[symmetry];
+	}
+	
+	/**
+	 * Get a canonical Zobrist hash of the board, which is identical for all 
+	 * equivalent boards: the lowest hash of any equivalent board.
+	 * @return 
+	 */
+	public long getCanonicalZobristHash() {
+		return zobristHashes[getCanonicalHashSymmetry(0, Symmetry.NUM_SYMMETRIES)];
+	}
+	
+	/**
+	 * Get a canonical Zobrist hash of the board as seen by specified player, which 
+	 * is identical for all boards equivalent from that player's perspective (see 
+	 * {@link #getCanonicalSymmetry(Token)}).
+	 * @param perspective
+	 * @return 
+	 */
+	public long getCanonicalZobristHash(Token perspective) {
+		return zobristHashes[getCanonicalHashSymmetry(perspective)];
+	}
+	
+	/**
+	 * Get the symmetry which transforms this board into the equivalent board with 
+	 * lowest Zobrist hash, as seen by specified player.
+	 * @param perspective
+	 * @return 
+	 */
+	public int getCanonicalHashSymmetry(Token perspective) {
+		int first = perspective == Token.X ? 0 : Symmetry.NUM_TRANSFORMS;
+		return getCanonicalHashSymmetry(first, first + Symmetry.NUM_TRANSFORMS);
+	}
+	
+	// Helper to find the symmetry, within specified range, giving the lowest hash
+	private int getCanonicalHashSymmetry(int firstSymmetry, int endSymmetry) {
+		int bestSymmetry = firstSymmetry;
+		for (int symmetry = firstSymmetry + 1; symmetry < endSymmetry; symmetry++) {
+			if (isValidSymmetry(symmetry) && zobristHashes[symmetry] < zobristHashes[bestSymmetry]) {
+				bestSymmetry = symmetry;
+			}
+		}
+		return bestSymmetry;
+	}
+	
+	// Get value at (0-indexed) cell of the board, transformed by specified symmetry
+	int getSymmetricValue(int symmetry, int cell) {
+		int value = cells.getValue(getSourceCell(Symmetry.getTransform(symmetry), cell));
+		return Symmetry.isTokenSwap(symmetry) ? -value : value;
+	}
+	
+	// Helper to get the cell of the board that appears at a cell of the board transformed
+	// by specified transform: from the permutation tables, or computed if board is huge
+	private int getSourceCell(int transform, int cell) {
+		if (permutations == null) {
+			return Symmetry.getSourceCell(transform, cell, numRows, numColumns);
+		}
+		return permutations[transform][cell];
+	}
+	
+	// Helper to determine whether a symmetry maps this board's shape onto itself
+	private boolean isValidSymmetry(int symmetry) {
+		return Symmetry.isValid(Symmetry.getTransform(symmetry), numRows, numColumns);
+	}
+	
+	// Helper to order cell values: empty, then X, then O
+	private static int getCellOrder(int value) {
+		return value == 0 ? 0 : value == Token.X.getValue() ? 1 : 2;
+	}
+	
 	/**
 	 * Convert the game board to a simple display string, suitable for printing.
 	 * @return 
 	 */
 	@Override
 	public String toString() {
-		String rowDivider = IntStream.range(0, 4 * boardSize - 3).mapToObj(i -> "-").collect(Collectors.joining());
-		return IntStream.range(1, boardSize + 1).mapToObj(row -> 
-				IntStream.range(1, boardSize + 1).mapToObj(column -> Token.toDisplayString(boardMatrix.getValue(row, column))).collect(Collectors.joining(" | "))
+		String rowDivider = IntStream.range(0, 4 * numColumns - 3).mapToObj(i -> "-").collect(Collectors.joining());
+		return IntStream.range(1, numRows + 1).mapToObj(row -> 
+				IntStream.range(1, numColumns + 1).mapToObj(column -> Token.toDisplayString(cells.getValue(getCellIndex(row, column)))).collect(Collectors.joining(" | "))
+		).collect(Collectors.joining("\n" + rowDivider + "\n"));
+	}
+	
+	/**
+	 * Convert a window of the game board to a display string, in the same format as
+	 * {@link #toString()}, headed by the rows and columns shown, so a huge board can
+	 * be shown around the area in play. Only the cells in the window are visited.
+	 * @param firstRow first (1-indexed) row to show, moved if needed to fit the window on the board
+	 * @param firstColumn first (1-indexed) column to show, moved if needed to fit the window on the board
+	 * @param maxRows maximum number of rows to show
+	 * @param maxColumns maximum number of columns to show
+	 * @return 
+	 */
+	public String toString(int firstRow, int firstColumn, int maxRows, int maxColumns) {
+		int windowRows = Math.min(maxRows, numRows);
+		int windowColumns = Math.min(maxColumns, numColumns);
+		int top = Math.max(1, Math.min(firstRow, numRows - windowRows + 1));
+		int left = Math.max(1, Math.min(firstColumn, numColumns - windowColumns + 1));
+		String rowDivider = IntStream.range(0, 4 * windowColumns - 3).mapToObj(i -> "-").collect(Collectors.joining());
+		return "Rows " + top + "-" + (top + windowRows - 1) + ", columns " + left + "-" + (left + windowColumns - 1)
+				+ " of " + numRows + "x" + numColumns + ":\n" + IntStream.range(top, top + windowRows).mapToObj(row -> 
+				IntStream.range(left, left + windowColumns).mapToObj(column -> Token.toDisplayString(cells.getValue(getCellIndex(row, column)))).collect(Collectors.joining(" | "))
 		).collect(Collectors.joining("\n" + rowDivider + "\n"));
 	}
 	
@@ -165,12 +817,29 @@ public class GameBoard {
 		GameBoard gb = new GameBoard(3);
 		gb.placeToken(Token.X, 1, 1);
 		gb.placeToken(Token.X, 1, 2);
-		System.out.println(gb.boardMatrix.toString() + "/" + gb.isWon() + ", winner=" + gb.getWinningToken());
+		System.out.println(gb.getBoardString() + "/" + gb.isWon() + ", winner=" + gb.getWinningToken());
 		gb.placeToken(Token.O, 1, 3);
 		gb.placeToken(Token.O, 2, 3);
-		System.out.println(gb.boardMatrix.toString() + "/" + gb.isWon() + ", winner=" + gb.getWinningToken());
+		System.out.println(gb.getBoardString() + "/" + gb.isWon() + ", winner=" + gb.getWinningToken());
+		gb.placeToken(Token.O, 3, 3);
+		System.out.println(gb.getBoardString() + "/" + gb.isWon() + ", winner=" + gb.getWinningToken());
+		gb.removeToken(3, 3);
+		System.out.println(gb.getBoardString() + "/" + gb.isWon() + ", winner=" + gb.getWinningToken());
 		gb.placeToken(Token.O, 3, 3);
-		System.out.println(gb.boardMatrix.toString() + "/" + gb.isWon() + ", winner=" + gb.getWinningToken());
 		System.out.println("board:\n" + gb.toString());
+		System.out.println("canonical: " + gb.getCanonicalBoardString() + ", equivalents: " + gb.getAllEquivalentBoardStrings());
+		GameBoard gomoku = new GameBoard(15, 15, 5);
+		for (int column = 3; column <= 7; column++) {
+			gomoku.placeToken(Token.X, 9 - column, column);
+			System.out.println("gomoku: " + gomoku.getNumMoves() + " in a row, winner=" + gomoku.getWinningToken());
+		}
+		gomoku.removeToken(6, 3);
+		System.out.println("gomoku: removed one, winner=" + gomoku.getWinningToken());
+		GameBoard huge = new GameBoard(10000, 10000, 5);
+		for (int column = 5000; column < 5005; column++) {
+			huge.placeToken(Token.O, 5000, column);
+		}
+		System.out.println("huge: sparse=" + huge.isSparse() + ", winner=" + huge.getWinningToken() + ", free="
+				+ huge.getNumFreeCells() + "\n" + huge.toString(4998, 4999, 5, 7));
 	}
 }
@@ -0,0 +1,406 @@
+package com.simplyautomatic.tictactoe;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of finished games, in a compact binary file, so games can
+ * be replayed later to retrain the A.I. (see {@link JournalReplayer}).
+ * <p>
+ * The file is a header (magic number and version), then one record per game: the
+ * length of the record body, the body, and a CRC-32 checksum of the body. The body
+ * is the board shape and the player and winner tokens, in 2 bytes each, then the
+ * number of moves and the cell of each move, as variable-length integers, so moves
+ * on boards of up to 128 cells take one byte each.
+ * <p>
+ * Any number of threads may append games, which are queued, and written by a single
+ * background thread with group commit: every game queued while the previous group
+ * was being written is written with one write, and forced to disk with one sync.
+ * A crash can only lose the last group written; a partly written record is detected
+ * by its length or checksum, ends the journal for readers, and is cut off when the
+ * journal is next opened for writing. A group which fails to write is cut off
+ * straight away, and its games' futures fail; if it cannot be cut off, no more
+ * games are written.
+ */
+public class GameJournal implements AutoCloseable {
+	public static final String DEFAULT_FILENAME = "games.journal";
+	static final int MAGIC = 0x5454544A;
+	static final int VERSION = 1;
+	private static final int HEADER_SIZE = 8;
+	private static final int LENGTH_SIZE = 4;
+	private static final int CHECKSUM_SIZE = 4;
+	private static final int SHAPE_SIZE = 8;
+	private static final int BUFFER_SIZE = 1 << 17;
+	private static final int MAX_GROUP_SIZE = 4096;
+	private static final Entry END_OF_QUEUE = new Entry(null);
+
+	private final FileChannel channel;
+	private final boolean forceToDisk;
+	private final BlockingQueue<Entry> queue;
+	private final Thread writerThread;
+	private final AtomicLong numWritten;
+	private final AtomicLong numCommits;
+	private final CRC32 checksum = new CRC32();
+	private ByteBuffer buffer;
+	private volatile boolean closed;
+
+	/**
+	 * Open a journal for appending, creating the file if necessary, and syncing each
+	 * group of games to disk
+	 * @param file
+	 * @throws IOException if file cannot be opened, or is not a journal
+	 */
+	public GameJournal(File file) throws IOException {
+		this(file, true);
+	}
+	
+	/**
+	 * Open a journal for appending, creating the file if necessary
+	 * @param file
+	 * @param forceToDisk true to sync each group of games to disk, or false to leave it to the OS
+	 * @throws IOException if file cannot be opened, or is not a journal
+	 */
+	public GameJournal(File file, boolean forceToDisk) throws IOException {
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE);
+		this.forceToDisk = forceToDisk;
+		this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		try {
+			if (channel.size() == 0) {
+				buffer.putInt(MAGIC).putInt(VERSION);
+				writeBuffer();
+			} else {
+				// Cut off any partly written record, from a crash
+				channel.truncate(scan(channel, file, game -> {
+				}));
+			}
+			channel.position(channel.size());
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		this.queue = new LinkedBlockingQueue<>();
+		this.numWritten = new AtomicLong();
+		this.numCommits = new AtomicLong();
+		this.writerThread = new Thread(this::writeGroups, "game-journal-writer");
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+	}
+	
+	/**
+	 * Queue a game to be written
+	 * @param game
+	 * @return future completed once the game is written (and synced, if syncing)
+	 * @throws IllegalStateException if journal is closed
+	 */
+	public CompletableFuture<Void> append(GameRecord game) throws IllegalStateException {
+		Entry entry = new Entry(game);
+		// Check and queue under the lock close() queues its end marker under, so no game is queued after it
+		synchronized (queue) {
+			if (closed) {
+				throw new IllegalStateException("Journal is closed");
+			}
+			queue.add(entry);
+		}
+		return entry.written;
+	}
+	
+	/**
+	 * Get number of games written so far
+	 * @return 
+	 */
+	public long getNumWritten() {
+		return numWritten.get();
+	}
+	
+	/**
+	 * Get number of groups of games written so far, each with one write and sync
+	 * @return 
+	 */
+	public long getNumCommits() {
+		return numCommits.get();
+	}
+	
+	/**
+	 * Write all queued games, stop the writer thread, and close the file
+	 * @throws IOException 
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (queue) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			queue.add(END_OF_QUEUE);
+		}
+		try {
+			writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			channel.close();
+		}
+	}
+	
+	// Writer thread loop: wait for games, then write all that are queued, as one group.
+	// If a group fails, it is cut off the file, so later groups follow the last good one.
+	private void writeGroups() {
+		List<Entry> group = new ArrayList<>();
+		IOException failure = null;
+		boolean endOfQueue = false;
+		while (!endOfQueue || !queue.isEmpty()) {
+			try {
+				if (!endOfQueue) {
+					group.add(queue.take());
+				}
+			} catch (InterruptedException e) {
+				endOfQueue = true;
+			}
+			queue.drainTo(group, MAX_GROUP_SIZE - group.size());
+			if (group.remove(END_OF_QUEUE)) {
+				endOfQueue = true;
+			}
+			if (failure != null) {
+				// File could not be cut back after a failed group, so write no more games
+				IOException writerFailure = failure;
+				group.forEach(entry -> entry.written.completeExceptionally(writerFailure));
+				group.clear();
+				continue;
+			}
+			long groupStart = -1;
+			try {
+				groupStart = channel.position();
+				for (Entry entry : group) {
+					encode(entry.game);
+				}
+				writeBuffer();
+				if (forceToDisk) {
+					channel.force(false);
+				}
+				numWritten.addAndGet(group.size());
+				numCommits.incrementAndGet();
+				group.forEach(entry -> entry.written.complete(null));
+			} catch (IOException | RuntimeException e) {
+				e.printStackTrace();
+				buffer.clear();
+				group.forEach(entry -> entry.written.completeExceptionally(e));
+				failure = truncateGroup(groupStart);
+			}
+			group.clear();
+		}
+	}
+	
+	// Helper to cut off any part of a failed group already written, returning the
+	// error if the file could not be cut back
+	private IOException truncateGroup(long groupStart) {
+		try {
+			if (groupStart < 0) {
+				throw new IOException("Journal position unknown");
+			}
+			channel.truncate(groupStart);
+			channel.position(groupStart);
+			return null;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return e;
+		}
+	}
+	
+	// Helper to add a game's record to the buffer, writing the buffer first if full
+	private void encode(GameRecord game) throws IOException {
+		// Board shape and tokens, then move count and moves, each of at most 5 bytes as varints
+		int maxLength = LENGTH_SIZE + SHAPE_SIZE + 5 * (game.getNumMoves() + 1) + CHECKSUM_SIZE;
+		if (buffer.remaining() < maxLength) {
+			writeBuffer();
+			if (buffer.capacity() < maxLength) {
+				buffer = ByteBuffer.allocateDirect(maxLength);
+			}
+		}
+		int start = buffer.position();
+		buffer.position(start + LENGTH_SIZE);
+		buffer.putShort((short) game.getNumRows());
+		buffer.putShort((short) game.getNumColumns());
+		buffer.putShort((short) game.getWinLength());
+		buffer.putShort((short) (encodeToken(game.getPlayerToken()) << 8 | encodeToken(game.getWinner())));
+		putVarint(buffer, game.getNumMoves());
+		for (int index = 0; index < game.getNumMoves(); index++) {
+			putVarint(buffer, game.getCell(index));
+		}
+		int end = buffer.position();
+		buffer.putInt(start, end - start - LENGTH_SIZE);
+
+		// Checksum the body, through a view of it, leaving the buffer's position at its end
+		ByteBuffer body = buffer.duplicate();
+		body.position(start + LENGTH_SIZE).limit(end);
+		checksum.reset();
+		checksum.update(body);
+		buffer.putInt((int) checksum.getValue());
+	}
+	
+	// Helper to write the buffered bytes to the file
+	private void writeBuffer() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+	
+	/**
+	 * Perform an action for each game in a journal, streaming games rather than
+	 * loading them all at once. Reading stops at the first partly written record.
+	 * @param file
+	 * @param action
+	 * @return number of games read
+	 * @throws IOException if file cannot be read, or is not a journal
+	 */
+	public static long forEachGame(File file, Consumer<GameRecord> action) throws IOException {
+		long[] numRead = new long[1];
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			scan(channel, file, game -> {
+				action.accept(game);
+				numRead[0]++;
+			});
+		}
+		return numRead[0];
+	}
+	
+	// Helper to read every complete record of a journal, from the start, returning the
+	// offset of the end of the last complete record
+	private static long scan(FileChannel channel, File file, Consumer<GameRecord> action) throws IOException {
+		channel.position(0);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		buffer.flip();
+		if (!fill(channel, buffer, HEADER_SIZE) || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+			throw new IOException("Not a game journal: " + file);
+		}
+		long end = HEADER_SIZE;
+		CRC32 checksum = new CRC32();
+		while (fill(channel, buffer, LENGTH_SIZE)) {
+			int length = buffer.getInt();
+			if (length < SHAPE_SIZE || length > channel.size() - end - LENGTH_SIZE - CHECKSUM_SIZE) {
+				break;
+			}
+			if (buffer.capacity() < length + CHECKSUM_SIZE) {
+				buffer = ByteBuffer.allocateDirect(length + CHECKSUM_SIZE).put(buffer);
+				buffer.flip();
+			}
+			if (!fill(channel, buffer, length + CHECKSUM_SIZE)) {
+				break;
+			}
+			ByteBuffer body = buffer.slice();
+			body.limit(length);
+			checksum.reset();
+			checksum.update(body);
+			body.flip();
+			buffer.position(buffer.position() + length);
+			if (buffer.getInt() != (int) checksum.getValue()) {
+				break;
+			}
+			action.accept(decode(body));
+			end += LENGTH_SIZE + length + CHECKSUM_SIZE;
+		}
+		return end;
+	}
+	
+	// Helper to decode a game from a record body
+	private static GameRecord decode(ByteBuffer body) throws IOException {
+		try {
+			int numRows = body.getShort() & 0xFFFF;
+			int numColumns = body.getShort() & 0xFFFF;
+			int winLength = body.getShort() & 0xFFFF;
+			Token playerToken = decodeToken(body.get());
+			Token winner = decodeToken(body.get());
+			int[] cells = new int[getVarint(body)];
+			for (int index = 0; index < cells.length; index++) {
+				cells[index] = getVarint(body);
+			}
+			return new GameRecord(numRows, numColumns, winLength, playerToken, winner, cells);
+		} catch (RuntimeException e) {
+			throw new IOException("Invalid game record", e);
+		}
+	}
+	
+	// Helper to read from a channel until a buffer holds at least specified number
+	// of bytes, returning false if the end of the channel is reached first
+	private static boolean fill(FileChannel channel, ByteBuffer buffer, int length) throws IOException {
+		while (buffer.remaining() < length) {
+			buffer.compact();
+			int numRead = channel.read(buffer);
+			buffer.flip();
+			if (numRead < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	// Helper to encode a token as a byte: 0 for none, then X, O
+	private static int encodeToken(Token token) {
+		return token != null ? token.ordinal() + 1 : 0;
+	}
+	
+	// Helper to decode a token from a byte
+	private static Token decodeToken(byte value) {
+		return value != 0 ? Token.values()[value - 1] : null;
+	}
+	
+	// Helper to write a non-negative int in 7-bit groups, low first, with the high bit
+	// set on all but the last
+	private static void putVarint(ByteBuffer buffer, int value) {
+		while ((value & ~0x7F) != 0) {
+			buffer.put((byte) (value & 0x7F | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+	
+	// Helper to read an int written by putVarint
+	private static int getVarint(ByteBuffer buffer) {
+		int value = 0;
+		for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+			byte b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Invalid varint");
+	}
+	
+	/**
+	 * A game queued to be written, and its result.
+	 */
+	private static final class Entry {
+		private final GameRecord game;
+		private final CompletableFuture<Void> written = new CompletableFuture<>();
+
+		private Entry(GameRecord game) {
+			this.game = game;
+		}
+	}
+	
+	/**
+	 * Main method: print a summary of each game in journals
+	 * @param args journal files
+	 * @throws IOException 
+	 */
+	public static void main(String[] args) throws IOException {
+		for (String filename : args.length > 0 ? args : new String[] {DEFAULT_FILENAME}) {
+			long numGames = forEachGame(new File(filename), System.out::println);
+			System.out.println(filename + ": " + numGames + " games");
+		}
+	}
+}
@@ -0,0 +1,193 @@
+package com.simplyautomatic.tictactoe;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Runtime metrics of the game and A.I. hot paths, shared by all games in the JVM:
+ * counters, and latency histograms, all updated lock-free, so they can be recorded
+ * on every move. Metrics are published over JMX, under the domain of this package,
+ * and can be logged periodically by a {@link MetricsReporter}.
+ */
+public class GameMetrics implements GameMetricsMBean {
+	public static final String JMX_DOMAIN = "com.simplyautomatic.tictactoe";
+	private static final GameMetrics INSTANCE = new GameMetrics();
+
+	private final LatencyHistogram cpuMoveLatency = new LatencyHistogram();
+	private final LatencyHistogram storeLookupLatency = new LatencyHistogram();
+	private final LatencyHistogram storeInsertLatency = new LatencyHistogram();
+	private final LongAdder cacheHits = new LongAdder();
+	private final LongAdder cacheMisses = new LongAdder();
+	private final LongAdder bloomFilterRejections = new LongAdder();
+	private final LongAdder losingMovesRejected = new LongAdder();
+	private final LongAdder losingMovesRecorded = new LongAdder();
+	private final LongAdder concessions = new LongAdder();
+	private final LongAdder timeoutFallbacks = new LongAdder();
+	private final LongAdder storeErrors = new LongAdder();
+
+	// Construct the shared metrics, and register them with the platform MBean server
+	private GameMetrics() {
+		registerMBean(this, "type=GameMetrics");
+		registerMBean(cpuMoveLatency, "type=LatencyHistogram,name=CpuMove");
+		registerMBean(storeLookupLatency, "type=LatencyHistogram,name=StoreLookup");
+		registerMBean(storeInsertLatency, "type=LatencyHistogram,name=StoreInsert");
+	}
+	
+	/**
+	 * Get the metrics shared by all games
+	 * @return 
+	 */
+	public static GameMetrics getInstance() {
+		return INSTANCE;
+	}
+	
+	// Helper to register an MBean, ignoring failure, as metrics are not essential
+	private static void registerMBean(Object mbean, String properties) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(mbean, new ObjectName(JMX_DOMAIN + ":" + properties));
+		} catch (InstanceAlreadyExistsException e) {
+			// Registered by another class loader: keep the first
+		} catch (JMException | SecurityException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Get latencies of CPU move selection, in whichever strategy is used
+	 * @return 
+	 */
+	public LatencyHistogram getCpuMoveLatency() {
+		return cpuMoveLatency;
+	}
+	
+	/**
+	 * Get latencies of board state lookups in the database
+	 * @return 
+	 */
+	public LatencyHistogram getStoreLookupLatency() {
+		return storeLookupLatency;
+	}
+	
+	/**
+	 * Get latencies of board state inserts in the database: each call counts once,
+	 * including a batch
+	 * @return 
+	 */
+	public LatencyHistogram getStoreInsertLatency() {
+		return storeInsertLatency;
+	}
+	
+	/**
+	 * Count a board state lookup answered by the cache
+	 */
+	public void recordCacheHit() {
+		cacheHits.increment();
+	}
+	
+	/**
+	 * Count a board state lookup passed through the cache to the store
+	 */
+	public void recordCacheMiss() {
+		cacheMisses.increment();
+	}
+	
+	/**
+	 * Count a board state lookup answered by the Bloom filter
+	 */
+	public void recordBloomFilterRejection() {
+		bloomFilterRejections.increment();
+	}
+	
+	/**
+	 * Count a candidate CPU move rejected as a known losing move
+	 */
+	public void recordLosingMoveRejected() {
+		losingMovesRejected.increment();
+	}
+	
+	/**
+	 * Count a losing CPU move recorded
+	 */
+	public void recordLosingMoveRecorded() {
+		losingMovesRecorded.increment();
+	}
+	
+	/**
+	 * Count a game conceded by the CPU
+	 */
+	public void recordConcession() {
+		concessions.increment();
+	}
+	
+	/**
+	 * Count a CPU move played by the fallback strategy
+	 */
+	public void recordTimeoutFallback() {
+		timeoutFallbacks.increment();
+	}
+	
+	/**
+	 * Count an error from the board state store
+	 */
+	public void recordStoreError() {
+		storeErrors.increment();
+	}
+	
+	@Override
+	public long getCacheHits() {
+		return cacheHits.sum();
+	}
+	
+	@Override
+	public long getCacheMisses() {
+		return cacheMisses.sum();
+	}
+	
+	@Override
+	public long getBloomFilterRejections() {
+		return bloomFilterRejections.sum();
+	}
+	
+	@Override
+	public long getLosingMovesRejected() {
+		return losingMovesRejected.sum();
+	}
+	
+	@Override
+	public long getLosingMovesRecorded() {
+		return losingMovesRecorded.sum();
+	}
+	
+	@Override
+	public long getConcessions() {
+		return concessions.sum();
+	}
+	
+	@Override
+	public long getTimeoutFallbacks() {
+		return timeoutFallbacks.sum();
+	}
+	
+	@Override
+	public long getStoreErrors() {
+		return storeErrors.sum();
+	}
+	
+	/**
+	 * Get a summary of all metrics
+	 * @return 
+	 */
+	@Override
+	public String toString() {
+		return "cpu move: " + cpuMoveLatency + "; store lookup: " + storeLookupLatency + "; store insert: "
+				+ storeInsertLatency + "; cache hits=" + getCacheHits() + ", cache misses=" + getCacheMisses()
+				+ ", bloom filter rejections=" + getBloomFilterRejections() + ", losing moves rejected="
+				+ getLosingMovesRejected() + ", losing moves recorded=" + getLosingMovesRecorded() + ", concessions="
+				+ getConcessions() + ", timeout fallbacks=" + getTimeoutFallbacks() + ", store errors=" + getStoreErrors();
+	}
+}
@@ -0,0 +1,56 @@
+package com.simplyautomatic.tictactoe;
+
+/**
+ * JMX view of the counters of {@link GameMetrics}. Latency histograms are
+ * registered as separate MBeans (see {@link LatencyHistogramMBean}).
+ */
+public interface GameMetricsMBean {
+
+	/**
+	 * Get number of board state lookups answered by the cache
+	 * @return 
+	 */
+	long getCacheHits();
+
+	/**
+	 * Get number of board state lookups passed through the cache to the store
+	 * @return 
+	 */
+	long getCacheMisses();
+
+	/**
+	 * Get number of board state lookups answered by the Bloom filter
+	 * @return 
+	 */
+	long getBloomFilterRejections();
+
+	/**
+	 * Get number of candidate CPU moves rejected as known losing moves
+	 * @return 
+	 */
+	long getLosingMovesRejected();
+
+	/**
+	 * Get number of losing CPU moves recorded
+	 * @return 
+	 */
+	long getLosingMovesRecorded();
+
+	/**
+	 * Get number of games conceded by the CPU
+	 * @return 
+	 */
+	long getConcessions();
+
+	/**
+	 * Get number of CPU moves played by the fallback strategy, after a timeout or error
+	 * @return 
+	 */
+	long getTimeoutFallbacks();
+
+	/**
+	 * Get number of errors from the board state store
+	 * @return 
+	 */
+	long getStoreErrors();
+}
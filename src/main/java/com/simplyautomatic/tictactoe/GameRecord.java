@@ -0,0 +1,171 @@
+package com.simplyautomatic.tictactoe;
+
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Record of a finished game: the shape of the board, the tokens of the player and
+ * the winner, and every move in order, X first, as 0-indexed cells in row-major
+ * order. Records are immutable, so can be shared between threads, e.g. to be
+ * journaled (see {@link GameJournal}) and learned from at once.
+ */
+public final class GameRecord {
+	private final int numRows;
+	private final int numColumns;
+	private final int winLength;
+	private final Token playerToken;
+	private final Token winner;
+	private final int[] cells;
+
+	/**
+	 * Construct a record
+	 * @param numRows
+	 * @param numColumns
+	 * @param winLength number of tokens in a row needed to win
+	 * @param playerToken token of the human player, or null if none (e.g. self-play)
+	 * @param winner token of the winner, or null if drawn
+	 * @param cells cell of each move, in order
+	 * @throws IllegalArgumentException if a cell is not on the board
+	 */
+	public GameRecord(int numRows, int numColumns, int winLength, Token playerToken, Token winner, int[] cells)
+			throws IllegalArgumentException {
+		for (int cell : cells) {
+			if (cell < 0 || cell >= numRows * numColumns) {
+				throw new IllegalArgumentException("Invalid cell: " + cell);
+			}
+		}
+		this.numRows = numRows;
+		this.numColumns = numColumns;
+		this.winLength = winLength;
+		this.playerToken = playerToken;
+		this.winner = winner;
+		this.cells = cells.clone();
+	}
+	
+	/**
+	 * Construct a record of a game played on a board
+	 * @param board board the game was played on
+	 * @param moves every (1-indexed) move of the game, in order
+	 * @param playerToken token of the human player, or null if none (e.g. self-play)
+	 * @param winner token of the winner, or null if drawn
+	 */
+	public GameRecord(GameBoard board, List<Point> moves, Token playerToken, Token winner) {
+		this(board.getNumRows(), board.getNumColumns(), board.getWinLength(), playerToken, winner,
+				moves.stream().mapToInt(move -> (move.x - 1) * board.getNumColumns() + move.y - 1).toArray());
+	}
+	
+	/**
+	 * Get number of rows.
+	 * @return 
+	 */
+	public int getNumRows() {
+		return numRows;
+	}
+	
+	/**
+	 * Get number of columns.
+	 * @return 
+	 */
+	public int getNumColumns() {
+		return numColumns;
+	}
+	
+	/**
+	 * Get number of tokens in a row needed to win.
+	 * @return 
+	 */
+	public int getWinLength() {
+		return winLength;
+	}
+	
+	/**
+	 * Get token of the human player
+	 * @return token, or null if none
+	 */
+	public Token getPlayerToken() {
+		return playerToken;
+	}
+	
+	/**
+	 * Get token of the winner: the player who completed a line, or whose opponent
+	 * conceded
+	 * @return token, or null if drawn
+	 */
+	public Token getWinner() {
+		return winner;
+	}
+	
+	/**
+	 * Get number of moves played.
+	 * @return 
+	 */
+	public int getNumMoves() {
+		return cells.length;
+	}
+	
+	/**
+	 * Get the cell of a move
+	 * @param index index of move, from 0
+	 * @return 0-indexed cell, in row-major order
+	 */
+	public int getCell(int index) {
+		return cells[index];
+	}
+	
+	/**
+	 * Get the token which played a move
+	 * @param index index of move, from 0
+	 * @return 
+	 */
+	public Token getMover(int index) {
+		return index % 2 == 0 ? Token.X : Token.O;
+	}
+	
+	/**
+	 * Create a new board, and play the first moves of the game on it
+	 * @param numMoves number of moves to play
+	 * @return 
+	 */
+	public GameBoard replay(int numMoves) {
+		GameBoard board = new GameBoard(numRows, numColumns, winLength);
+		for (int index = 0; index < numMoves; index++) {
+			playMove(board, index);
+		}
+		return board;
+	}
+	
+	/**
+	 * Play a move of the game on a board
+	 * @param board board with all previous moves of the game played
+	 * @param index index of move, from 0
+	 */
+	public void playMove(GameBoard board, int index) {
+		board.placeToken(getMover(index), cells[index] / numColumns + 1, cells[index] % numColumns + 1);
+	}
+	
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof GameRecord)) {
+			return false;
+		}
+		GameRecord game = (GameRecord) other;
+		return numRows == game.numRows && numColumns == game.numColumns && winLength == game.winLength
+				&& playerToken == game.playerToken && winner == game.winner && Arrays.equals(cells, game.cells);
+	}
+	
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(cells) * 31 + numRows * numColumns;
+	}
+	
+	/**
+	 * Get a summary of the game
+	 * @return 
+	 */
+	@Override
+	public String toString() {
+		return numRows + "x" + numColumns + " " + winLength + ", " + cells.length + " moves, "
+				+ (winner != null ? winner + " won" : "drawn");
+	}
+}
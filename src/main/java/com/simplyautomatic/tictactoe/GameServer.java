@@ -0,0 +1,379 @@
+package com.simplyautomatic.tictactoe;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Headless game server, hosting many players at once over a simple line protocol:
+ * each connection plays its own session, sending one line per command, and
+ * receiving the same prompts and boards as the console game. The connection is
+ * closed when the player chooses not to play again.
+ * <p>
+ * A single selector thread accepts connections and does all socket I/O, without
+ * blocking. Complete lines are handed to a pool of worker threads, which run each
+ * connection's lines in order, one at a time. While the computer chooses a move,
+ * its session holds no worker: the move is chosen on the strategy's own threads,
+ * and the session's output is written, and its next line run, once it is played.
+ * All sessions share one store of losing moves, one repository of results by
+ * position, one journal of games, and one move strategy, with one solver and one
+ * alpha-beta search, whose threads are shut down when the server stops.
+ */
+public class GameServer implements AutoCloseable {
+	public static final int DEFAULT_PORT = 4000;
+	public static final int MAX_LINE_LENGTH = 1024;
+	public static final int ACCEPT_BACKLOG = 1024;
+	private static final String END_OF_INPUT = new String();
+
+	private final BoardStateStore losingMoves;
+	private final PositionStatsRepository positionStats;
+	private final GameJournal journal;
+	private final LazySmpStrategy search;
+	private final MoveStrategy cpuStrategy;
+	private final Selector selector;
+	private final ServerSocketChannel serverChannel;
+	private final ExecutorService workers;
+	private final Queue<Connection> pendingWrites;
+	private volatile boolean running;
+
+	/**
+	 * Construct a server, listening on specified local port
+	 * @param port port to listen on, or 0 for any free port
+	 * @param losingMoves shared store of losing moves, which must be thread-safe
+	 * @param numThreads number of worker threads, to run sessions
+	 * @throws IOException if cannot listen on port
+	 */
+	public GameServer(int port, BoardStateStore losingMoves, int numThreads) throws IOException {
+		this(port, losingMoves, numThreads, null);
+	}
+	
+	/**
+	 * Construct a server, listening on specified local port, with sessions searching 
+	 * with MCTS on boards too large to solve
+	 * @param port port to listen on, or 0 for any free port
+	 * @param losingMoves shared store of losing moves, which must be thread-safe
+	 * @param numThreads number of worker threads, to run sessions
+	 * @param mcts shared search for larger boards, or null to play random, but not losing, moves
+	 * @throws IOException if cannot listen on port
+	 */
+	public GameServer(int port, BoardStateStore losingMoves, int numThreads, MctsStrategy mcts) throws IOException {
+		this(port, losingMoves, null, numThreads, mcts);
+	}
+	
+	/**
+	 * Construct a server, listening on specified local port, with sessions recording
+	 * the results of games, and playing by them on boards too large to solve unless
+	 * searching with MCTS
+	 * @param port port to listen on, or 0 for any free port
+	 * @param losingMoves shared store of losing moves, which must be thread-safe
+	 * @param positionStats shared repository of results by position, or null not to record results
+	 * @param numThreads number of worker threads, to run sessions
+	 * @param mcts shared search for larger boards, or null to play by past results
+	 * @throws IOException if cannot listen on port
+	 */
+	public GameServer(int port, BoardStateStore losingMoves, PositionStatsRepository positionStats, int numThreads,
+			MctsStrategy mcts) throws IOException {
+		this(port, losingMoves, positionStats, null, numThreads, mcts);
+	}
+	
+	/**
+	 * Construct a server, listening on specified local port, with sessions recording
+	 * the results of games, and journaling their moves, and playing by past results
+	 * on boards too large to solve unless searching with MCTS
+	 * @param port port to listen on, or 0 for any free port
+	 * @param losingMoves shared store of losing moves, which must be thread-safe
+	 * @param positionStats shared repository of results by position, or null not to record results
+	 * @param journal shared journal to append each finished game to, or null not to journal games
+	 * @param numThreads number of worker threads, to run sessions
+	 * @param mcts shared search for larger boards, or null to play by past results
+	 * @throws IOException if cannot listen on port
+	 */
+	public GameServer(int port, BoardStateStore losingMoves, PositionStatsRepository positionStats, GameJournal journal,
+			int numThreads, MctsStrategy mcts) throws IOException {
+		this.losingMoves = losingMoves;
+		this.positionStats = positionStats;
+		this.journal = journal;
+		this.search = new LazySmpStrategy();
+		this.cpuStrategy = GameSession.createDefaultStrategy(losingMoves, positionStats, new NegamaxSolver(), search, mcts);
+		this.selector = Selector.open();
+		this.serverChannel = ServerSocketChannel.open();
+		this.serverChannel.bind(new InetSocketAddress("localhost", port), ACCEPT_BACKLOG);
+		this.serverChannel.configureBlocking(false);
+		this.serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		this.workers = Executors.newFixedThreadPool(numThreads);
+		this.pendingWrites = new ConcurrentLinkedQueue<>();
+		this.running = true;
+	}
+	
+	/**
+	 * Get port server is listening on
+	 * @return
+	 * @throws IOException 
+	 */
+	public int getPort() throws IOException {
+		return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+	}
+	
+	/**
+	 * Run the selector loop, until the server is closed
+	 */
+	public void run() {
+		try {
+			while (running) {
+				selector.select();
+				// Wait to write to connections with new output
+				Connection connection;
+				while ((connection = pendingWrites.poll()) != null) {
+					if (connection.key.isValid()) {
+						connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_WRITE);
+					}
+				}
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					try {
+						if (key.isValid() && key.isAcceptable()) {
+							accept();
+						}
+						if (key.isValid() && key.isReadable()) {
+							((Connection) key.attachment()).read();
+						}
+						if (key.isValid() && key.isWritable()) {
+							((Connection) key.attachment()).write();
+						}
+					} catch (IOException e) {
+						closeChannel(key);
+					}
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			for (SelectionKey key : selector.keys()) {
+				closeChannel(key);
+			}
+			workers.shutdown();
+			search.close();
+		}
+	}
+	
+	/**
+	 * Stop the server, closing all connections. The store, repository and journal are not closed.
+	 */
+	@Override
+	public void close() {
+		running = false;
+		selector.wakeup();
+	}
+	
+	// Helper to accept a new connection, and start its session
+	private void accept() throws IOException {
+		SocketChannel channel = serverChannel.accept();
+		if (channel == null) {
+			return;
+		}
+		channel.configureBlocking(false);
+		Connection connection = new Connection(channel.register(selector, SelectionKey.OP_READ));
+		connection.key.attach(connection);
+		connection.start();
+	}
+	
+	// Helper to close a channel, ignoring errors
+	private static void closeChannel(SelectionKey key) {
+		key.cancel();
+		try {
+			key.channel().close();
+		} catch (IOException e) {
+			// Already closed
+		}
+	}
+	
+	/**
+	 * State of one client connection: its session, and its input and output, in
+	 * transit between the selector thread and the workers.
+	 */
+	private class Connection {
+		private final SelectionKey key;
+		private final GameSession session;
+		private final ByteArrayOutputStream sessionOutput;
+
+		// Input, from selector thread to workers:
+		private final ByteBuffer readBuffer = ByteBuffer.allocate(MAX_LINE_LENGTH);
+		private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+		private final Queue<String> pendingLines = new ConcurrentLinkedQueue<>();
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+
+		// Output, from workers to selector thread:
+		private final Queue<ByteBuffer> pendingOutput = new ConcurrentLinkedQueue<>();
+		private volatile boolean finished;
+
+		Connection(SelectionKey key) throws UnsupportedEncodingException {
+			this.key = key;
+			this.sessionOutput = new ByteArrayOutputStream();
+			this.session = new GameSession(new PrintStream(sessionOutput, true, "UTF-8"), losingMoves, positionStats,
+					journal, cpuStrategy, GameSession.DEFAULT_MOVE_MILLIS);
+		}
+
+		// Read available input, and queue each complete line for the session
+		void read() throws IOException {
+			readBuffer.clear();
+			int numRead = ((SocketChannel) key.channel()).read(readBuffer);
+			if (numRead < 0) {
+				// Client sent all its input: stop reading, and close once its session has caught up
+				key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+				submit(END_OF_INPUT);
+				return;
+			}
+			for (int i = 0; i < numRead; i++) {
+				byte b = readBuffer.get(i);
+				if (b == '\n') {
+					String text = new String(line.toByteArray(), StandardCharsets.UTF_8);
+					line.reset();
+					submit(text.endsWith("\r") ? text.substring(0, text.length() - 1) : text);
+				} else if (line.size() >= MAX_LINE_LENGTH) {
+					throw new IOException("Line too long");
+				} else {
+					line.write(b);
+				}
+			}
+		}
+
+		// Write as much queued output as the socket will take, then close if finished
+		void write() throws IOException {
+			SocketChannel channel = (SocketChannel) key.channel();
+			ByteBuffer buffer;
+			while ((buffer = pendingOutput.peek()) != null) {
+				channel.write(buffer);
+				if (buffer.hasRemaining()) {
+					return;
+				}
+				pendingOutput.poll();
+			}
+			key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+			if (finished) {
+				closeChannel(key);
+			}
+		}
+
+		// Schedule a worker to start the session, and run any lines which arrive meanwhile
+		void start() {
+			scheduled.set(true);
+			workers.execute(() -> {
+				session.start();
+				handleLines();
+			});
+		}
+
+		// Queue a line for the session, and schedule a worker if none is running
+		void submit(String text) {
+			pendingLines.add(text);
+			if (scheduled.compareAndSet(false, true)) {
+				workers.execute(this::handleLines);
+			}
+		}
+
+		// Worker task: run queued lines through the session, one at a time, in order. If
+		// a line waits for a computer move, the task ends, and is rescheduled once the
+		// move is played, still counting as scheduled, so no other worker runs lines.
+		private void handleLines() {
+			do {
+				String text;
+				while ((text = pendingLines.poll()) != null && !session.isFinished()) {
+					if (text == END_OF_INPUT) {
+						finished = true;
+						break;
+					}
+					try {
+						CompletableFuture<Void> handled = session.handleInputAsync(text);
+						if (!handled.isDone()) {
+							flushSessionOutput();
+							handled.whenComplete((result, e) -> {
+								if (e != null) {
+									e.printStackTrace();
+									finished = true;
+								}
+								workers.execute(this::handleLines);
+							});
+							return;
+						}
+						handled.join();
+					} catch (RuntimeException e) {
+						e.printStackTrace();
+						finished = true;
+					}
+				}
+				flushSessionOutput();
+				scheduled.set(false);
+			} while (!pendingLines.isEmpty() && !finished && scheduled.compareAndSet(false, true));
+		}
+
+		// Helper to hand session output to the selector thread, to be written
+		private void flushSessionOutput() {
+			if (session.isFinished()) {
+				finished = true;
+			}
+			if (sessionOutput.size() > 0) {
+				pendingOutput.add(ByteBuffer.wrap(sessionOutput.toByteArray()));
+				sessionOutput.reset();
+			} else if (!finished) {
+				return;
+			}
+			pendingWrites.add(this);
+			selector.wakeup();
+		}
+	}
+	
+	/**
+	 * Main method: run a game server
+	 * @param args port, number of worker threads, and "mcts" to search with MCTS on large boards (defaults 4000, all cores, off)
+	 * @throws IOException 
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		int numThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		MctsStrategy mcts = args.length > 2 && args[2].equalsIgnoreCase("mcts") ? new MctsStrategy() : null;
+		Thread mainThread = Thread.currentThread();
+		try (BoardStateStore losingMoves = new ConcurrentBoardStateStore(new BoardStateRepository());
+				PositionStatsRepository positionStats = new PositionStatsRepository();
+				GameJournal journal = new GameJournal(new File(GameJournal.DEFAULT_FILENAME))) {
+			// The server is stopped by the shutdown hook, and releases its connections as run() returns
+			GameServer server = new GameServer(port, losingMoves, positionStats, journal, numThreads, mcts);
+			MetricsReporter reporter = new MetricsReporter(GameMetrics.getInstance(), MetricsReporter.DEFAULT_PERIOD_SECONDS);
+			try {
+				// On shutdown, stop the server, and wait for queued losing moves and games to be written
+				Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+					server.close();
+					try {
+						mainThread.join();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}));
+				System.out.println("Tic-tac-toe server listening on port " + server.getPort());
+				server.run();
+			} finally {
+				reporter.close();
+				if (mcts != null) {
+					mcts.close();
+				}
+			}
+		}
+	}
+}
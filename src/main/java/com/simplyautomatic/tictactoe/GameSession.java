@@ -0,0 +1,454 @@
+package com.simplyautomatic.tictactoe;
+
+import java.awt.Point;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A session of tic-tac-toe games against the computer, for one player. The session
+ * owns its board, tokens and turn, and is driven one line of player input at a
+ * time, printing prompts and results to its output stream, so any number of
+ * sessions can be hosted at once. Sessions may share a store of losing moves, a
+ * repository of results by position, a journal of games, and a move strategy.
+ * Input may be handled without waiting for the computer's moves (see
+ * {@link #handleInputAsync(String)}), so a host need not hold a thread per session
+ * while the computer thinks.
+ */
+public class GameSession {
+	public static final long DEFAULT_MOVE_MILLIS = 2000;
+	private static final GameMetrics METRICS = GameMetrics.getInstance();
+	private static final Logger LOGGER = Logger.getLogger(GameSession.class.getName());
+	private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+	// Board size entry: a size, or rows x columns, optionally followed by number in a row to win
+	private static final Pattern BOARD_SIZE_PATTERN = Pattern.compile("(\\d{1,5})(?:\\s*[xX]\\s*(\\d{1,5}))?(?:\\s+(\\d{1,5}))?");
+
+	// Largest board shown in full: larger boards are shown in a window around the latest moves
+	public static final int VIEWPORT_SIZE = 15;
+
+	private enum State {
+		BOARD_SIZE,
+		TOKEN,
+		MOVE,
+		PLAY_AGAIN,
+		FINISHED
+	}
+	
+	// I/O:
+	private final PrintStream out;
+
+	// Game state:
+	private State state;
+	private GameBoard board;
+	private GameBoard lastMoveBoard;
+	private Token playerToken;
+	private Token cpuToken;
+	private Token currentTurnToken;
+	private final List<Point> moves = new ArrayList<>();
+
+	// AI:
+	private final BoardStateStore losingMoves;
+	private final PositionStatsRepository positionStats;
+	private final GameJournal journal;
+	private final MoveStrategy cpuStrategy;
+	private final long moveMillis;
+
+	/**
+	 * Construct a new session
+	 * @param outStream output stream to print prompts, results and errors
+	 * @param losingMoves store of losing board states
+	 * @param solver solver for small boards
+	 * @param search search for boards small enough to search, which the caller closes
+	 */
+	public GameSession(PrintStream outStream, BoardStateStore losingMoves, NegamaxSolver solver, LazySmpStrategy search) {
+		this(outStream, losingMoves, solver, search, null);
+	}
+	
+	/**
+	 * Construct a new session, searching with MCTS on boards too large to search
+	 * @param outStream output stream to print prompts, results and errors
+	 * @param losingMoves store of losing board states
+	 * @param solver solver for small boards
+	 * @param search search for boards small enough to search, which the caller closes
+	 * @param mcts search for larger boards, or null to play random, but not losing, moves
+	 */
+	public GameSession(PrintStream outStream, BoardStateStore losingMoves, NegamaxSolver solver, LazySmpStrategy search,
+			MctsStrategy mcts) {
+		this(outStream, losingMoves, createDefaultStrategy(losingMoves, solver, search, mcts), DEFAULT_MOVE_MILLIS);
+	}
+	
+	/**
+	 * Construct a new session, with the computer's moves chosen by specified strategy
+	 * @param outStream output stream to print prompts, results and errors
+	 * @param losingMoves store of losing board states
+	 * @param cpuStrategy strategy to choose the computer's moves
+	 * @param moveMillis time allowed for each of the computer's moves
+	 */
+	public GameSession(PrintStream outStream, BoardStateStore losingMoves, MoveStrategy cpuStrategy, long moveMillis) {
+		this(outStream, losingMoves, null, cpuStrategy, moveMillis);
+	}
+	
+	/**
+	 * Construct a new session, recording the result of each game for every position
+	 * in it, with the computer's moves chosen by specified strategy
+	 * @param outStream output stream to print prompts, results and errors
+	 * @param losingMoves store of losing board states
+	 * @param positionStats repository of results by position, or null not to record results
+	 * @param cpuStrategy strategy to choose the computer's moves
+	 * @param moveMillis time allowed for each of the computer's moves
+	 */
+	public GameSession(PrintStream outStream, BoardStateStore losingMoves, PositionStatsRepository positionStats,
+			MoveStrategy cpuStrategy, long moveMillis) {
+		this(outStream, losingMoves, positionStats, null, cpuStrategy, moveMillis);
+	}
+	
+	/**
+	 * Construct a new session, recording the result of each game for every position
+	 * in it, and journaling the moves of each game, with the computer's moves chosen
+	 * by specified strategy
+	 * @param outStream output stream to print prompts, results and errors
+	 * @param losingMoves store of losing board states
+	 * @param positionStats repository of results by position, or null not to record results
+	 * @param journal journal to append each finished game to, or null not to journal games
+	 * @param cpuStrategy strategy to choose the computer's moves
+	 * @param moveMillis time allowed for each of the computer's moves
+	 */
+	public GameSession(PrintStream outStream, BoardStateStore losingMoves, PositionStatsRepository positionStats,
+			GameJournal journal, MoveStrategy cpuStrategy, long moveMillis) {
+		this.out = outStream;
+		this.losingMoves = losingMoves;
+		this.positionStats = positionStats;
+		this.journal = journal;
+		this.cpuStrategy = cpuStrategy;
+		this.moveMillis = moveMillis;
+	}
+	
+	/**
+	 * Create the default strategy for the computer's moves: the best move from a
+	 * tablebase in the working directory, if there is one for the board, or on boards
+	 * small enough to solve exactly, or else the best found by an alpha-beta search on
+	 * all cores, on boards small enough to search (see {@link LazySmpStrategy}),
+	 * otherwise the best found by MCTS, if enabled, or random, but not a known losing
+	 * move. If a move is not found in time, a winning, blocking or nearby move is
+	 * played instead (see {@link QuickMoveStrategy}). The solver and searches are
+	 * not copied, so may be shared by many strategies, and are left to the caller to
+	 * close.
+	 * @param losingMoves store of losing board states
+	 * @param solver solver for small boards
+	 * @param search search for boards small enough to search
+	 * @param mcts search for larger boards, or null to play random, but not losing, moves
+	 * @return 
+	 */
+	public static MoveStrategy createDefaultStrategy(BoardStateStore losingMoves, NegamaxSolver solver, LazySmpStrategy search,
+			MctsStrategy mcts) {
+		return createDefaultStrategy(losingMoves, null, solver, search, mcts);
+	}
+	
+	/**
+	 * Create the default strategy for the computer's moves (see 
+	 * {@link #createDefaultStrategy(BoardStateStore, NegamaxSolver, LazySmpStrategy, MctsStrategy)}),
+	 * choosing the move with the best results in past games, instead of a random
+	 * move, on boards too large to search, if MCTS is not enabled.
+	 * @param losingMoves store of losing board states
+	 * @param positionStats repository of results by position, or null to play random, but not losing, moves
+	 * @param solver solver for small boards
+	 * @param search search for boards small enough to search
+	 * @param mcts search for larger boards, or null to play by past results
+	 * @return 
+	 */
+	public static MoveStrategy createDefaultStrategy(BoardStateStore losingMoves, PositionStatsRepository positionStats,
+			NegamaxSolver solver, LazySmpStrategy search, MctsStrategy mcts) {
+		RandomLearningStrategy learner = new RandomLearningStrategy(losingMoves);
+		MoveStrategy largeBoardStrategy = mcts != null ? mcts : positionStats != null ? new StatsLearningStrategy(positionStats, losingMoves) : learner;
+		MoveStrategy unsolvableBoardStrategy = (board, token, deadlineNanos) -> LazySmpStrategy.canSearch(board)
+				? search.selectMove(board, token, deadlineNanos) : largeBoardStrategy.selectMove(board, token, deadlineNanos);
+		MoveStrategy searchStrategy = new SolvingMoveStrategy(solver, unsolvableBoardStrategy, learner);
+		return new TimeoutMoveStrategy(new TablebaseStrategy(new File("."), searchStrategy), new QuickMoveStrategy());
+	}
+	
+	/**
+	 * Start the session, printing a welcome and the first prompt
+	 */
+	public void start() {
+		out.println("Welcome to tic-tac-toe. Shall we play a game?");
+		startGame();
+	}
+	
+	/**
+	 * Determine whether the player has finished the session
+	 * @return 
+	 */
+	public boolean isFinished() {
+		return state == State.FINISHED;
+	}
+	
+	/**
+	 * Handle a line of player input, printing results and the next prompt, waiting
+	 * for any computer moves it leads to
+	 * @param input 
+	 */
+	public void handleInput(String input) {
+		handleInputAsync(input).join();
+	}
+	
+	/**
+	 * Handle a line of player input, printing results and the next prompt, without
+	 * waiting for the computer's moves: the session plays them, and prints the next
+	 * prompt, on the thread which chooses them. No further input may be handled
+	 * until the returned future completes.
+	 * @param input 
+	 * @return future completed once the session is ready for more input
+	 */
+	public CompletableFuture<Void> handleInputAsync(String input) {
+		switch (state) {
+			case BOARD_SIZE:
+				handleBoardSize(input);
+				return DONE;
+			case TOKEN:
+				return handleToken(input);
+			case MOVE:
+				return handlePlayerMove(input);
+			case PLAY_AGAIN:
+				if (input == null || !input.trim().matches("[yY].*")) {
+					state = State.FINISHED;
+				} else {
+					startGame();
+				}
+				return DONE;
+			default:
+				return DONE;
+		}
+	}
+	
+	// Helper to start a new game, by asking for board size
+	private void startGame() {
+		out.println("Enter desired board size. (For a larger board with fewer in a row to win, enter e.g. 15x15 5.)");
+		state = State.BOARD_SIZE;
+	}
+	
+	// Helper to handle entry of board size, then ask for token preference
+	private void handleBoardSize(String input) {
+		int numRows = 0;
+		int numColumns = 0;
+		int winLength = 0;
+		Matcher matcher = BOARD_SIZE_PATTERN.matcher(input != null ? input.trim() : "");
+		if (matcher.matches()) {
+			numRows = Integer.parseInt(matcher.group(1));
+			numColumns = matcher.group(2) != null ? Integer.parseInt(matcher.group(2)) : numRows;
+			winLength = matcher.group(3) != null ? Integer.parseInt(matcher.group(3)) : Math.min(numRows, numColumns);
+		}
+		if (numRows <= 2 || numColumns <= 2 || winLength <= 2) {
+			out.println("Please enter a valid number, larger than 2.");
+			return;
+		}
+		if (numRows > GameBoard.MAX_SIZE || numColumns > GameBoard.MAX_SIZE) {
+			out.println("Please enter a board size no larger than " + GameBoard.MAX_SIZE + ".");
+			return;
+		}
+		if (winLength > Math.max(numRows, numColumns)) {
+			out.println("Please enter a number in a row to win, no larger than the board.");
+			return;
+		}
+		board = new GameBoard(numRows, numColumns, winLength);
+		lastMoveBoard = new GameBoard(board);
+		out.println("Would you like to play as X or O? (X goes first)");
+		state = State.TOKEN;
+	}
+	
+	// Helper to handle entry of token preference, then start play
+	private CompletableFuture<Void> handleToken(String input) {
+		if (input != null && input.equalsIgnoreCase("X")) {
+			playerToken = Token.X;
+			cpuToken = Token.O;
+		} else if (input != null && input.equalsIgnoreCase("O")) {
+			playerToken = Token.O;
+			cpuToken = Token.X;
+		} else {
+			out.println("Please enter X or O.");
+			return DONE;
+		}
+		currentTurnToken = Token.X;
+		moves.clear();
+
+		// Display initial empty board
+		out.println("Let's play!");
+		printBoard();
+		return playUntilPlayerTurn();
+	}
+	
+	// Helper to handle entry of the player's move, ensuring it is a valid move
+	private CompletableFuture<Void> handlePlayerMove(String input) {
+		// Parse entered coordinates
+		String[] coordinates = input != null ? input.split(",") : new String[0];
+		if (coordinates.length != 2
+				|| !coordinates[0].trim().matches("\\d+") || !coordinates[1].trim().matches("\\d+")) {
+			out.println("Please enter coordinates like 1, 1.");
+			return DONE;
+		}
+		int row = Integer.parseInt(coordinates[0].trim());
+		int column = Integer.parseInt(coordinates[1].trim());
+
+		// Validate coordinates
+		if (row <= 0 || row > board.getNumRows()
+				|| column <= 0 || column > board.getNumColumns()) {
+			if (board.isSquare()) {
+				out.println("Please enter coordinates between 1 and " + board.getBoardSize() + ".");
+			} else {
+				out.println("Please enter coordinates between 1, 1 and " + board.getNumRows() + ", " + board.getNumColumns() + ".");
+			}
+			return DONE;
+		}
+		if (board.getTokenAt(row, column) != null) {
+			out.println("Please enter coordinates of an empty position.");
+			return DONE;
+		}
+		if (playMove(new Point(row, column))) {
+			return playUntilPlayerTurn();
+		}
+		return DONE;
+	}
+	
+	// Helper to play CPU moves until it is the player's turn, then prompt for a move,
+	// completing the returned future once done, or once the game is over
+	private CompletableFuture<Void> playUntilPlayerTurn() {
+		if (currentTurnToken != cpuToken) {
+			out.println("Where would you like to place your " + playerToken + "? Enter coordinates like 1, 1.");
+			state = State.MOVE;
+			return DONE;
+		}
+		return getCpuMove().thenCompose(move -> playMove(move) ? playUntilPlayerTurn() : DONE);
+	}
+	
+	/**
+	 * Play a move for the current player, and pass the turn. If the game ends,
+	 * print the result and ask to play again.
+	 * @param move move to play, or null if CPU conceded
+	 * @return true if game continues
+	 */
+	private boolean playMove(Point move) {
+		// If CPU conceded, tell player
+		if (move == null) {
+			METRICS.recordConcession();
+			out.println("I concede! The only winning move is not to play.");
+			recordGame(playerToken);
+			endGame();
+			return false;
+		}
+
+		// Place token, display board
+		board.placeToken(currentTurnToken, (int)move.getX(), (int)move.getY());
+		moves.add(move);
+		printBoard();
+
+		// If CPU move, remember board state, in case this is a losing move
+		if (currentTurnToken == cpuToken) {
+			lastMoveBoard = new GameBoard(board);
+		}
+
+		// Check for win/draw
+		if (board.isWon()) {
+			Token winningToken = board.getWinningToken();
+			if (winningToken == playerToken) {
+				out.println("You won! Congratulations!");
+				// If player won, save last board state (the CPU's losing move)
+				recordLosingMove(lastMoveBoard);
+			} else {
+				out.println("You lost! How about a nice game of chess?");
+			}
+			recordGame(winningToken);
+			endGame();
+			return false;
+		} else if (board.isDrawn()) {
+			out.println("The game is a draw. Good game!");
+			recordGame(null);
+			endGame();
+			return false;
+		}
+
+		// Pass turn
+		if (currentTurnToken == playerToken) {
+			currentTurnToken = cpuToken;
+		} else {
+			currentTurnToken = playerToken;
+		}
+		return true;
+	}
+	
+	// Helper to display the board: in full if small enough, otherwise a window around
+	// the last two moves, or the last move if they are far apart, or the centre if none
+	private void printBoard() {
+		if (board.getNumRows() <= VIEWPORT_SIZE && board.getNumColumns() <= VIEWPORT_SIZE) {
+			out.println(board.toString());
+			return;
+		}
+		int centreRow = (board.getNumRows() + 1) / 2;
+		int centreColumn = (board.getNumColumns() + 1) / 2;
+		if (!moves.isEmpty()) {
+			Point lastMove = moves.get(moves.size() - 1);
+			centreRow = lastMove.x;
+			centreColumn = lastMove.y;
+			if (moves.size() > 1) {
+				Point previousMove = moves.get(moves.size() - 2);
+				if (Math.abs(previousMove.x - lastMove.x) < VIEWPORT_SIZE && Math.abs(previousMove.y - lastMove.y) < VIEWPORT_SIZE) {
+					centreRow = (previousMove.x + lastMove.x) / 2;
+					centreColumn = (previousMove.y + lastMove.y) / 2;
+				}
+			}
+		}
+		out.println(board.toString(centreRow - VIEWPORT_SIZE / 2, centreColumn - VIEWPORT_SIZE / 2, VIEWPORT_SIZE, VIEWPORT_SIZE));
+	}
+	
+	// Helper to record the game: its result for every position in it, if recording
+	// results, and its moves, if journaling games
+	private void recordGame(Token winner) {
+		GameRecord game = new GameRecord(board, moves, playerToken, winner);
+		if (positionStats != null) {
+			positionStats.recordGame(game);
+		}
+		if (journal != null) {
+			journal.append(game);
+		}
+	}
+	
+	// Helper to end the current game, by asking to play again
+	private void endGame() {
+		out.println("Would you like to play again?");
+		state = State.PLAY_AGAIN;
+	}
+	
+	/**
+	 * Get the computer's move, from its strategy, within the time allowed
+	 * @return future valid move, or null if conceding
+	 */
+	private CompletableFuture<Point> getCpuMove() {
+		long startNanos = System.nanoTime();
+		return cpuStrategy.selectMoveAsync(board, cpuToken, startNanos + moveMillis * 1000000).thenApply(move -> {
+			METRICS.getCpuMoveLatency().recordSince(startNanos);
+			LOGGER.finer(() -> "CPU move " + move + " in " + (System.nanoTime() - startNanos) / 1000 + " us");
+			if (move != null) {
+				out.println("The computer places a token:");
+			}
+			return move;
+		});
+	}
+	
+	/**
+	 * Record a board state as having lost, to avoid in the future, unless the board
+	 * is too large to encode.
+	 * @param board Board state with most-recent losing CPU move
+	 */
+	private void recordLosingMove(GameBoard board) {
+		if (!BoardEncoding.canEncode(board.getNumRows(), board.getNumColumns())) {
+			return;
+		}
+		LOGGER.fine(() -> "Recording losing move:\n" + board);
+		METRICS.recordLosingMoveRecorded();
+		losingMoves.add(board.getCanonicalKey());
+	}
+}
@@ -0,0 +1,181 @@
+package com.simplyautomatic.tictactoe;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Offline trainer, which replays journaled games (see {@link GameJournal}) through
+ * the learning rules, to rebuild the A.I.'s memory from scratch, or retrain it
+ * after a learning rule changes, without replaying live games. For each game won,
+ * the loser's last move is recorded as a losing move, as in self-play; and the
+ * result of every game can also be recorded for every position in it.
+ * <p>
+ * Each journal is read sequentially, on the calling thread, at the speed of the
+ * disk. Games are handed to worker threads in batches, which replay them, and write
+ * losing moves through a shared batched writer, and position results as one
+ * transaction per batch. If the workers fall behind, the reader learns from the
+ * next batch itself, so memory use is bounded.
+ */
+public class JournalReplayer {
+	public static final int BATCH_SIZE = 1024;
+
+	private final BoardStateStore losingMoves;
+	private final PositionStatsRepository positionStats;
+	private final int numThreads;
+
+	// Statistics, for most recent run:
+	private final LongAdder numGames = new LongAdder();
+	private final LongAdder numLosingMoves = new LongAdder();
+	private final LongAdder numInvalidGames = new LongAdder();
+	private long runNanos;
+
+	/**
+	 * Construct a replayer
+	 * @param losingMoves store of losing moves, to add to
+	 * @param positionStats repository of results by position, to add to, or null not to record results
+	 * @param numThreads number of batches of games to learn from at once
+	 */
+	public JournalReplayer(BoardStateStore losingMoves, PositionStatsRepository positionStats, int numThreads) {
+		this.losingMoves = losingMoves;
+		this.positionStats = positionStats;
+		this.numThreads = numThreads;
+	}
+	
+	/**
+	 * Replay every game in specified journals, returning once all are learned from
+	 * and all losing moves and results have been written.
+	 * @param journals
+	 * @throws IOException if a journal cannot be read
+	 * @throws InterruptedException 
+	 */
+	public void replay(List<File> journals) throws IOException, InterruptedException {
+		numGames.reset();
+		numLosingMoves.reset();
+		numInvalidGames.reset();
+		long startNanos = System.nanoTime();
+		// Queue a few batches per thread, then learn on the reading thread, until workers catch up
+		ExecutorService pool = new ThreadPoolExecutor(numThreads, numThreads, 0, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(numThreads * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+		try (BatchedBoardStateWriter writer = new BatchedBoardStateWriter(losingMoves)) {
+			try {
+				for (File journal : journals) {
+					List<List<GameRecord>> batch = new ArrayList<>();
+					batch.add(new ArrayList<>(BATCH_SIZE));
+					GameJournal.forEachGame(journal, game -> {
+						batch.get(0).add(game);
+						if (batch.get(0).size() >= BATCH_SIZE) {
+							List<GameRecord> games = batch.set(0, new ArrayList<>(BATCH_SIZE));
+							pool.execute(() -> learn(games, writer));
+						}
+					});
+					learn(batch.get(0), writer);
+				}
+			} finally {
+				// Let workers finish before the writer is closed
+				pool.shutdown();
+				pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			}
+		}
+		runNanos = System.nanoTime() - startNanos;
+	}
+	
+	// Helper to learn from a batch of games: add the loser's last move of each won
+	// game as a losing move, and the results of the batch for every position
+	private void learn(List<GameRecord> games, BatchedBoardStateWriter writer) {
+		List<GameRecord> validGames = new ArrayList<>(games.size());
+		for (GameRecord game : games) {
+			try {
+				int lastMove = game.getNumMoves() - 1;
+				GameBoard board = game.replay(Math.max(lastMove, 0));
+				if (lastMove > 0 && BoardEncoding.canEncode(board.getNumRows(), board.getNumColumns())) {
+					// Find the position after the loser's last move, then whether the next move won
+					byte[] lastMoveKey = board.getCanonicalKey();
+					game.playMove(board, lastMove);
+					if (board.isWon()) {
+						writer.add(lastMoveKey);
+						numLosingMoves.increment();
+					}
+				}
+				validGames.add(game);
+			} catch (IllegalArgumentException e) {
+				// Invalid shape, or a move to an occupied cell
+				numInvalidGames.increment();
+			}
+		}
+		if (positionStats != null) {
+			Map<ByteBuffer, long[]> counts = PositionStatsRepository.tally(validGames);
+			positionStats.addStats(counts);
+		}
+		numGames.add(games.size());
+	}
+	
+	/**
+	 * Get number of games replayed in most recent run.
+	 * @return 
+	 */
+	public long getNumGames() {
+		return numGames.sum();
+	}
+	
+	/**
+	 * Get speed of most recent run.
+	 * @return games replayed per second
+	 */
+	public double getGamesPerSecond() {
+		return runNanos > 0 ? getNumGames() * 1e9 / runNanos : 0;
+	}
+	
+	/**
+	 * Get a summary of results of most recent run
+	 * @return 
+	 */
+	@Override
+	public String toString() {
+		return getNumGames() + " games on " + numThreads + " threads in " + (runNanos / 1000000) + " ms ("
+				+ (long) getGamesPerSecond() + " games/s): " + numLosingMoves.sum() + " losing moves, "
+				+ numInvalidGames.sum() + " invalid games skipped";
+	}
+	
+	/**
+	 * Main method: replay journals into a store, and optionally a results repository
+	 * @param args store (a SQLite database, or memory-mapped store if named *.map),
+	 * SQLite database for results by position, or "-" for none, then any number of journals
+	 * @throws IOException
+	 * @throws InterruptedException 
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 3) {
+			System.out.println("Usage: <store> <results database, or -> <journal>...");
+			return;
+		}
+		List<File> journals = new ArrayList<>();
+		for (String filename : Arrays.asList(args).subList(2, args.length)) {
+			journals.add(new File(filename));
+		}
+		PositionStatsRepository positionStats = args[1].equals("-") ? null : new PositionStatsRepository(args[1]);
+		try (BoardStateStore losingMoves = new ConcurrentBoardStateStore(BoardStateArchive.openStore(args[0]))) {
+			JournalReplayer replayer = new JournalReplayer(losingMoves, positionStats,
+					Runtime.getRuntime().availableProcessors());
+			replayer.replay(journals);
+			System.out.println(replayer);
+			System.out.println("Losing moves stored: " + losingMoves.size());
+			if (positionStats != null) {
+				System.out.println("Positions with results: " + positionStats.size());
+			}
+		} finally {
+			if (positionStats != null) {
+				positionStats.close();
+			}
+		}
+	}
+}
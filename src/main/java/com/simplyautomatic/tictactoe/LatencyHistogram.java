@@ -0,0 +1,134 @@
+package com.simplyautomatic.tictactoe;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies, in nanoseconds, in the style of HdrHistogram: values
+ * are counted in buckets which double in width with each power of 2, each split
+ * into 16 sub-buckets, so any value from 1 ns to centuries is recorded with about
+ * 6% precision, in a fixed 960 counts. Recording is lock-free, and safe from any
+ * number of threads; reads are not atomic snapshots, so may be slightly stale.
+ */
+public class LatencyHistogram implements LatencyHistogramMBean {
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int NUM_BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+	private static final double NANOS_PER_MICRO = 1000.0;
+
+	private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * Record a latency
+	 * @param nanos 
+	 */
+	public void record(long nanos) {
+		nanos = Math.max(nanos, 0);
+		counts.incrementAndGet(getBucket(nanos));
+		count.increment();
+		totalNanos.add(nanos);
+		maxNanos.accumulate(nanos);
+	}
+	
+	/**
+	 * Record the latency since a start time
+	 * @param startNanos start time, from {@link System#nanoTime()}
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+	
+	// Helper to get the bucket counting a value: values under 16 have a bucket each,
+	// then each power of 2 has 16 buckets, selected by the 4 bits after its top bit
+	private static int getBucket(long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return (int) nanos;
+		}
+		int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos);
+		int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+	
+	// Helper to get the highest value counted by a bucket
+	private static long getBucketMaxNanos(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long subBucket = bucket % SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return ((SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS)) + width - 1;
+	}
+	
+	@Override
+	public long getCount() {
+		return count.sum();
+	}
+	
+	@Override
+	public double getMeanMicros() {
+		long numRecorded = count.sum();
+		return numRecorded > 0 ? totalNanos.sum() / NANOS_PER_MICRO / numRecorded : 0;
+	}
+	
+	@Override
+	public double getMaxMicros() {
+		return maxNanos.get() / NANOS_PER_MICRO;
+	}
+	
+	@Override
+	public double getP50Micros() {
+		return getPercentileNanos(50) / NANOS_PER_MICRO;
+	}
+	
+	@Override
+	public double getP90Micros() {
+		return getPercentileNanos(90) / NANOS_PER_MICRO;
+	}
+	
+	@Override
+	public double getP99Micros() {
+		return getPercentileNanos(99) / NANOS_PER_MICRO;
+	}
+	
+	@Override
+	public double getP999Micros() {
+		return getPercentileNanos(99.9) / NANOS_PER_MICRO;
+	}
+	
+	/**
+	 * Get the latency at specified percentile: the highest value in the bucket
+	 * holding that percentile, capped at the highest value recorded
+	 * @param percentile 0-100
+	 * @return latency in nanoseconds, or 0 if nothing recorded
+	 */
+	public long getPercentileNanos(double percentile) {
+		long total = 0;
+		for (int bucket = 0; bucket < NUM_BUCKETS; bucket++) {
+			total += counts.get(bucket);
+		}
+		long rank = (long) Math.ceil(percentile / 100 * total);
+		long seen = 0;
+		for (int bucket = 0; bucket < NUM_BUCKETS; bucket++) {
+			seen += counts.get(bucket);
+			if (seen >= rank && seen > 0) {
+				return Math.min(getBucketMaxNanos(bucket), maxNanos.get());
+			}
+		}
+		return 0;
+	}
+	
+	/**
+	 * Get a summary of the histogram, in microseconds
+	 * @return 
+	 */
+	@Override
+	public String toString() {
+		return String.format("count=%d, mean=%.1f, p50=%.1f, p99=%.1f, max=%.1f us", getCount(), getMeanMicros(),
+				getP50Micros(), getP99Micros(), getMaxMicros());
+	}
+}
@@ -0,0 +1,49 @@
+package com.simplyautomatic.tictactoe;
+
+/**
+ * JMX view of a {@link LatencyHistogram}. Latencies are in microseconds.
+ */
+public interface LatencyHistogramMBean {
+
+	/**
+	 * Get number of latencies recorded
+	 * @return 
+	 */
+	long getCount();
+
+	/**
+	 * Get mean latency
+	 * @return 
+	 */
+	double getMeanMicros();
+
+	/**
+	 * Get highest latency
+	 * @return 
+	 */
+	double getMaxMicros();
+
+	/**
+	 * Get median latency
+	 * @return 
+	 */
+	double getP50Micros();
+
+	/**
+	 * Get 90th percentile latency
+	 * @return 
+	 */
+	double getP90Micros();
+
+	/**
+	 * Get 99th percentile latency
+	 * @return 
+	 */
+	double getP99Micros();
+
+	/**
+	 * Get 99.9th percentile latency
+	 * @return 
+	 */
+	double getP999Micros();
+}
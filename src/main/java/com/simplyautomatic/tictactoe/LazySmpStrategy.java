@@ -0,0 +1,449 @@
+package com.simplyautomatic.tictactoe;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Iterative-deepening alpha-beta search A.I., for boards too large to solve exactly,
+ * but small enough to search deeply: up to {@link #MAX_SEARCH_CELLS} cells, such as
+ * 5x5, 6x6, or 8x8 with 5 in a row. The search runs on all cores in the Lazy SMP
+ * style: every thread searches the whole position, to greater and greater depths,
+ * and threads share nothing but a lock-free transposition table (see
+ * {@link TranspositionTable}), so positions searched by one thread are cut off, or
+ * searched best move first, by the others. Helper threads search one ply deeper on
+ * every other thread, and try equally promising moves in their own order, so they
+ * reach different positions first. When the time runs out, the best move of the
+ * deepest search completed by any thread is played.
+ * <p>
+ * Positions at the depth limit are scored by the lines still open to each player
+ * (see {@link GameBoard#getLineScore(Token)}). A win scores more than any such
+ * score, plus the number of empty cells left after the game ends, so faster wins
+ * score higher, and a loss scores the negative of that. As in {@link NegamaxSolver},
+ * positions are keyed by canonical Zobrist hash, as seen by the player to move, so
+ * all equivalent positions share one entry. Other boards are left to another strategy.
+ * <p>
+ * One strategy may be shared by many sessions, and all their searches share its one
+ * transposition table, of a size fixed when it is constructed. Each search starts a
+ * new generation of the table, whose replacement rule keeps deep entries until they
+ * have aged, so searches running at once don't replace each other's work. Helpers
+ * of a search which have not started by the time it ends, as the pool is busy with
+ * other searches, are skipped rather than waited for. Statistics are kept for the
+ * most recent search made by each calling thread. Close the strategy to shut down
+ * its helper threads.
+ */
+public class LazySmpStrategy implements MoveStrategy, AutoCloseable {
+	public static final int MAX_SEARCH_CELLS = 64;
+	private static final int WIN_SCORE = 1 << 28;
+	private static final int MAX_LINE_SCORE = WIN_SCORE - 1;
+	private static final int DEADLINE_CHECK_NODES = 1024;
+	private static final SearchTimeoutException SEARCH_TIMEOUT = new SearchTimeoutException();
+
+	private final MoveStrategy otherStrategy;
+	private final TranspositionTable table;
+	private final ForkJoinPool pool;
+	private final int numThreads;
+
+	// Statistics, for most recent search by each thread: positions visited, depth, and time taken
+	private final ThreadLocal<long[]> searchStats = ThreadLocal.withInitial(() -> new long[3]);
+
+	/**
+	 * Construct a strategy which searches on all cores, with a transposition table
+	 * of default size, for boards small enough to search only
+	 */
+	public LazySmpStrategy() {
+		this(null);
+	}
+	
+	/**
+	 * Construct a strategy which searches on all cores, with a transposition table
+	 * of default size
+	 * @param otherStrategy strategy for boards too large to search, or null if none
+	 */
+	public LazySmpStrategy(MoveStrategy otherStrategy) {
+		this(Runtime.getRuntime().availableProcessors(), TranspositionTable.DEFAULT_TABLE_BITS, otherStrategy);
+	}
+	
+	/**
+	 * Construct a strategy
+	 * @param numThreads number of threads to search each move, including the calling thread
+	 * @param tableBits size of the transposition table shared by all searches, as a power of 2
+	 * @param otherStrategy strategy for boards too large to search, or null if none
+	 */
+	public LazySmpStrategy(int numThreads, int tableBits, MoveStrategy otherStrategy) {
+		this.otherStrategy = otherStrategy;
+		this.table = new TranspositionTable(tableBits);
+		this.pool = numThreads > 1 ? new ForkJoinPool(numThreads - 1) : null;
+		this.numThreads = numThreads;
+	}
+	
+	/**
+	 * Determine whether a board is small enough to search.
+	 * @param board
+	 * @return 
+	 */
+	public static boolean canSearch(GameBoard board) {
+		return board.getNumRows() * board.getNumColumns() <= MAX_SEARCH_CELLS;
+	}
+	
+	/**
+	 * Choose the best move found for specified player by the deadline, or if the
+	 * board is too large to search, the other strategy's move
+	 * @param board
+	 * @param token
+	 * @param deadlineNanos
+	 * @return best move found, or null if board is full or game is over
+	 * @throws IllegalArgumentException if board is too large to search, and there is no other strategy
+	 */
+	@Override
+	public Point selectMove(GameBoard board, Token token, long deadlineNanos) throws IllegalArgumentException {
+		if (!canSearch(board)) {
+			if (otherStrategy == null) {
+				throw new IllegalArgumentException("Board cannot be searched: " + board.getNumRows() + "x" + board.getNumColumns());
+			}
+			return otherStrategy.selectMove(board, token, deadlineNanos);
+		}
+		if (board.isWon() || board.isDrawn()) {
+			return null;
+		}
+		long startNanos = System.nanoTime();
+		table.newGeneration();
+		Search search = new Search(board, token, table, startNanos, deadlineNanos);
+		List<Searcher> helpers = new ArrayList<>(numThreads - 1);
+		List<ForkJoinTask<?>> helperTasks = new ArrayList<>(numThreads - 1);
+		for (int thread = 1; thread < numThreads; thread++) {
+			Searcher helper = new Searcher(search, thread);
+			helpers.add(helper);
+			helperTasks.add(pool.submit(() -> {
+				if (helper.claim()) {
+					helper.search();
+				}
+			}));
+		}
+		new Searcher(search, 0).search();
+		search.stopped = true;
+		// Wait for running helpers, which stop within a few nodes, but skip any still queued
+		for (int index = 0; index < helpers.size(); index++) {
+			if (helpers.get(index).claim()) {
+				helperTasks.get(index).cancel(false);
+			} else {
+				helperTasks.get(index).quietlyJoin();
+			}
+		}
+		int cell = search.bestCell >= 0 ? search.bestCell : board.getFreeCell(0);
+		long[] stats = searchStats.get();
+		stats[0] = search.nodesSearched.sum();
+		stats[1] = search.bestDepth;
+		stats[2] = System.nanoTime() - startNanos;
+		return new Point(cell / board.getNumColumns() + 1, cell % board.getNumColumns() + 1);
+	}
+	
+	/**
+	 * Get number of positions visited by most recent search by the calling thread, over all its threads.
+	 * @return 
+	 */
+	public long getNodesSearched() {
+		return searchStats.get()[0];
+	}
+	
+	/**
+	 * Get depth of the search whose move was played, in most recent search by the calling thread.
+	 * @return 
+	 */
+	public int getDepthSearched() {
+		return (int) searchStats.get()[1];
+	}
+	
+	/**
+	 * Get search speed of most recent search by the calling thread, over all its threads.
+	 * @return positions visited per second
+	 */
+	public double getNodesPerSecond() {
+		long[] stats = searchStats.get();
+		return stats[2] > 0 ? stats[0] * 1e9 / stats[2] : 0;
+	}
+	
+	/**
+	 * Shut down the helper threads. Searches already running finish first.
+	 */
+	@Override
+	public void close() {
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * State of a search of one move, shared by all its threads
+	 */
+	private static class Search {
+		private final GameBoard board;
+		private final Token token;
+		private final TranspositionTable table;
+		private final long startNanos;
+		private final long deadlineNanos;
+		private final int[] cellWeights;
+		private final LongAdder nodesSearched = new LongAdder();
+		private volatile boolean stopped;
+
+		// Best move of the deepest search completed by any thread
+		private int bestDepth;
+		private int bestCell = -1;
+
+		Search(GameBoard board, Token token, TranspositionTable table, long startNanos, long deadlineNanos) {
+			this.board = board;
+			this.token = token;
+			this.table = table;
+			this.startNanos = startNanos;
+			this.deadlineNanos = deadlineNanos;
+			this.cellWeights = getCellWeights(board);
+		}
+
+		// Helper to record the result of a completed search, if deeper than any before
+		synchronized void report(int depth, int cell) {
+			if (depth > bestDepth) {
+				bestDepth = depth;
+				bestCell = cell;
+			}
+		}
+
+		// Helper to determine whether to abandon the search: stopped, or out of time
+		boolean isOver() {
+			return stopped || System.nanoTime() - deadlineNanos >= 0;
+		}
+	}
+	
+	/**
+	 * One thread of a search, with its own copy of the board, and its own move order
+	 */
+	private static class Searcher {
+		private final Search search;
+		private final int threadIndex;
+		private final GameBoard board;
+		private final int numColumns;
+		private final int[] moveOrder;
+		private final int[] killerCells;
+		private final AtomicBoolean claimed = new AtomicBoolean();
+		private long nodesSearched;
+		private int rootBestCell;
+
+		Searcher(Search search, int threadIndex) {
+			this.search = search;
+			this.threadIndex = threadIndex;
+			this.board = new GameBoard(search.board);
+			this.numColumns = board.getNumColumns();
+			this.moveOrder = getMoveOrder(search.cellWeights, threadIndex);
+			this.killerCells = new int[board.getNumFreeCells() + 1];
+			Arrays.fill(killerCells, -1);
+		}
+
+		// Helper to claim this searcher, either to run it or to skip it: false if already claimed
+		boolean claim() {
+			return claimed.compareAndSet(false, true);
+		}
+
+		// Helper to search to greater and greater depths, until out of time, stopped, or
+		// the result is certain: a forced win or loss, or a search to the end of the game
+		void search() {
+			int numFreeCells = board.getNumFreeCells();
+			try {
+				for (int iteration = 1; iteration <= numFreeCells && !search.stopped; iteration++) {
+					int depth = Math.min(numFreeCells, iteration + threadIndex % 2);
+					int score = negamax(depth, 0, search.token, -Integer.MAX_VALUE, Integer.MAX_VALUE);
+					search.report(depth, rootBestCell);
+					if (depth == numFreeCells || Math.abs(score) >= WIN_SCORE) {
+						search.stopped = true;
+					}
+					// The main thread stops once half the time is used, as the next search would take longer
+					long now = System.nanoTime();
+					if (threadIndex == 0 && (now - search.startNanos) * 2 >= search.deadlineNanos - search.startNanos) {
+						break;
+					}
+				}
+			} catch (SearchTimeoutException e) {
+				// Out of time, or stopped: the last completed search has been reported
+			} finally {
+				search.nodesSearched.add(nodesSearched);
+			}
+		}
+
+		// Helper to search a position to specified depth, returning its score for the player to move
+		private int negamax(int depth, int ply, Token token, int alpha, int beta) {
+			if (++nodesSearched % DEADLINE_CHECK_NODES == 0 && search.isOver()) {
+				throw SEARCH_TIMEOUT;
+			}
+			int emptyCells = board.getNumFreeCells();
+			if (board.isWon()) {
+				return -(WIN_SCORE + emptyCells);
+			} else if (emptyCells == 0) {
+				return 0;
+			} else if (depth == 0) {
+				return (int) Math.max(-MAX_LINE_SCORE, Math.min(MAX_LINE_SCORE, board.getLineScore(token)));
+			}
+
+			// No result can be better than winning with the next move
+			if (beta > WIN_SCORE + emptyCells - 1) {
+				beta = WIN_SCORE + emptyCells - 1;
+				if (alpha >= beta) {
+					return beta;
+				}
+			}
+
+			// Check transposition table, for a score or bound at least as deep, and best move
+			int symmetry = board.getCanonicalHashSymmetry(token);
+			int transform = Symmetry.getTransform(symmetry);
+			long key = board.getZobristHash(symmetry);
+			long entry = search.table.probe(key);
+			int firstCell = -1;
+			int originalAlpha = alpha;
+			if (entry != 0) {
+				int score = TranspositionTable.getScore(entry);
+				if (ply > 0 && TranspositionTable.getDepth(entry) >= Math.min(depth, emptyCells)) {
+					int bound = TranspositionTable.getBound(entry);
+					if (bound == TranspositionTable.EXACT) {
+						return score;
+					} else if (bound == TranspositionTable.LOWER_BOUND) {
+						alpha = Math.max(alpha, score);
+					} else {
+						beta = Math.min(beta, score);
+					}
+					if (alpha >= beta) {
+						return score;
+					}
+				}
+				int canonicalCell = TranspositionTable.getMove(entry);
+				if (canonicalCell >= 0) {
+					firstCell = Symmetry.getSourceCell(transform, canonicalCell, board.getNumRows(), numColumns);
+				}
+			}
+
+			// Try each move: the previous best move, then the last move to cause a cutoff at this ply, then the rest in order
+			int killerCell = killerCells[ply];
+			int bestScore = -Integer.MAX_VALUE;
+			int bestCell = -1;
+			for (int index = -2; index < moveOrder.length; index++) {
+				int cell = index == -2 ? firstCell : index == -1 ? killerCell : moveOrder[index];
+				if (cell < 0 || (index > -2 && cell == firstCell) || (index >= 0 && cell == killerCell)) {
+					continue;
+				}
+				int row = cell / numColumns + 1;
+				int column = cell % numColumns + 1;
+				if (board.getTokenAt(row, column) != null) {
+					continue;
+				}
+				board.placeToken(token, row, column);
+				int score = -negamax(depth - 1, ply + 1, token.getOpponent(), -beta, -alpha);
+				board.removeToken(row, column);
+				if (score > bestScore) {
+					bestScore = score;
+					bestCell = cell;
+				}
+				alpha = Math.max(alpha, score);
+				if (alpha >= beta) {
+					killerCells[ply] = cell;
+					break;
+				}
+			}
+
+			// Store result, with best move mapped onto canonical board
+			int bound = bestScore <= originalAlpha ? TranspositionTable.UPPER_BOUND
+					: bestScore >= beta ? TranspositionTable.LOWER_BOUND : TranspositionTable.EXACT;
+			int canonicalCell = Symmetry.getSourceCell(Symmetry.getInverse(transform), bestCell, board.getNumRows(), numColumns);
+			search.table.store(key, bestScore, bound, Math.min(depth, emptyCells), canonicalCell);
+			if (ply == 0) {
+				rootBestCell = bestCell;
+			}
+			return bestScore;
+		}
+	}
+	
+	// Helper to weight each cell by the number of winning lines (or runs of winLength
+	// cells) through it, so cells which can take part in the most wins are tried first
+	private static int[] getCellWeights(GameBoard board) {
+		int numRows = board.getNumRows();
+		int numColumns = board.getNumColumns();
+		int winLength = board.getWinLength();
+		int[][] directions = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+		int[] weights = new int[numRows * numColumns];
+		for (int[] direction : directions) {
+			for (int row = 0; row < numRows; row++) {
+				for (int column = 0; column < numColumns; column++) {
+					int lastRow = row + (winLength - 1) * direction[0];
+					int lastColumn = column + (winLength - 1) * direction[1];
+					if (lastRow >= numRows || lastColumn < 0 || lastColumn >= numColumns) {
+						continue;
+					}
+					for (int index = 0; index < winLength; index++) {
+						weights[(row + index * direction[0]) * numColumns + column + index * direction[1]]++;
+					}
+				}
+			}
+		}
+		return weights;
+	}
+	
+	// Helper to order cells by weight, heaviest first: in order of cell, on the main
+	// thread, or in a random order of equal weights, different on each helper thread
+	private static int[] getMoveOrder(int[] cellWeights, int threadIndex) {
+		Random random = new Random(threadIndex);
+		int[] tieBreaks = new int[cellWeights.length];
+		Integer[] cells = new Integer[cellWeights.length];
+		for (int cell = 0; cell < cells.length; cell++) {
+			cells[cell] = cell;
+			tieBreaks[cell] = threadIndex == 0 ? cell : random.nextInt();
+		}
+		Arrays.sort(cells, (a, b) -> cellWeights[a] != cellWeights[b] ? Integer.compare(cellWeights[b], cellWeights[a])
+				: Integer.compare(tieBreaks[a], tieBreaks[b]));
+		return Arrays.stream(cells).mapToInt(Integer::intValue).toArray();
+	}
+	
+	/**
+	 * Thrown to abandon a search which has run out of time, or been stopped. A single
+	 * instance is reused, without a stack trace, since it is thrown only to unwind the
+	 * search.
+	 */
+	private static class SearchTimeoutException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		SearchTimeoutException() {
+			super("Search timed out", null, false, false);
+		}
+	}
+	
+	/**
+	 * Main method, for testing: search empty boards for a second each, on one thread,
+	 * then on all cores
+	 * @param args 
+	 */
+	public static void main(String[] args) {
+		int numCores = Runtime.getRuntime().availableProcessors();
+		for (int numThreads : new int[] {1, numCores}) {
+			try (LazySmpStrategy strategy = new LazySmpStrategy(numThreads, TranspositionTable.DEFAULT_TABLE_BITS, null)) {
+				for (int[] shape : new int[][] {{5, 5, 5}, {6, 6, 6}, {6, 6, 4}, {8, 8, 5}}) {
+					GameBoard board = new GameBoard(shape[0], shape[1], shape[2]);
+					Point move = strategy.selectMove(board, Token.X, System.nanoTime() + 1000000000L);
+					System.out.println(shape[0] + "x" + shape[1] + " " + shape[2] + " on " + numThreads + " threads: " + move
+							+ ", depth " + strategy.getDepthSearched() + ", " + strategy.getNodesSearched() + " nodes ("
+							+ (long) strategy.getNodesPerSecond() + " nodes/s)");
+				}
+			}
+		}
+		// O must block X's three in a row, at 3, 4
+		GameBoard board = new GameBoard(6, 6, 4);
+		board.placeToken(Token.X, 3, 1);
+		board.placeToken(Token.O, 1, 1);
+		board.placeToken(Token.X, 3, 2);
+		board.placeToken(Token.O, 6, 6);
+		board.placeToken(Token.X, 3, 3);
+		try (LazySmpStrategy strategy = new LazySmpStrategy(numCores, 16, null)) {
+			System.out.println("6x6 4, O to move:\n" + board + "\n" + strategy.selectMove(board, Token.O, System.nanoTime() + 500000000L)
+					+ ", depth " + strategy.getDepthSearched());
+		}
+	}
+}
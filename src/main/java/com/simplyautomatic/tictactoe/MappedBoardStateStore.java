@@ -0,0 +1,520 @@
+package com.simplyautomatic.tictactoe;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * A store of board states in a memory-mapped file, held off the JVM heap. The file
+ * is an open-addressing hash set of fixed-width slots, so it can be reopened and
+ * used immediately with no parse step. Keys may be of any length, so boards of any
+ * size can be stored: each key is appended once to a companion key file (the store
+ * file's name plus ".keydata"), as its length followed by its bytes, and its slot
+ * holds the key's hash and its offset in the key file (0 if the slot is empty).
+ * <p>
+ * When the table becomes too full, it doubles in size in place: the larger table is
+ * mapped from the same file, and rebuilt from the key file, which is read in order.
+ * The header marks the table as being rebuilt until it is complete, so if the app
+ * stops part-way, the table is rebuilt again when the store is next opened.
+ * <p>
+ * The key file is memory-mapped too, in 16MB segments, extending the file a segment
+ * at a time (the header records how much is in use), so a lookup compares keys in
+ * memory, with no read call or buffer. A store may be shared between threads: any
+ * number of lookups may run at once, under a read lock, while adds, which may grow
+ * the table, take the write lock.
+ */
+public class MappedBoardStateStore implements BoardStateStore {
+	public static final String DEFAULT_FILENAME = "tictactoe.map";
+	public static final String KEY_FILE_SUFFIX = ".keydata";
+	// Former key file suffix, which clashed with archives (see BoardStateArchive)
+	private static final String OLD_KEY_FILE_SUFFIX = ".keys";
+	private static final int MAGIC = 0x54545453;
+	private static final int KEY_FILE_MAGIC = 0x5454534B;
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 64;
+	private static final int KEY_FILE_HEADER_SIZE = 8;
+	private static final int SLOT_WIDTH = 16;
+	private static final int MAX_SEGMENT_SIZE = 1 << 30;
+	private static final long SLOTS_PER_SEGMENT = MAX_SEGMENT_SIZE / SLOT_WIDTH;
+	private static final long INITIAL_CAPACITY = 1 << 16;
+	private static final double MAX_LOAD_FACTOR = 0.7;
+	private static final int KEY_SEGMENT_SIZE = 1 << 24;
+
+	// Offsets of header fields
+	private static final int CAPACITY_OFFSET = 8;
+	private static final int COUNT_OFFSET = 16;
+	private static final int KEY_FILE_LENGTH_OFFSET = 24;
+	private static final int REBUILDING_OFFSET = 32;
+
+	private final File file;
+	private final RandomAccessFile randomAccessFile;
+	private final FileChannel keyChannel;
+	private final MappedByteBuffer header;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private MappedByteBuffer[] segments;
+	private MappedByteBuffer[] keySegments = new MappedByteBuffer[0];
+	private long capacity;
+	private long count;
+	private long keyFileLength;
+
+	/**
+	 * Open or create a store in the default file.
+	 * @throws IOException 
+	 */
+	public MappedBoardStateStore() throws IOException {
+		this(new File(DEFAULT_FILENAME));
+	}
+	
+	/**
+	 * Open or create a store in specified file, and its key file.
+	 * @param file
+	 * @throws IOException if files cannot be opened, or are not a valid store
+	 */
+	public MappedBoardStateStore(File file) throws IOException {
+		this.file = file;
+		boolean exists = file.length() >= HEADER_SIZE;
+		if (exists) {
+			renameOldKeyFile(file);
+		}
+		this.randomAccessFile = new RandomAccessFile(file, "rw");
+		this.keyChannel = new RandomAccessFile(file.getPath() + KEY_FILE_SUFFIX, "rw").getChannel();
+		try {
+			this.header = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+			if (exists) {
+				if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+					throw new IOException("Not a board state store, of version " + VERSION + ": " + file);
+				}
+				this.capacity = header.getLong(CAPACITY_OFFSET);
+				this.count = header.getLong(COUNT_OFFSET);
+				this.keyFileLength = header.getLong(KEY_FILE_LENGTH_OFFSET);
+				if (keyChannel.size() < keyFileLength || readKeyFileMagic() != KEY_FILE_MAGIC) {
+					throw new IOException("Key file missing or incomplete: " + file + KEY_FILE_SUFFIX);
+				}
+				// Any key appended after the header was last written is ignored, and overwritten
+				mapKeySegments(keyFileLength);
+			} else {
+				this.capacity = INITIAL_CAPACITY;
+				this.count = 0;
+				this.keyFileLength = KEY_FILE_HEADER_SIZE;
+				keyChannel.truncate(0);
+				mapKeySegments(keyFileLength);
+				putKeyBytes(0, ByteBuffer.allocate(KEY_FILE_HEADER_SIZE).putInt(KEY_FILE_MAGIC).putInt(VERSION).array());
+				header.putInt(0, MAGIC);
+				header.putInt(4, VERSION);
+				header.putLong(CAPACITY_OFFSET, capacity);
+				header.putLong(COUNT_OFFSET, count);
+				header.putLong(KEY_FILE_LENGTH_OFFSET, keyFileLength);
+			}
+			mapSegments();
+			if (header.getInt(REBUILDING_OFFSET) != 0) {
+				rebuildTable();
+			}
+		} catch (IOException | UncheckedIOException e) {
+			randomAccessFile.close();
+			keyChannel.close();
+			throw e;
+		}
+	}
+	
+	// Helper to rename a store's key file from the former suffix, if it has one
+	private static void renameOldKeyFile(File file) throws IOException {
+		File keyFile = new File(file.getPath() + KEY_FILE_SUFFIX);
+		File oldKeyFile = new File(file.getPath() + OLD_KEY_FILE_SUFFIX);
+		if (!keyFile.exists() && oldKeyFile.exists() && !oldKeyFile.renameTo(keyFile)) {
+			throw new IOException("Unable to rename key file " + oldKeyFile + " to " + keyFile);
+		}
+	}
+	
+	// Helper to read the magic number at the start of the key file
+	private int readKeyFileMagic() throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(4);
+		keyChannel.read(buffer, 0);
+		return buffer.position() == 4 ? buffer.getInt(0) : 0;
+	}
+	
+	// Helper to map the slot table, in segments of up to 1GB, extending the file if
+	// needed. Any previous mappings are dropped, to be unmapped once unreachable.
+	private void mapSegments() throws IOException {
+		segments = null;
+		int numSegments = (int) ((capacity + SLOTS_PER_SEGMENT - 1) / SLOTS_PER_SEGMENT);
+		MappedByteBuffer[] newSegments = new MappedByteBuffer[numSegments];
+		for (int segment = 0; segment < numSegments; segment++) {
+			long firstSlot = segment * SLOTS_PER_SEGMENT;
+			long segmentSlots = Math.min(SLOTS_PER_SEGMENT, capacity - firstSlot);
+			newSegments[segment] = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE,
+					HEADER_SIZE + firstSlot * SLOT_WIDTH, segmentSlots * SLOT_WIDTH);
+		}
+		segments = newSegments;
+	}
+	
+	// Helper to map the key file, in fixed-size segments, up to at least specified
+	// length, extending the file if needed. Existing segments are kept.
+	private void mapKeySegments(long length) throws IOException {
+		int numSegments = (int) ((length + KEY_SEGMENT_SIZE - 1) / KEY_SEGMENT_SIZE);
+		if (numSegments <= keySegments.length) {
+			return;
+		}
+		MappedByteBuffer[] newSegments = Arrays.copyOf(keySegments, numSegments);
+		for (int segment = keySegments.length; segment < numSegments; segment++) {
+			newSegments[segment] = keyChannel.map(FileChannel.MapMode.READ_WRITE,
+					(long) segment * KEY_SEGMENT_SIZE, KEY_SEGMENT_SIZE);
+		}
+		keySegments = newSegments;
+	}
+	
+	/**
+	 * Add a board state key, if not already stored
+	 * @param boardKey
+	 * @throws IllegalArgumentException if key is empty
+	 */
+	@Override
+	public void add(byte[] boardKey) throws IllegalArgumentException {
+		if (boardKey.length == 0) {
+			throw new IllegalArgumentException("Key must not be empty");
+		}
+		lock.writeLock().lock();
+		try {
+			addKey(boardKey);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	// Helper to add a non-empty key, holding the write lock
+	private void addKey(byte[] boardKey) {
+		if (count + 1 > capacity * MAX_LOAD_FACTOR) {
+			grow();
+		}
+		long hash = hash(boardKey);
+		long slot = findSlot(boardKey, hash);
+		if (getSlotOffset(slot) != 0) {
+			return;
+		}
+		long keyOffset = keyFileLength;
+		try {
+			mapKeySegments(keyOffset + 4 + boardKey.length);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to write key to board state store", e);
+		}
+		putKeyBytes(keyOffset, ByteBuffer.allocate(4 + boardKey.length).putInt(boardKey.length).put(boardKey).array());
+		writeSlot(slot, hash, keyOffset);
+		keyFileLength += 4 + boardKey.length;
+		count++;
+		header.putLong(KEY_FILE_LENGTH_OFFSET, keyFileLength);
+		header.putLong(COUNT_OFFSET, count);
+	}
+	
+	/**
+	 * Add many board state keys. Each key is added separately, so an invalid key is
+	 * reported and skipped, without losing the others.
+	 * @param boardKeys 
+	 */
+	@Override
+	public void addAll(Collection<byte[]> boardKeys) {
+		lock.writeLock().lock();
+		try {
+			for (byte[] boardKey : boardKeys) {
+				if (boardKey.length == 0) {
+					new IllegalArgumentException("Key must not be empty").printStackTrace();
+				} else {
+					addKey(boardKey);
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Check whether board state key is stored, under the read lock, so lookups may
+	 * run at once
+	 * @param boardKey
+	 * @return 
+	 */
+	@Override
+	public boolean contains(byte[] boardKey) {
+		if (boardKey.length == 0) {
+			return false;
+		}
+		long hash = hash(boardKey);
+		lock.readLock().lock();
+		try {
+			return getSlotOffset(findSlot(boardKey, hash)) != 0;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	@Override
+	public long size() {
+		lock.readLock().lock();
+		try {
+			return count;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Perform an action for each board state key, in the order they were added. The
+	 * read lock is held throughout, so the action must not add to this store.
+	 * @param action 
+	 */
+	@Override
+	public void forEach(Consumer<byte[]> action) {
+		lock.readLock().lock();
+		try {
+			forEachKey((keyOffset, boardKey) -> action.accept(boardKey));
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to read board state store", e);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Write any changes through to the files
+	 */
+	public void flush() {
+		lock.writeLock().lock();
+		try {
+			for (MappedByteBuffer segment : keySegments) {
+				segment.force();
+			}
+			for (MappedByteBuffer segment : segments) {
+				segment.force();
+			}
+			header.force();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	@Override
+	public void close() {
+		lock.writeLock().lock();
+		try {
+			flush();
+			keyChannel.close();
+			randomAccessFile.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	// Helper to find the slot holding specified key, or the empty slot where it belongs
+	private long findSlot(byte[] boardKey, long hash) {
+		long slot = hash & (capacity - 1);
+		while (true) {
+			long keyOffset = getSlotOffset(slot);
+			if (keyOffset == 0 || (getSlotHash(slot) == hash && keyMatches(keyOffset, boardKey))) {
+				return slot;
+			}
+			slot = (slot + 1) & (capacity - 1);
+		}
+	}
+	
+	// Helper to double table capacity in place, marking the table as being rebuilt
+	// until it is complete
+	private void grow() {
+		capacity = 2 * capacity;
+		header.putLong(CAPACITY_OFFSET, capacity);
+		header.putInt(REBUILDING_OFFSET, 1);
+		header.force();
+		try {
+			mapSegments();
+			rebuildTable();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to grow board state store", e);
+		}
+	}
+	
+	// Helper to empty the table, then re-insert every key in the key file
+	private void rebuildTable() throws IOException {
+		for (MappedByteBuffer segment : segments) {
+			for (int offset = 0; offset < segment.capacity(); offset += Long.BYTES) {
+				segment.putLong(offset, 0);
+			}
+		}
+		count = 0;
+		forEachKey((keyOffset, boardKey) -> {
+			long hash = hash(boardKey);
+			writeSlot(findEmptySlot(hash), hash, keyOffset);
+			count++;
+		});
+		header.putLong(COUNT_OFFSET, count);
+		for (MappedByteBuffer segment : segments) {
+			segment.force();
+		}
+		header.putInt(REBUILDING_OFFSET, 0);
+		header.force();
+	}
+	
+	// Helper to find the first empty slot for a hash, for a key known not to be stored
+	private long findEmptySlot(long hash) {
+		long slot = hash & (capacity - 1);
+		while (getSlotOffset(slot) != 0) {
+			slot = (slot + 1) & (capacity - 1);
+		}
+		return slot;
+	}
+	
+	/**
+	 * Action on a key read from the key file, with its offset
+	 */
+	private interface KeyAction {
+		void accept(long keyOffset, byte[] boardKey);
+	}
+	
+	// Helper to read every key in the key file, in order
+	private void forEachKey(KeyAction action) throws IOException {
+		long keyOffset = KEY_FILE_HEADER_SIZE;
+		while (keyOffset < keyFileLength) {
+			int length = getKeyInt(keyOffset);
+			if (length <= 0 || keyOffset + 4 + length > keyFileLength) {
+				throw new IOException("Key file corrupt at offset " + keyOffset + ": " + file + KEY_FILE_SUFFIX);
+			}
+			byte[] boardKey = new byte[length];
+			for (int index = 0; index < length; index++) {
+				boardKey[index] = getKeyByte(keyOffset + 4 + index);
+			}
+			action.accept(keyOffset, boardKey);
+			keyOffset += 4 + length;
+		}
+	}
+	
+	// Helper to check whether the key at an offset of the key file is specified key,
+	// comparing against the mapping segment by segment
+	private boolean keyMatches(long keyOffset, byte[] boardKey) {
+		if (getKeyInt(keyOffset) != boardKey.length) {
+			return false;
+		}
+		long position = keyOffset + 4;
+		int segment = (int) (position / KEY_SEGMENT_SIZE);
+		int offset = (int) (position % KEY_SEGMENT_SIZE);
+		MappedByteBuffer keySegment = keySegments[segment];
+		for (byte b : boardKey) {
+			if (offset == KEY_SEGMENT_SIZE) {
+				keySegment = keySegments[++segment];
+				offset = 0;
+			}
+			if (keySegment.get(offset++) != b) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	// Helper to get a byte of the key file
+	private byte getKeyByte(long position) {
+		return keySegments[(int) (position / KEY_SEGMENT_SIZE)].get((int) (position % KEY_SEGMENT_SIZE));
+	}
+	
+	// Helper to get an int of the key file, which may span two segments
+	private int getKeyInt(long position) {
+		int offset = (int) (position % KEY_SEGMENT_SIZE);
+		if (offset <= KEY_SEGMENT_SIZE - 4) {
+			return keySegments[(int) (position / KEY_SEGMENT_SIZE)].getInt(offset);
+		}
+		int value = 0;
+		for (int index = 0; index < 4; index++) {
+			value = (value << 8) | (getKeyByte(position + index) & 0xFF);
+		}
+		return value;
+	}
+	
+	// Helper to write bytes at a position of the key file, which must be mapped
+	private void putKeyBytes(long position, byte[] bytes) {
+		for (int index = 0; index < bytes.length; index++, position++) {
+			keySegments[(int) (position / KEY_SEGMENT_SIZE)].put((int) (position % KEY_SEGMENT_SIZE), bytes[index]);
+		}
+	}
+	
+	// Helper to get the segment buffer holding a slot
+	private MappedByteBuffer getSegment(long slot) {
+		return segments[(int) (slot / SLOTS_PER_SEGMENT)];
+	}
+	
+	// Helper to get the buffer offset of a slot, within its segment
+	private static int getBufferOffset(long slot) {
+		return (int) ((slot % SLOTS_PER_SEGMENT) * SLOT_WIDTH);
+	}
+	
+	// Helper to get the hash of the key in a slot
+	private long getSlotHash(long slot) {
+		return getSegment(slot).getLong(getBufferOffset(slot));
+	}
+	
+	// Helper to get the key file offset of the key in a slot, or 0 if empty
+	private long getSlotOffset(long slot) {
+		return getSegment(slot).getLong(getBufferOffset(slot) + Long.BYTES);
+	}
+	
+	// Helper to write a key's hash and key file offset into an empty slot
+	private void writeSlot(long slot, long hash, long keyOffset) {
+		MappedByteBuffer segment = getSegment(slot);
+		segment.putLong(getBufferOffset(slot), hash);
+		segment.putLong(getBufferOffset(slot) + Long.BYTES, keyOffset);
+	}
+	
+	// Helper to compute a well-mixed hash of a key
+	private static long hash(byte[] boardKey) {
+		long hash = 0xCBF29CE484222325L;
+		for (byte b : boardKey) {
+			hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+	
+	/**
+	 * Get a debug dump of entire store contents
+	 * @return 
+	 */
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+		forEach(boardKey -> text.append(BoardEncoding.decode(boardKey).getBoardString()).append("\n"));
+		return text.toString();
+	}
+	
+	/**
+	 * Main method, for testing
+	 * @param args
+	 * @throws IOException 
+	 */
+	public static void main(String[] args) throws IOException {
+		try (MappedBoardStateStore store = new MappedBoardStateStore()) {
+			GameBoard board = new GameBoard(3);
+			board.placeToken(Token.X, 1, 1);
+			byte[] test1 = board.getCanonicalKey();
+			board.placeToken(Token.O, 2, 2);
+			byte[] test2 = board.getCanonicalKey();
+			board.placeToken(Token.X, 3, 3);
+			byte[] test3 = board.getCanonicalKey();
+			GameBoard largeBoard = new GameBoard(15, 15, 5);
+			largeBoard.placeToken(Token.X, 8, 8);
+			byte[] test4 = largeBoard.getCanonicalKey();
+			store.add(test1);
+			store.addAll(Arrays.asList(test1, test2, new byte[0], test4));
+			System.out.println("1? " + store.contains(test1));
+			System.out.println("2? " + store.contains(test2));
+			System.out.println("3? " + store.contains(test3));
+			System.out.println("15x15 (" + test4.length + " bytes)? " + store.contains(test4));
+			System.out.println("all:\n" + store.toString());
+		}
+	}
+}
@@ -1,17 +1,23 @@
 package com.simplyautomatic.tictactoe;
 
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
-import java.util.stream.IntStream;
 
 /**
- * Simple implementation of a square matrix of Integers. Rows and columns are 1-indexed.
+ * Simple implementation of a square matrix of ints. Rows and columns are 1-indexed.
+ * Values are held in a flat array, in row-major order, and transforms permute them
+ * using the precomputed tables of {@link Symmetry}, into a second array which is 
+ * then swapped in, so no transform allocates.
  */
 public class Matrix {
+	private static final int ROTATE = 1;
+	private static final int MIRROR = 4;
+	private static final int FLIP = 5;
+	
 	private final int size;
-	private final Integer[][] matrix;
+	private final int[][] permutations;
+	private int[] values;
+	private int[] scratch;
 	
 	/**
 	 * Construct a square matrix, of width and height specified.
@@ -19,12 +25,9 @@ public class Matrix {
 	 */
 	public Matrix(int size) {
 		this.size = size;
-		this.matrix = new Integer[size][size];
-		for (Integer[] row : matrix) {
-			for (int column = 0; column < size; column++) {
-				row[column] = 0;
-			}
-		}
+		this.permutations = Symmetry.getPermutations(size, size);
+		this.values = new int[size * size];
+		this.scratch = new int[size * size];
 	}
 	
 	/**
@@ -42,8 +45,8 @@ public class Matrix {
 	 * @return
 	 * @throws ArrayIndexOutOfBoundsException 
 	 */
-	public Integer getValue(int row, int column) throws ArrayIndexOutOfBoundsException {
-		return matrix[row - 1][column - 1];
+	public int getValue(int row, int column) throws ArrayIndexOutOfBoundsException {
+		return values[getIndex(row, column)];
 	}
 	
 	/**
@@ -53,8 +56,16 @@ public class Matrix {
 	 * @param value
 	 * @throws ArrayIndexOutOfBoundsException 
 	 */
-	public void setValue(int row, int column, Integer value) throws ArrayIndexOutOfBoundsException {
-		matrix[row - 1][column - 1] = value;
+	public void setValue(int row, int column, int value) throws ArrayIndexOutOfBoundsException {
+		values[getIndex(row, column)] = value;
+	}
+	
+	// Helper to get the array index of a 1-indexed row/column
+	private int getIndex(int row, int column) throws ArrayIndexOutOfBoundsException {
+		if (row < 1 || row > size || column < 1 || column > size) {
+			throw new ArrayIndexOutOfBoundsException("No such cell: " + row + ", " + column);
+		}
+		return (row - 1) * size + (column - 1);
 	}
 	
 	/**
@@ -63,8 +74,12 @@ public class Matrix {
 	 * @return
 	 * @throws ArrayIndexOutOfBoundsException 
 	 */
-	public Integer getRowTotal(int row) throws ArrayIndexOutOfBoundsException {
-		return Arrays.stream(matrix[row - 1]).mapToInt(Integer::intValue).sum();
+	public int getRowTotal(int row) throws ArrayIndexOutOfBoundsException {
+		int total = 0;
+		for (int column = 1; column <= size; column++) {
+			total += values[getIndex(row, column)];
+		}
+		return total;
 	}
 	
 	/**
@@ -73,26 +88,36 @@ public class Matrix {
 	 * @return
 	 * @throws ArrayIndexOutOfBoundsException 
 	 */
-	public Integer getColumnTotal(int column) throws ArrayIndexOutOfBoundsException {
-		return Arrays.stream(matrix).map(rowArray -> rowArray[column - 1]).mapToInt(Integer::intValue).sum();
+	public int getColumnTotal(int column) throws ArrayIndexOutOfBoundsException {
+		int total = 0;
+		for (int row = 1; row <= size; row++) {
+			total += values[getIndex(row, column)];
+		}
+		return total;
 	}
 	
 	/**
 	 * Get the total value of main diagonal.
-	 * @return
-	 * @throws ArrayIndexOutOfBoundsException 
+	 * @return 
 	 */
-	public Integer getMainDiagonalTotal() throws ArrayIndexOutOfBoundsException {
-		return IntStream.range(0, size).map(index -> matrix[index][index]).sum();
+	public int getMainDiagonalTotal() {
+		int total = 0;
+		for (int index = 0; index < size; index++) {
+			total += values[index * size + index];
+		}
+		return total;
 	}
 	
 	/**
 	 * Get the total value of anti diagonal.
-	 * @return
-	 * @throws ArrayIndexOutOfBoundsException 
+	 * @return 
 	 */
-	public Integer getAntiDiagonalTotal() throws ArrayIndexOutOfBoundsException {
-		return IntStream.range(0, size).map(index -> matrix[index][size - 1 - index]).sum();
+	public int getAntiDiagonalTotal() {
+		int total = 0;
+		for (int index = 0; index < size; index++) {
+			total += values[index * size + (size - 1 - index)];
+		}
+		return total;
 	}
 	
 	/**
@@ -100,8 +125,7 @@ public class Matrix {
 	 * @return this matrix, for method chaining
 	 */
 	public Matrix flip() {
-		Collections.reverse(Arrays.asList(matrix));
-		return this;
+		return transform(FLIP);
 	}
 	
 	/**
@@ -109,10 +133,7 @@ public class Matrix {
 	 * @return this matrix, for method chaining
 	 */
 	public Matrix mirror() {
-		for (Integer[] row : matrix) {
-			Collections.reverse(Arrays.asList(row));
-		}
-		return this;
+		return transform(MIRROR);
 	}
 	
 	/**
@@ -120,15 +141,23 @@ public class Matrix {
 	 * @return this matrix, for method chaining
 	 */
 	public Matrix rotate() {
-		Integer[][] matrixOld = new Integer[size][size];
-		for (int row = 0; row < size; row++) {
-			System.arraycopy(matrix[row], 0, matrixOld[row], 0, size);
-		}
-		for (int row = 0; row < size; ++row) {
-			for (int column = 0; column < size; ++column) {
-				matrix[row][column] = matrixOld[size - column - 1][row];
-			}
+		return transform(ROTATE);
+	}
+	
+	/**
+	 * Apply a symmetry transform (see {@link Symmetry#getSourceCell(int, int, int)}) 
+	 * to the matrix.
+	 * @param transform
+	 * @return this matrix, for method chaining
+	 */
+	public Matrix transform(int transform) {
+		int[] permutation = permutations[transform];
+		for (int index = 0; index < values.length; index++) {
+			scratch[index] = values[permutation[index]];
 		}
+		int[] swap = values;
+		values = scratch;
+		scratch = swap;
 		return this;
 	}
 	
@@ -137,10 +166,8 @@ public class Matrix {
 	 * @return this matrix, for method chaining
 	 */
 	public Matrix negate() {
-		for (Integer[] row : matrix) {
-			for (int column = 0; column < size; column++) {
-				row[column] = -row[column];
-			}
+		for (int index = 0; index < values.length; index++) {
+			values[index] = -values[index];
 		}
 		return this;
 	}
@@ -151,8 +178,16 @@ public class Matrix {
 	 */
 	@Override
 	public String toString() {
-		StringBuilder text = new StringBuilder();
-		Arrays.stream(matrix).forEach(row -> Arrays.stream(row).forEach(text::append));
+		return toString(Symmetry.IDENTITY);
+	}
+	
+	// Helper to get the string of the matrix as transformed by specified transform
+	private String toString(int transform) {
+		int[] permutation = permutations[transform];
+		StringBuilder text = new StringBuilder(values.length + 8);
+		for (int index = 0; index < values.length; index++) {
+			text.append(values[permutation[index]]);
+		}
 		return text.toString();
 	}
 	
@@ -162,9 +197,7 @@ public class Matrix {
 	 */
 	public Matrix deepCopy() {
 		Matrix clone = new Matrix(size);
-		for (int row = 0; row < size; row++) {
-			System.arraycopy(matrix[row], 0, clone.matrix[row], 0, size);
-		}
+		System.arraycopy(values, 0, clone.values, 0, values.length);
 		return clone;
 	}
 	
@@ -172,30 +205,16 @@ public class Matrix {
 	 * Get a list of all equivalent matrix strings. For this usage, matrices are 
 	 * equivalent if their values match after any number of rotations, mirrors, 
 	 * or flips. There are 8 such Strings for any matrix (ignoring possibility of 
-	 * duplicates): 4 rotations, mirrored horizontally and vertically, and
-	 * transposed along main diagonal and antidiagonal.
+	 * duplicates), in order of {@link Symmetry} transform: 4 rotations, mirrored 
+	 * horizontally and vertically, and transposed along main diagonal and 
+	 * antidiagonal. Each is read straight from this matrix, without copying it.
 	 * @return 
 	 */
 	public List<String> getAllEquivalentStrings() {
-		List<String> equivalentMatrixStrings = new ArrayList<>();
-		Matrix matrixCopy = deepCopy();
-		// 4 standard rotations
-		equivalentMatrixStrings.add(matrixCopy.toString());
-		equivalentMatrixStrings.add(matrixCopy.rotate().toString());
-		equivalentMatrixStrings.add(matrixCopy.rotate().toString());
-		equivalentMatrixStrings.add(matrixCopy.rotate().toString());
-		
-		// Mirror horizontally and vertically
-		equivalentMatrixStrings.add(matrixCopy.mirror().toString());
-		matrixCopy = deepCopy();
-		equivalentMatrixStrings.add(matrixCopy.flip().toString());
-		
-		// Transpose over diagonal and antidiagonal axes
-		matrixCopy = deepCopy();
-		equivalentMatrixStrings.add(matrixCopy.rotate().mirror().toString());
-		matrixCopy = deepCopy();
-		equivalentMatrixStrings.add(matrixCopy.rotate().flip().toString());
-		
+		List<String> equivalentMatrixStrings = new ArrayList<>(Symmetry.NUM_TRANSFORMS);
+		for (int transform = 0; transform < Symmetry.NUM_TRANSFORMS; transform++) {
+			equivalentMatrixStrings.add(toString(transform));
+		}
 		return equivalentMatrixStrings;
 	}
 	
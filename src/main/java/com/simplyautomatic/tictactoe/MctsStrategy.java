@@ -0,0 +1,312 @@
+package com.simplyautomatic.tictactoe;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monte Carlo Tree Search (UCT) A.I., for boards too large to solve exactly. Each
+ * search thread grows its own tree from the current position, by repeatedly
+ * choosing moves with the best upper confidence bound, adding one new position, and
+ * playing a random game out from it. When the time or playout budget runs out, the
+ * visit counts of the first moves of every tree are added up (root parallelization),
+ * and the most-visited move is played. A winning move, or a move blocking the
+ * opponent's winning move, is played without searching.
+ * <p>
+ * One strategy may be shared by many sessions, searching at once on its thread pool,
+ * which is shut down when the strategy is closed. Statistics are kept for the most
+ * recent search made by each calling thread.
+ */
+public class MctsStrategy implements MoveStrategy, AutoCloseable {
+	public static final long DEFAULT_MOVE_MILLIS = 1000;
+	private static final double EXPLORATION = Math.sqrt(2);
+
+	private final ForkJoinPool pool;
+	private final int numThreads;
+	private final long moveMillis;
+	private final long maxPlayouts;
+
+	// Statistics, for most recent search by each thread: number of playouts, and time taken
+	private final ThreadLocal<long[]> searchStats = ThreadLocal.withInitial(() -> new long[2]);
+
+	/**
+	 * Construct a strategy which searches for the default time per move, on all cores
+	 */
+	public MctsStrategy() {
+		this(Runtime.getRuntime().availableProcessors(), DEFAULT_MOVE_MILLIS, Long.MAX_VALUE);
+	}
+	
+	/**
+	 * Construct a strategy
+	 * @param numThreads number of trees to search in parallel
+	 * @param moveMillis time to search for each move
+	 * @param maxPlayouts maximum number of playouts for each move, over all threads
+	 */
+	public MctsStrategy(int numThreads, long moveMillis, long maxPlayouts) {
+		this.pool = new ForkJoinPool(numThreads);
+		this.numThreads = numThreads;
+		this.moveMillis = moveMillis;
+		this.maxPlayouts = maxPlayouts;
+	}
+	
+	/**
+	 * Choose a move for specified player, searching until the time or playout
+	 * budget runs out
+	 * @param board
+	 * @param token
+	 * @return best move found, or null if board is full or game is over
+	 */
+	public Point selectMove(GameBoard board, Token token) {
+		return selectMove(board, token, System.nanoTime() + moveMillis * 1000000);
+	}
+	
+	/**
+	 * Choose a move for specified player, searching until the deadline, or until the
+	 * time or playout budget runs out, if sooner
+	 * @param board
+	 * @param token
+	 * @param deadlineNanos
+	 * @return best move found, or null if board is full or game is over
+	 */
+	@Override
+	public Point selectMove(GameBoard board, Token token, long deadlineNanos) {
+		if (board.isWon() || board.isDrawn()) {
+			return null;
+		}
+		long startNanos = System.nanoTime();
+		if (deadlineNanos - startNanos > moveMillis * 1000000) {
+			deadlineNanos = startNanos + moveMillis * 1000000;
+		}
+		int cell = findWinningCell(board, token);
+		if (cell < 0) {
+			cell = findWinningCell(board, token.getOpponent());
+		}
+		long numPlayouts = 0;
+		if (cell < 0) {
+			AtomicLong playouts = new AtomicLong();
+			cell = search(board, token, deadlineNanos, playouts);
+			numPlayouts = Math.min(playouts.get(), maxPlayouts);
+		}
+		long[] stats = searchStats.get();
+		stats[0] = numPlayouts;
+		stats[1] = System.nanoTime() - startNanos;
+		return new Point(cell / board.getNumColumns() + 1, cell % board.getNumColumns() + 1);
+	}
+	
+	/**
+	 * Get number of playouts in most recent search by the calling thread.
+	 * @return 
+	 */
+	public long getNumPlayouts() {
+		return searchStats.get()[0];
+	}
+	
+	/**
+	 * Get speed of most recent search by the calling thread.
+	 * @return playouts per second
+	 */
+	public double getPlayoutsPerSecond() {
+		long[] stats = searchStats.get();
+		return stats[1] > 0 ? stats[0] * 1e9 / stats[1] : 0;
+	}
+	
+	/**
+	 * Shut down the search thread pool, once any searches running have finished
+	 */
+	@Override
+	public void close() {
+		pool.shutdown();
+	}
+	
+	// Helper to search trees in parallel, counting playouts, and returning the most-visited first move
+	private int search(GameBoard board, Token token, long deadlineNanos, AtomicLong playouts) {
+		List<ForkJoinTask<int[]>> tasks = new ArrayList<>(numThreads);
+		for (int thread = 0; thread < numThreads; thread++) {
+			tasks.add(pool.submit(() -> new SearchTree(board, token).search(deadlineNanos, playouts, maxPlayouts)));
+		}
+		int[] totalVisits = new int[board.getNumRows() * board.getNumColumns()];
+		for (ForkJoinTask<int[]> task : tasks) {
+			try {
+				int[] visits = task.get();
+				for (int cell = 0; cell < visits.length; cell++) {
+					totalVisits[cell] += visits[cell];
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Search failed", e.getCause());
+			}
+		}
+		int bestCell = -1;
+		for (int cell = 0; cell < totalVisits.length; cell++) {
+			if (isEmpty(board, cell) && (bestCell < 0 || totalVisits[cell] > totalVisits[bestCell])) {
+				bestCell = cell;
+			}
+		}
+		return bestCell;
+	}
+	
+	// Helper to find a cell which wins the game for specified player, or -1 if none
+	private static int findWinningCell(GameBoard board, Token token) {
+		GameBoard searchBoard = new GameBoard(board);
+		for (int cell = 0; cell < board.getNumRows() * board.getNumColumns(); cell++) {
+			if (!isEmpty(board, cell)) {
+				continue;
+			}
+			int row = cell / board.getNumColumns() + 1;
+			int column = cell % board.getNumColumns() + 1;
+			searchBoard.placeToken(token, row, column);
+			boolean won = searchBoard.isWon();
+			searchBoard.removeToken(row, column);
+			if (won) {
+				return cell;
+			}
+		}
+		return -1;
+	}
+	
+	// Helper to determine whether a (0-indexed) cell is empty
+	private static boolean isEmpty(GameBoard board, int cell) {
+		return board.getTokenAt(cell / board.getNumColumns() + 1, cell % board.getNumColumns() + 1) == null;
+	}
+	
+	/**
+	 * One search tree, grown by a single thread.
+	 */
+	private static class SearchTree {
+		private final GameBoard rootBoard;
+		private final Node root;
+		private final ThreadLocalRandom random = ThreadLocalRandom.current();
+
+		SearchTree(GameBoard board, Token token) {
+			this.rootBoard = new GameBoard(board);
+			this.root = new Node(null, -1, token.getOpponent(), rootBoard);
+		}
+
+		// Grow the tree until the deadline or playout limit, returning visits of each first move
+		int[] search(long deadlineNanos, AtomicLong playouts, long maxPlayouts) {
+			while (System.nanoTime() - deadlineNanos < 0 && playouts.getAndIncrement() < maxPlayouts) {
+				GameBoard board = new GameBoard(rootBoard);
+
+				// Select: descend through fully-expanded nodes, by upper confidence bound
+				Node node = root;
+				while (node.numUntriedCells == 0 && !node.children.isEmpty()) {
+					node = node.selectChild();
+					placeToken(board, node.mover, node.cell);
+				}
+
+				// Expand: add one untried move
+				if (node.numUntriedCells > 0) {
+					int index = random.nextInt(node.numUntriedCells);
+					int cell = node.untriedCells[index];
+					node.untriedCells[index] = node.untriedCells[--node.numUntriedCells];
+					Token mover = node.mover.getOpponent();
+					placeToken(board, mover, cell);
+					node = node.addChild(cell, mover, board);
+				}
+
+				// Simulate: play randomly to the end, then update results back to the root
+				Token winner = playout(board, node.mover.getOpponent());
+				for (; node != null; node = node.parent) {
+					node.visits++;
+					node.wins += winner == node.mover ? 1 : winner == null ? 0.5 : 0;
+				}
+			}
+			int[] visits = new int[rootBoard.getNumRows() * rootBoard.getNumColumns()];
+			for (Node child : root.children) {
+				visits[child.cell] = child.visits;
+			}
+			return visits;
+		}
+
+		// Helper to play random moves until the game ends, returning the winner, if any
+		private Token playout(GameBoard board, Token token) {
+			int[] emptyCells = board.getFreeCells();
+			int numEmptyCells = emptyCells.length;
+			while (!board.isWon() && numEmptyCells > 0) {
+				int index = random.nextInt(numEmptyCells);
+				placeToken(board, token, emptyCells[index]);
+				emptyCells[index] = emptyCells[--numEmptyCells];
+				token = token.getOpponent();
+			}
+			return board.getWinningToken();
+		}
+
+		// Helper to place a token at (0-indexed) cell
+		private static void placeToken(GameBoard board, Token token, int cell) {
+			board.placeToken(token, cell / board.getNumColumns() + 1, cell % board.getNumColumns() + 1);
+		}
+	}
+	
+	/**
+	 * A position in a search tree: the move leading to it, and its results so far.
+	 */
+	private static class Node {
+		private final Node parent;
+		private final int cell;
+		private final Token mover;
+		private final List<Node> children = new ArrayList<>();
+		private final int[] untriedCells;
+		private int numUntriedCells;
+		private int visits;
+		private double wins;
+
+		Node(Node parent, int cell, Token mover, GameBoard board) {
+			this.parent = parent;
+			this.cell = cell;
+			this.mover = mover;
+			this.untriedCells = board.isWon() ? new int[0] : board.getFreeCells();
+			this.numUntriedCells = untriedCells.length;
+		}
+
+		// Add a child node, for a move from this position
+		Node addChild(int cell, Token mover, GameBoard board) {
+			Node child = new Node(this, cell, mover, board);
+			children.add(child);
+			return child;
+		}
+
+		// Choose the child with the best upper confidence bound on its win rate
+		Node selectChild() {
+			double logVisits = Math.log(visits);
+			Node bestChild = null;
+			double bestBound = Double.NEGATIVE_INFINITY;
+			for (Node child : children) {
+				double bound = child.wins / child.visits + EXPLORATION * Math.sqrt(logVisits / child.visits);
+				if (bound > bestBound) {
+					bestBound = bound;
+					bestChild = child;
+				}
+			}
+			return bestChild;
+		}
+	}
+	
+	/**
+	 * Main method, for testing: play a game of MCTS against itself
+	 * @param args board rows, columns and number in a row to win, and time per move (defaults 7, 7, 4, 1000)
+	 */
+	public static void main(String[] args) {
+		int numRows = args.length > 0 ? Integer.parseInt(args[0]) : 7;
+		int numColumns = args.length > 1 ? Integer.parseInt(args[1]) : 7;
+		int winLength = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+		long moveMillis = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_MOVE_MILLIS;
+		try (MctsStrategy strategy = new MctsStrategy(Runtime.getRuntime().availableProcessors(), moveMillis, Long.MAX_VALUE)) {
+			GameBoard board = new GameBoard(numRows, numColumns, winLength);
+			Token token = Token.X;
+			Point move;
+			while ((move = strategy.selectMove(board, token)) != null) {
+				board.placeToken(token, (int) move.getX(), (int) move.getY());
+				System.out.println(token + " plays " + (int) move.getX() + ", " + (int) move.getY() + ": "
+						+ strategy.getNumPlayouts() + " playouts (" + (long) strategy.getPlayoutsPerSecond() + "/s)");
+				token = token.getOpponent();
+			}
+			System.out.println(board + "\nwinner=" + board.getWinningToken());
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package com.simplyautomatic.tictactoe;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Periodic reporter of {@link GameMetrics}, which logs a summary of all metrics at
+ * a fixed interval, at INFO level, from a background daemon thread. Closing the
+ * reporter logs a final summary.
+ */
+public class MetricsReporter implements AutoCloseable {
+	public static final long DEFAULT_PERIOD_SECONDS = 60;
+	private static final Logger LOGGER = Logger.getLogger(MetricsReporter.class.getName());
+
+	private final GameMetrics metrics;
+	private final ScheduledExecutorService executor;
+
+	/**
+	 * Start reporting specified metrics
+	 * @param metrics
+	 * @param periodSeconds time between reports
+	 */
+	public MetricsReporter(GameMetrics metrics, long periodSeconds) {
+		this.metrics = metrics;
+		this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "metrics-reporter");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.scheduleAtFixedRate(this::report, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+	}
+	
+	/**
+	 * Log a summary of the metrics now
+	 */
+	public void report() {
+		LOGGER.info(metrics.toString());
+	}
+	
+	/**
+	 * Stop reporting, after logging a final summary
+	 */
+	@Override
+	public void close() {
+		executor.shutdownNow();
+		report();
+	}
+}
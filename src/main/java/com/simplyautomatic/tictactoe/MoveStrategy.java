@@ -0,0 +1,40 @@
+package com.simplyautomatic.tictactoe;
+
+import java.awt.Point;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A way for the computer to choose its moves. Each move has a deadline: by then, a
+ * strategy should return the best move it has found so far.
+ */
+public interface MoveStrategy {
+
+	/**
+	 * Choose a move for specified player. The board is left unchanged.
+	 * @param board
+	 * @param token player to move
+	 * @param deadlineNanos time to return by, as a value of {@link System#nanoTime()}
+	 * @return valid move, or null if conceding, or if board is full or game is over
+	 */
+	Point selectMove(GameBoard board, Token token, long deadlineNanos);
+	
+	/**
+	 * Choose a move for specified player, completing the returned future with the
+	 * move, or with any failure, once chosen. By default the move is chosen on the
+	 * calling thread, before returning. The board must be left unchanged until the
+	 * move is chosen.
+	 * @param board
+	 * @param token player to move
+	 * @param deadlineNanos time to choose by, as a value of {@link System#nanoTime()}
+	 * @return future move: valid move, or null if conceding, or if board is full or game is over
+	 */
+	default CompletableFuture<Point> selectMoveAsync(GameBoard board, Token token, long deadlineNanos) {
+		CompletableFuture<Point> move = new CompletableFuture<>();
+		try {
+			move.complete(selectMove(board, token, deadlineNanos));
+		} catch (RuntimeException e) {
+			move.completeExceptionally(e);
+		}
+		return move;
+	}
+}
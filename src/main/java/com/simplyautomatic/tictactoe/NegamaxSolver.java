@@ -0,0 +1,353 @@
+package com.simplyautomatic.tictactoe;
+
+import java.awt.Point;
+import java.util.Arrays;
+
+/**
+ * Exact tic-tac-toe solver, for small boards. Searches the full game tree with
+ * negamax and alpha-beta pruning, trying the best move from previous searches and
+ * then cells on the most lines first. Positions are cached in a transposition table,
+ * keyed by the canonical Zobrist hash of the board as seen by the player to move, so
+ * all equivalent positions share one entry. The table is kept between searches, and
+ * is shared without locks (see {@link TranspositionTable}); each search keeps its
+ * own state, so one solver may be shared by many games, searching at once.
+ * Statistics are kept for the most recent search made by each calling thread.
+ * <p>
+ * Scores are from the point of view of the player to move: a win scores 1 plus the
+ * number of empty cells left after the game ends, so faster wins score higher, a
+ * loss scores the negative of that, and a draw scores 0.
+ */
+public class NegamaxSolver {
+	public static final int MAX_SOLVABLE_SIZE = 4;
+	// 2^18 entries (4MB): solving an empty 4x4 board visits about 260,000 positions
+	public static final int DEFAULT_TABLE_BITS = 18;
+
+	private static final int DEADLINE_CHECK_NODES = 4096;
+	private static final SearchTimeoutException SEARCH_TIMEOUT = new SearchTimeoutException();
+
+	// Move orders, by board size, computed once so searches may read them at once
+	private static final int[][] MOVE_ORDERS = new int[MAX_SOLVABLE_SIZE + 1][];
+	static {
+		for (int boardSize = 1; boardSize <= MAX_SOLVABLE_SIZE; boardSize++) {
+			MOVE_ORDERS[boardSize] = createMoveOrder(boardSize);
+		}
+	}
+	
+	private final TranspositionTable table;
+
+	// Statistics, for most recent search by each thread
+	private final ThreadLocal<Search> lastSearch = ThreadLocal.withInitial(() -> new Search(0));
+
+	/**
+	 * Construct a solver, with a transposition table of default size.
+	 */
+	public NegamaxSolver() {
+		this(DEFAULT_TABLE_BITS);
+	}
+	
+	/**
+	 * Construct a solver, with a transposition table of 2^tableBits entries.
+	 * @param tableBits 
+	 */
+	public NegamaxSolver(int tableBits) {
+		this.table = new TranspositionTable(tableBits);
+	}
+	
+	/**
+	 * Forget every position solved so far, so the next search starts from scratch.
+	 * Not safe while any search is running.
+	 */
+	public void clear() {
+		table.clear();
+	}
+	
+	/**
+	 * Find the best move for specified player. The board is left unchanged.
+	 * @param board
+	 * @param token player to move
+	 * @return best move, or null if board is full or game is over
+	 * @throws IllegalArgumentException if board cannot be solved
+	 */
+	public Point findBestMove(GameBoard board, Token token) throws IllegalArgumentException {
+		// No deadline: a deadline over a century away
+		return findBestMove(board, token, System.nanoTime() + Long.MAX_VALUE / 2);
+	}
+	
+	/**
+	 * Find the best move for specified player, or if the deadline passes first, the
+	 * best move found so far. Positions solved before the deadline stay in the
+	 * transposition table, so later searches need not repeat them. The board is left
+	 * unchanged.
+	 * @param board
+	 * @param token player to move
+	 * @param deadlineNanos time to return by, as a value of {@link System#nanoTime()}
+	 * @return best move, or null if board is full or game is over
+	 * @throws IllegalArgumentException if board cannot be solved
+	 */
+	public Point findBestMove(GameBoard board, Token token, long deadlineNanos) throws IllegalArgumentException {
+		checkBoardSize(board);
+		Search search = new Search(deadlineNanos);
+		GameBoard searchBoard = new GameBoard(board);
+		int bestCell = -1;
+		if (!searchBoard.isWon()) {
+			int bestScore = -Integer.MAX_VALUE;
+			int alpha = -Integer.MAX_VALUE;
+			try {
+				for (int cell : getMoveOrder(searchBoard.getBoardSize())) {
+					int row = cell / searchBoard.getBoardSize() + 1;
+					int column = cell % searchBoard.getBoardSize() + 1;
+					if (searchBoard.getTokenAt(row, column) != null) {
+						continue;
+					}
+					searchBoard.placeToken(token, row, column);
+					int score = -negamax(search, searchBoard, token.getOpponent(), -Integer.MAX_VALUE, -alpha);
+					searchBoard.removeToken(row, column);
+					if (score > bestScore) {
+						bestScore = score;
+						bestCell = cell;
+						alpha = Math.max(alpha, score);
+					}
+				}
+			} catch (SearchTimeoutException e) {
+				// Out of time: use best move so far, or else first empty cell in move order
+				search.timedOut = true;
+				for (int cell : getMoveOrder(board.getBoardSize())) {
+					if (bestCell < 0 && board.getTokenAt(cell / board.getBoardSize() + 1, cell % board.getBoardSize() + 1) == null) {
+						bestCell = cell;
+					}
+				}
+			}
+		}
+		search.finish();
+		lastSearch.set(search);
+		if (bestCell < 0) {
+			return null;
+		}
+		return new Point(bestCell / board.getBoardSize() + 1, bestCell % board.getBoardSize() + 1);
+	}
+	
+	/**
+	 * Solve the game from specified position.
+	 * @param board
+	 * @param token player to move
+	 * @return score for player to move, with perfect play by both players
+	 * @throws IllegalArgumentException if board cannot be solved
+	 */
+	public int solve(GameBoard board, Token token) throws IllegalArgumentException {
+		checkBoardSize(board);
+		Search search = new Search(System.nanoTime() + Long.MAX_VALUE / 2);
+		int score = negamax(search, new GameBoard(board), token, -Integer.MAX_VALUE, Integer.MAX_VALUE);
+		search.finish();
+		lastSearch.set(search);
+		return score;
+	}
+	
+	/**
+	 * Get number of positions visited by most recent search by the calling thread.
+	 * @return 
+	 */
+	public long getNodesSearched() {
+		return lastSearch.get().nodesSearched;
+	}
+	
+	/**
+	 * Determine whether most recent search by the calling thread ran out of time, before finding the best move.
+	 * @return 
+	 */
+	public boolean isTimedOut() {
+		return lastSearch.get().timedOut;
+	}
+	
+	/**
+	 * Get search speed of most recent search by the calling thread.
+	 * @return positions visited per second
+	 */
+	public double getNodesPerSecond() {
+		Search search = lastSearch.get();
+		return search.searchNanos > 0 ? search.nodesSearched * 1e9 / search.searchNanos : 0;
+	}
+	
+	/**
+	 * Get duration of most recent search by the calling thread.
+	 * @return 
+	 */
+	public long getSearchMillis() {
+		return lastSearch.get().searchNanos / 1000000;
+	}
+	
+	// Helper to search a position, returning its score for the player to move
+	private int negamax(Search search, GameBoard board, Token token, int alpha, int beta) {
+		if (++search.nodesSearched % DEADLINE_CHECK_NODES == 0 && System.nanoTime() - search.deadlineNanos >= 0) {
+			throw SEARCH_TIMEOUT;
+		}
+		int boardSize = board.getBoardSize();
+		int emptyCells = boardSize * boardSize - board.getNumMoves();
+		if (board.isWon()) {
+			return -(emptyCells + 1);
+		} else if (emptyCells == 0) {
+			return 0;
+		}
+
+		// No result can be better than winning with the next move
+		if (beta > emptyCells) {
+			beta = emptyCells;
+			if (alpha >= beta) {
+				return beta;
+			}
+		}
+
+		// Check transposition table, for a stored score or bound, and best move
+		int symmetry = board.getCanonicalHashSymmetry(token);
+		int transform = Symmetry.getTransform(symmetry);
+		long key = board.getZobristHash(symmetry);
+		long entry = table.probe(key);
+		int firstCell = -1;
+		int originalAlpha = alpha;
+		if (entry != 0) {
+			int score = TranspositionTable.getScore(entry);
+			int bound = TranspositionTable.getBound(entry);
+			if (bound == TranspositionTable.EXACT) {
+				return score;
+			} else if (bound == TranspositionTable.LOWER_BOUND) {
+				alpha = Math.max(alpha, score);
+			} else {
+				beta = Math.min(beta, score);
+			}
+			if (alpha >= beta) {
+				return score;
+			}
+			int canonicalCell = TranspositionTable.getMove(entry);
+			if (canonicalCell >= 0) {
+				firstCell = Symmetry.getSourceCell(transform, canonicalCell, boardSize);
+			}
+		}
+
+		// Try each move, starting with previous best move
+		int bestScore = -Integer.MAX_VALUE;
+		int bestCell = -1;
+		int[] moveOrder = getMoveOrder(boardSize);
+		for (int index = -1; index < moveOrder.length; index++) {
+			int cell = index < 0 ? firstCell : moveOrder[index];
+			if (cell < 0 || (index >= 0 && cell == firstCell)) {
+				continue;
+			}
+			int row = cell / boardSize + 1;
+			int column = cell % boardSize + 1;
+			if (board.getTokenAt(row, column) != null) {
+				continue;
+			}
+			board.placeToken(token, row, column);
+			int score = -negamax(search, board, token.getOpponent(), -beta, -alpha);
+			board.removeToken(row, column);
+			if (score > bestScore) {
+				bestScore = score;
+				bestCell = cell;
+			}
+			alpha = Math.max(alpha, score);
+			if (alpha >= beta) {
+				break;
+			}
+		}
+
+		// Store result, with best move mapped onto canonical board. Every search is to the
+		// end of the game, so depth is not recorded.
+		int bound = bestScore <= originalAlpha ? TranspositionTable.UPPER_BOUND
+				: bestScore >= beta ? TranspositionTable.LOWER_BOUND : TranspositionTable.EXACT;
+		int canonicalCell = Symmetry.getSourceCell(Symmetry.getInverse(transform), bestCell, boardSize);
+		table.store(key, bestScore, bound, 0, canonicalCell);
+		return bestScore;
+	}
+	
+	// Helper to get cells in order to try them: cells on the most lines (diagonals) first
+	private static int[] getMoveOrder(int boardSize) {
+		return MOVE_ORDERS[boardSize];
+	}
+	
+	// Helper to sort cells into the order to try them
+	private static int[] createMoveOrder(int boardSize) {
+		Integer[] cells = new Integer[boardSize * boardSize];
+		for (int cell = 0; cell < cells.length; cell++) {
+			cells[cell] = cell;
+		}
+		Arrays.sort(cells, (a, b) -> Integer.compare(getNumLines(b, boardSize), getNumLines(a, boardSize)));
+		return Arrays.stream(cells).mapToInt(Integer::intValue).toArray();
+	}
+	
+	// Helper to count lines (rows, columns, diagonals) through a cell
+	private static int getNumLines(int cell, int boardSize) {
+		int row = cell / boardSize;
+		int column = cell % boardSize;
+		return 2 + (row == column ? 1 : 0) + (row == boardSize - 1 - column ? 1 : 0);
+	}
+	
+	/**
+	 * Determine whether a board can be solved: it must be square, and no larger than
+	 * the maximum solvable size. Any number in a row to win is supported.
+	 * @param board
+	 * @return 
+	 */
+	public static boolean canSolve(GameBoard board) {
+		return board.isSquare() && board.getBoardSize() <= MAX_SOLVABLE_SIZE;
+	}
+	
+	// Helper to ensure board is small enough to solve
+	private static void checkBoardSize(GameBoard board) throws IllegalArgumentException {
+		if (!canSolve(board)) {
+			throw new IllegalArgumentException("Board cannot be solved: " + board.getNumRows() + "x" + board.getNumColumns());
+		}
+	}
+	
+	/**
+	 * State of one search: its deadline, and statistics
+	 */
+	private static class Search {
+		private final long startNanos = System.nanoTime();
+		private final long deadlineNanos;
+		private long nodesSearched;
+		private long searchNanos;
+		private boolean timedOut;
+
+		Search(long deadlineNanos) {
+			this.deadlineNanos = deadlineNanos;
+		}
+
+		// Helper to record the time taken, once the search is over
+		void finish() {
+			searchNanos = System.nanoTime() - startNanos;
+		}
+	}
+	
+	/**
+	 * Thrown to abandon a search which has run out of time. A single instance is
+	 * reused, without a stack trace, since it is thrown only to unwind the search.
+	 */
+	private static class SearchTimeoutException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		SearchTimeoutException() {
+			super("Search timed out", null, false, false);
+		}
+	}
+	
+	/**
+	 * Main method, for testing: solve empty boards
+	 * @param args 
+	 */
+	public static void main(String[] args) {
+		NegamaxSolver solver = new NegamaxSolver();
+		for (int boardSize = 3; boardSize <= MAX_SOLVABLE_SIZE; boardSize++) {
+			int score = solver.solve(new GameBoard(boardSize), Token.X);
+			System.out.println(boardSize + "x" + boardSize + ": score " + score + ", " + solver.getNodesSearched()
+					+ " nodes in " + solver.getSearchMillis() + " ms (" + (long) solver.getNodesPerSecond() + " nodes/s)");
+		}
+		GameBoard board = new GameBoard(3);
+		board.placeToken(Token.X, 1, 1);
+		board.placeToken(Token.O, 1, 2);
+		System.out.println("best move for X:\n" + board + "\n" + solver.findBestMove(board, Token.X));
+		NegamaxSolver timedSolver = new NegamaxSolver();
+		Point move = timedSolver.findBestMove(new GameBoard(4), Token.X, System.nanoTime() + 10000000);
+		System.out.println("4x4 in 10 ms: " + move + ", timed out=" + timedSolver.isTimedOut() + ", " + timedSolver.getNodesSearched() + " nodes");
+		int score = solver.solve(new GameBoard(4, 4, 3), Token.X);
+		System.out.println("4x4, 3 in a row: score " + score + ", " + solver.getNodesSearched() + " nodes in " + solver.getSearchMillis() + " ms");
+	}
+}
@@ -0,0 +1,76 @@
+package com.simplyautomatic.tictactoe;
+
+/**
+ * Results of games which passed through a position, counted for the player who
+ * moved into it: games that player went on to win, lose or draw.
+ */
+public final class PositionStats {
+	public static final PositionStats NONE = new PositionStats(0, 0, 0);
+
+	private final long wins;
+	private final long losses;
+	private final long draws;
+
+	/**
+	 * Construct statistics
+	 * @param wins
+	 * @param losses
+	 * @param draws 
+	 */
+	public PositionStats(long wins, long losses, long draws) {
+		this.wins = wins;
+		this.losses = losses;
+		this.draws = draws;
+	}
+	
+	/**
+	 * Get number of games won
+	 * @return 
+	 */
+	public long getWins() {
+		return wins;
+	}
+	
+	/**
+	 * Get number of games lost
+	 * @return 
+	 */
+	public long getLosses() {
+		return losses;
+	}
+	
+	/**
+	 * Get number of games drawn
+	 * @return 
+	 */
+	public long getDraws() {
+		return draws;
+	}
+	
+	/**
+	 * Get number of games played
+	 * @return 
+	 */
+	public long getNumGames() {
+		return wins + losses + draws;
+	}
+	
+	/**
+	 * Get the expected score of the position, counting a win as 1 and a draw as 1/2,
+	 * starting from one imaginary win and one loss, so unplayed positions score 1/2,
+	 * and a single result does not decide a position.
+	 * @return score between 0 and 1
+	 */
+	public double getScore() {
+		return (wins + draws / 2.0 + 1) / (getNumGames() + 2);
+	}
+	
+	/**
+	 * Get a summary of the statistics
+	 * @return 
+	 */
+	@Override
+	public String toString() {
+		return "won " + wins + ", lost " + losses + ", drawn " + draws;
+	}
+}
@@ -0,0 +1,355 @@
+package com.simplyautomatic.tictactoe;
+
+import java.awt.Point;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A repository of game results by position, using SQLite for storage: for every
+ * position reached in a finished game, the number of games won, lost and drawn by
+ * the player who moved into it (see {@link PositionStats}). Positions are keyed by
+ * their canonical form as seen by that player (see {@link GameBoard#getCanonicalKey(Token)}).
+ * <p>
+ * Games are recorded in one transaction, as a batch of inserts of any new
+ * positions, then a batch of updates of all positions' counts. Many games can be
+ * recorded at once, adding up each position's counts first, so positions common
+ * to many games (e.g. every opening move) are updated once. Games recorded one at
+ * a time, as they finish, are queued, and recorded by a single background thread,
+ * so players never wait for the database: every game queued while the previous
+ * group was being recorded is recorded in one transaction. Closing the repository
+ * records any queued games first. The statistics of many positions, such as every
+ * move from a position, are read in one query. Methods are synchronized, so a
+ * repository may be shared between threads.
+ * For this simple app, SQLExceptions are reported but ignored.
+ */
+public class PositionStatsRepository implements AutoCloseable {
+	private static final String DATABASE_FILENAME = "tictactoe.db";
+	private static final GameMetrics METRICS = GameMetrics.getInstance();
+
+	// SQLite allows up to 999 parameters per statement, so larger lookups are split
+	private static final int MAX_LOOKUP_KEYS = 512;
+	private static final int MAX_GROUP_GAMES = 1000;
+	private static final GameRecord END_OF_QUEUE = new GameRecord(0, 0, 0, null, null, new int[0]);
+
+	private final Connection repoConnection;
+	private final PreparedStatement insertStatement;
+	private final PreparedStatement updateStatement;
+	private final BlockingQueue<GameRecord> queue = new LinkedBlockingQueue<>();
+	private final Thread writerThread;
+	private volatile boolean closed;
+
+	// Lookup statements, by number of keys: a power of 2, so few are needed
+	private final Map<Integer, PreparedStatement> lookupStatements = new HashMap<>();
+
+	/**
+	 * Create a new repository, in the default database file.
+	 */
+	public PositionStatsRepository() {
+		this(DATABASE_FILENAME);
+	}
+	
+	/**
+	 * Create a new repository, in specified database file. The file may also hold
+	 * a {@link BoardStateRepository}.
+	 * @param databaseFilename 
+	 */
+	public PositionStatsRepository(String databaseFilename) {
+		Connection connection = null;
+		PreparedStatement insert = null;
+		PreparedStatement update = null;
+		try {
+			connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFilename);
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("PRAGMA journal_mode=WAL");
+				statement.execute("PRAGMA synchronous=NORMAL");
+				statement.execute("PRAGMA busy_timeout=5000");
+				statement.executeUpdate("CREATE TABLE IF NOT EXISTS position_stats (board_key BLOB PRIMARY KEY, "
+						+ "wins INTEGER NOT NULL, losses INTEGER NOT NULL, draws INTEGER NOT NULL)");
+			}
+			insert = connection.prepareStatement("INSERT OR IGNORE INTO position_stats VALUES (?, 0, 0, 0)");
+			update = connection.prepareStatement("UPDATE position_stats SET wins = wins + ?, losses = losses + ?, "
+					+ "draws = draws + ? WHERE board_key = ?");
+		} catch (SQLException e) {
+			METRICS.recordStoreError();
+			e.printStackTrace();
+		} finally {
+			repoConnection = connection;
+			insertStatement = insert;
+			updateStatement = update;
+		}
+		this.writerThread = new Thread(this::writeGroups, "position-stats-writer");
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+	}
+	
+	/**
+	 * Queue the result of a game to be recorded, for every position reached in it,
+	 * by the background thread
+	 * @param game
+	 * @throws IllegalStateException if repository is closed
+	 */
+	public void recordGame(GameRecord game) throws IllegalStateException {
+		// Check and queue under the lock close() queues its end marker under, so no game is queued after it
+		synchronized (queue) {
+			if (closed) {
+				throw new IllegalStateException("Repository is closed");
+			}
+			queue.add(game);
+		}
+	}
+	
+	/**
+	 * Record the results of many games, in one transaction, before returning
+	 * @param games 
+	 */
+	public void recordGames(Collection<GameRecord> games) {
+		addStats(tally(games));
+	}
+	
+	/**
+	 * Count the results of many games, for every position reached in them, without
+	 * recording them, so games can be counted on many threads at once, and then
+	 * recorded with {@link #addStats(Map)}. Games on boards too large to encode
+	 * are skipped.
+	 * @param games
+	 * @return wins, losses and draws of each position, by key
+	 */
+	public static Map<ByteBuffer, long[]> tally(Collection<GameRecord> games) {
+		Map<ByteBuffer, long[]> counts = new HashMap<>();
+		for (GameRecord game : games) {
+			if (!BoardEncoding.canEncode(game.getNumRows(), game.getNumColumns())) {
+				continue;
+			}
+			// Replay the game, to find the key of each position, for the player who moved into it
+			GameBoard position = game.replay(0);
+			for (int index = 0; index < game.getNumMoves(); index++) {
+				game.playMove(position, index);
+				Token mover = game.getMover(index);
+				long[] positionCounts = counts.computeIfAbsent(ByteBuffer.wrap(position.getCanonicalKey(mover)),
+						boardKey -> new long[3]);
+				positionCounts[game.getWinner() == mover ? 0 : game.getWinner() != null ? 1 : 2]++;
+			}
+		}
+		return counts;
+	}
+	
+	/**
+	 * Add counts of results to positions, in one transaction
+	 * @param counts wins, losses and draws to add to each position, by key (see {@link #tally(Collection)})
+	 */
+	public synchronized void addStats(Map<ByteBuffer, long[]> counts) {
+		if (counts.isEmpty()) {
+			return;
+		}
+		long startNanos = System.nanoTime();
+		try {
+			repoConnection.setAutoCommit(false);
+			try {
+				for (Map.Entry<ByteBuffer, long[]> entry : counts.entrySet()) {
+					byte[] boardKey = entry.getKey().array();
+					insertStatement.setBytes(1, boardKey);
+					insertStatement.addBatch();
+					updateStatement.setLong(1, entry.getValue()[0]);
+					updateStatement.setLong(2, entry.getValue()[1]);
+					updateStatement.setLong(3, entry.getValue()[2]);
+					updateStatement.setBytes(4, boardKey);
+					updateStatement.addBatch();
+				}
+				insertStatement.executeBatch();
+				updateStatement.executeBatch();
+				repoConnection.commit();
+				METRICS.getStoreInsertLatency().recordSince(startNanos);
+			} catch (SQLException e) {
+				insertStatement.clearBatch();
+				updateStatement.clearBatch();
+				repoConnection.rollback();
+				throw e;
+			} finally {
+				repoConnection.setAutoCommit(true);
+			}
+		} catch (SQLException e) {
+			METRICS.recordStoreError();
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Get the statistics of many positions, in as few queries as possible
+	 * @param boardKeys keys of positions (see {@link GameBoard#getCanonicalKey(Token)})
+	 * @return statistics of each position, in the same order, with {@link PositionStats#NONE} for unknown positions
+	 */
+	public synchronized PositionStats[] getStats(List<byte[]> boardKeys) {
+		PositionStats[] stats = new PositionStats[boardKeys.size()];
+		Map<ByteBuffer, PositionStats> found = new HashMap<>();
+		long startNanos = System.nanoTime();
+		try {
+			for (int first = 0; first < boardKeys.size(); first += MAX_LOOKUP_KEYS) {
+				lookup(boardKeys.subList(first, Math.min(first + MAX_LOOKUP_KEYS, boardKeys.size())), found);
+			}
+			METRICS.getStoreLookupLatency().recordSince(startNanos);
+		} catch (SQLException e) {
+			METRICS.recordStoreError();
+			e.printStackTrace();
+		}
+		for (int index = 0; index < stats.length; index++) {
+			stats[index] = found.getOrDefault(ByteBuffer.wrap(boardKeys.get(index)), PositionStats.NONE);
+		}
+		return stats;
+	}
+	
+	/**
+	 * Get the statistics of a position
+	 * @param boardKey key of position (see {@link GameBoard#getCanonicalKey(Token)})
+	 * @return statistics, or {@link PositionStats#NONE} if unknown
+	 */
+	public PositionStats getStats(byte[] boardKey) {
+		return getStats(Arrays.asList(boardKey))[0];
+	}
+	
+	// Helper to look up a group of keys in one query, adding any found to a map
+	private void lookup(List<byte[]> boardKeys, Map<ByteBuffer, PositionStats> found) throws SQLException {
+		int numParameters = 1;
+		while (numParameters < boardKeys.size()) {
+			numParameters <<= 1;
+		}
+		PreparedStatement lookupStatement = getLookupStatement(numParameters);
+		for (int index = 0; index < numParameters; index++) {
+			// Fill any spare parameters by repeating the last key
+			lookupStatement.setBytes(index + 1, boardKeys.get(Math.min(index, boardKeys.size() - 1)));
+		}
+		try (ResultSet rs = lookupStatement.executeQuery()) {
+			while (rs.next()) {
+				found.put(ByteBuffer.wrap(rs.getBytes(1)), new PositionStats(rs.getLong(2), rs.getLong(3), rs.getLong(4)));
+			}
+		}
+	}
+	
+	// Helper to get a prepared lookup statement for specified number of keys
+	private PreparedStatement getLookupStatement(int numParameters) throws SQLException {
+		PreparedStatement lookupStatement = lookupStatements.get(numParameters);
+		if (lookupStatement == null) {
+			StringBuilder query = new StringBuilder("SELECT board_key, wins, losses, draws FROM position_stats WHERE board_key IN (?");
+			for (int index = 1; index < numParameters; index++) {
+				query.append(", ?");
+			}
+			lookupStatement = repoConnection.prepareStatement(query.append(")").toString());
+			lookupStatements.put(numParameters, lookupStatement);
+		}
+		return lookupStatement;
+	}
+	
+	/**
+	 * Get number of positions in repository
+	 * @return 
+	 */
+	public synchronized long size() {
+		String query = "SELECT COUNT(*) FROM position_stats";
+		try (Statement statement = repoConnection.createStatement(); ResultSet rs = statement.executeQuery(query);) {
+			return rs.next() ? rs.getLong(1) : 0;
+		} catch (SQLException e) {
+			METRICS.recordStoreError();
+			e.printStackTrace();
+			return 0;
+		}
+	}
+	
+	// Writer thread loop: wait for games, then record all that are queued, in one transaction
+	private void writeGroups() {
+		List<GameRecord> group = new ArrayList<>();
+		boolean endOfQueue = false;
+		while (!endOfQueue || !queue.isEmpty()) {
+			try {
+				if (!endOfQueue) {
+					group.add(queue.take());
+				}
+			} catch (InterruptedException e) {
+				endOfQueue = true;
+			}
+			queue.drainTo(group, MAX_GROUP_GAMES - group.size());
+			if (group.remove(END_OF_QUEUE)) {
+				endOfQueue = true;
+			}
+			try {
+				recordGames(group);
+			} catch (RuntimeException e) {
+				METRICS.recordStoreError();
+				e.printStackTrace();
+			}
+			group.clear();
+		}
+	}
+	
+	/**
+	 * Record any queued games, stop the writer thread, then close the repository,
+	 * and its database connection
+	 */
+	@Override
+	public void close() {
+		synchronized (queue) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			queue.add(END_OF_QUEUE);
+		}
+		try {
+			writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		closeConnection();
+	}
+	
+	// Helper to close the statements and database connection, once the writer has stopped
+	private synchronized void closeConnection() {
+		try {
+			insertStatement.close();
+			updateStatement.close();
+			for (PreparedStatement lookupStatement : lookupStatements.values()) {
+				lookupStatement.close();
+			}
+			repoConnection.close();
+		} catch (SQLException e) {
+			METRICS.recordStoreError();
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Main method, for testing
+	 * @param args 
+	 */
+	public static void main(String[] args) {
+		try (PositionStatsRepository repo = new PositionStatsRepository()) {
+			GameBoard board = new GameBoard(3);
+			List<Point> moves = new ArrayList<>();
+			Token token = Token.X;
+			for (Point move : new Point[] {new Point(1, 1), new Point(2, 2), new Point(1, 2), new Point(3, 3), new Point(1, 3)}) {
+				board.placeToken(token, move.x, move.y);
+				moves.add(move);
+				token = token.getOpponent();
+			}
+			repo.recordGames(Collections.singletonList(new GameRecord(board, moves, null, board.getWinningToken())));
+			GameBoard corner = new GameBoard(3);
+			corner.placeToken(Token.X, 3, 3);
+			GameBoard center = new GameBoard(3);
+			center.placeToken(Token.X, 2, 2);
+			PositionStats[] stats = repo.getStats(Arrays.asList(corner.getCanonicalKey(Token.X), center.getCanonicalKey(Token.X)));
+			System.out.println("corner: " + stats[0] + ", center: " + stats[1] + ", positions: " + repo.size());
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package com.simplyautomatic.tictactoe;
+
+import java.awt.Point;
+
+/**
+ * Cheap A.I., which never waits for a store or database, so it can always move in
+ * time (see {@link TimeoutMoveStrategy}): plays a winning move if there is one,
+ * otherwise blocks the opponent's winning move, otherwise plays next to a token (or
+ * in the centre of an empty board). Only cells next to a token are checked, as only
+ * they can complete a line, so the cost depends on the number of moves played, not
+ * the size of the board.
+ */
+public class QuickMoveStrategy implements MoveStrategy {
+
+	/**
+	 * Choose a winning move, a blocking move, or a move next to a token, checking
+	 * moves until the deadline. The board is left unchanged.
+	 * @param board
+	 * @param token
+	 * @param deadlineNanos
+	 * @return move, or null if board is full or game is over
+	 */
+	@Override
+	public Point selectMove(GameBoard board, Token token, long deadlineNanos) {
+		if (board.isWon() || board.getNumFreeCells() == 0) {
+			return null;
+		}
+		if (board.getNumMoves() == 0) {
+			return new Point((board.getNumRows() + 1) / 2, (board.getNumColumns() + 1) / 2);
+		}
+		// Copy the occupied cells, as placing and removing tokens reorders them
+		int[] occupiedCells = new int[board.getNumMoves()];
+		for (int index = 0; index < occupiedCells.length; index++) {
+			occupiedCells[index] = board.getOccupiedCell(index);
+		}
+		Point move = findWinningMove(board, occupiedCells, token, deadlineNanos);
+		if (move == null) {
+			move = findWinningMove(board, occupiedCells, token.getOpponent(), deadlineNanos);
+		}
+		if (move == null) {
+			move = findNeighbour(board, occupiedCells);
+		}
+		if (move == null) {
+			int cell = board.getFreeCell(0);
+			move = new Point(cell / board.getNumColumns() + 1, cell % board.getNumColumns() + 1);
+		}
+		return move;
+	}
+	
+	// Helper to find a free cell next to a token which wins the game for specified
+	// player, or null if none is found by the deadline
+	private static Point findWinningMove(GameBoard board, int[] occupiedCells, Token token, long deadlineNanos) {
+		int numColumns = board.getNumColumns();
+		for (int cell : occupiedCells) {
+			if (System.nanoTime() - deadlineNanos >= 0) {
+				return null;
+			}
+			for (int row = cell / numColumns; row <= cell / numColumns + 2; row++) {
+				for (int column = cell % numColumns; column <= cell % numColumns + 2; column++) {
+					if (!isFree(board, row, column)) {
+						continue;
+					}
+					board.placeToken(token, row, column);
+					boolean won = board.isWon();
+					board.removeToken(row, column);
+					if (won) {
+						return new Point(row, column);
+					}
+				}
+			}
+		}
+		return null;
+	}
+	
+	// Helper to find a free cell next to any token, or null if none
+	private static Point findNeighbour(GameBoard board, int[] occupiedCells) {
+		int numColumns = board.getNumColumns();
+		for (int cell : occupiedCells) {
+			for (int row = cell / numColumns; row <= cell / numColumns + 2; row++) {
+				for (int column = cell % numColumns; column <= cell % numColumns + 2; column++) {
+					if (isFree(board, row, column)) {
+						return new Point(row, column);
+					}
+				}
+			}
+		}
+		return null;
+	}
+	
+	// Helper to determine whether a (1-indexed) cell is on the board and empty
+	private static boolean isFree(GameBoard board, int row, int column) {
+		return row >= 1 && row <= board.getNumRows() && column >= 1 && column <= board.getNumColumns()
+				&& board.getTokenAt(row, column) == null;
+	}
+}
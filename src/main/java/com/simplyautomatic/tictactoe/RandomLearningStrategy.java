@@ -0,0 +1,117 @@
+package com.simplyautomatic.tictactoe;
+
+import java.awt.Point;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Simple learning A.I.: plays random, but valid, moves, avoiding any move which
+ * leads to a board state previously recorded as a losing move. On boards too large
+ * to learn from (see {@link BoardEncoding#canEncode(int, int)}), it plays next to
+ * a random token instead, so play stays in one area of a huge board.
+ */
+public class RandomLearningStrategy implements MoveStrategy {
+	private static final int MAX_NEARBY_ATTEMPTS = 100;
+	private static final GameMetrics METRICS = GameMetrics.getInstance();
+	private final BoardStateStore losingMoves;
+
+	/**
+	 * Construct a strategy, which avoids moves in specified store of losing moves
+	 * @param losingMoves 
+	 */
+	public RandomLearningStrategy(BoardStateStore losingMoves) {
+		this.losingMoves = losingMoves;
+	}
+	
+	/**
+	 * Choose a move for specified player: random, but valid, and not a known losing move
+	 * @param board
+	 * @param token
+	 * @return valid move, or null if conceding
+	 */
+	public Point selectMove(GameBoard board, Token token) {
+		// No deadline: a deadline over a century away
+		return selectMove(board, token, System.nanoTime() + Long.MAX_VALUE / 2);
+	}
+	
+	/**
+	 * Choose a move for specified player: random, but valid, and not a known losing
+	 * move. Every free cell is tried once, in random order, by placing a token on the
+	 * board and then removing it, so the board is not copied. If the deadline passes,
+	 * or the thread is interrupted, the next move is played without checking.
+	 * @param board
+	 * @param token
+	 * @param deadlineNanos
+	 * @return valid move, or null if conceding, as every move is a known losing move
+	 */
+	@Override
+	public Point selectMove(GameBoard board, Token token, long deadlineNanos) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		if (!BoardEncoding.canEncode(board.getNumRows(), board.getNumColumns())) {
+			return selectNearbyMove(board, random);
+		}
+		int[] candidateCells = board.getFreeCells();
+		for (int index = 0; index < candidateCells.length; index++) {
+			// Choose a random untried cell (a Fisher-Yates shuffle, one step at a time)
+			int swapIndex = index + random.nextInt(candidateCells.length - index);
+			int cell = candidateCells[swapIndex];
+			candidateCells[swapIndex] = candidateCells[index];
+			int row = cell / board.getNumColumns() + 1;
+			int column = cell % board.getNumColumns() + 1;
+
+			// If out of time, or interrupted, play this move without checking it
+			if (System.nanoTime() - deadlineNanos >= 0 || Thread.currentThread().isInterrupted()) {
+				return new Point(row, column);
+			}
+
+			// Check to see if this move is a losing move, that was previously recorded
+			boolean losingMove;
+			board.placeToken(token, row, column);
+			try {
+				losingMove = isLosingMove(board);
+			} finally {
+				board.removeToken(row, column);
+			}
+			if (losingMove) {
+				METRICS.recordLosingMoveRejected();
+				continue;
+			}
+
+			return new Point(row, column);
+		}
+		// If every move is a known losing move, then concede
+		return null;
+	}
+	
+	// Helper to choose a random free cell next to a random token (or the centre of an 
+	// empty board), or any free cell if none is found, without visiting every cell
+	private static Point selectNearbyMove(GameBoard board, ThreadLocalRandom random) {
+		int numRows = board.getNumRows();
+		int numColumns = board.getNumColumns();
+		if (board.getNumMoves() == 0) {
+			return new Point((numRows + 1) / 2, (numColumns + 1) / 2);
+		}
+		for (int attempt = 0; attempt < MAX_NEARBY_ATTEMPTS; attempt++) {
+			int cell = board.getOccupiedCell(random.nextInt(board.getNumMoves()));
+			int row = cell / numColumns + random.nextInt(3);
+			int column = cell % numColumns + random.nextInt(3);
+			if (row >= 1 && row <= numRows && column >= 1 && column <= numColumns && board.getTokenAt(row, column) == null) {
+				return new Point(row, column);
+			}
+		}
+		if (board.getNumFreeCells() == 0) {
+			return null;
+		}
+		int cell = board.getFreeCell(random.nextInt(board.getNumFreeCells()));
+		return new Point(cell / numColumns + 1, cell % numColumns + 1);
+	}
+	
+	/**
+	 * Check whether a proposed board state, or any equivalent board state, was
+	 * previously recorded as a losing move
+	 * @param board
+	 * @return 
+	 */
+	public boolean isLosingMove(GameBoard board) {
+		return losingMoves.contains(board.getCanonicalKey());
+	}
+}
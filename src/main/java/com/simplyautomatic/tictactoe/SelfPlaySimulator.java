@@ -0,0 +1,136 @@
+package com.simplyautomatic.tictactoe;
+
+import java.awt.Point;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Headless self-play engine, to train the learning A.I. in bulk. Plays many games
+ * of the computer against itself, in parallel, each on its own board. Whenever a
+ * game is won, the loser's last move is recorded as a losing move, straight to
+ * the shared store, so the store must be thread-safe: a
+ * {@link ConcurrentBoardStateStore} already batches its writes.
+ */
+public class SelfPlaySimulator {
+	private final BoardStateStore losingMoves;
+	private final int boardSize;
+	private final int numThreads;
+
+	// Statistics, for most recent run:
+	private final LongAdder xWins = new LongAdder();
+	private final LongAdder oWins = new LongAdder();
+	private final LongAdder draws = new LongAdder();
+	private final LongAdder concessions = new LongAdder();
+	private long runNanos;
+
+	/**
+	 * Construct a simulator
+	 * @param losingMoves thread-safe store of losing moves, to learn from and add to
+	 * @param boardSize
+	 * @param numThreads number of games to play at once
+	 */
+	public SelfPlaySimulator(BoardStateStore losingMoves, int boardSize, int numThreads) {
+		this.losingMoves = losingMoves;
+		this.boardSize = boardSize;
+		this.numThreads = numThreads;
+	}
+	
+	/**
+	 * Play specified number of games, returning once all are finished and all
+	 * losing moves have been added to the store.
+	 * @param numGames
+	 * @throws InterruptedException 
+	 */
+	public void run(int numGames) throws InterruptedException {
+		xWins.reset();
+		oWins.reset();
+		draws.reset();
+		concessions.reset();
+		long startNanos = System.nanoTime();
+		RandomLearningStrategy learner = new RandomLearningStrategy(losingMoves);
+		ForkJoinPool pool = new ForkJoinPool(numThreads);
+		try {
+			pool.submit(() -> IntStream.range(0, numGames).parallel().forEach(game -> playGame(learner))).get();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Self-play game failed", e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+		runNanos = System.nanoTime() - startNanos;
+	}
+	
+	// Helper to play one game, recording the loser's last move if won
+	private void playGame(RandomLearningStrategy learner) {
+		GameBoard board = new GameBoard(boardSize);
+		byte[][] lastMoveKeys = new byte[2][];
+		Token currentTurnToken = Token.X;
+		while (true) {
+			Point move = learner.selectMove(board, currentTurnToken);
+			if (move == null) {
+				concessions.increment();
+				return;
+			}
+			board.placeToken(currentTurnToken, (int) move.getX(), (int) move.getY());
+			lastMoveKeys[currentTurnToken.ordinal()] = board.getCanonicalKey();
+
+			if (board.isWon()) {
+				(currentTurnToken == Token.X ? xWins : oWins).increment();
+				byte[] losingMoveKey = lastMoveKeys[currentTurnToken.getOpponent().ordinal()];
+				if (losingMoveKey != null) {
+					losingMoves.add(losingMoveKey);
+				}
+				return;
+			} else if (board.isDrawn()) {
+				draws.increment();
+				return;
+			}
+			currentTurnToken = currentTurnToken.getOpponent();
+		}
+	}
+	
+	/**
+	 * Get number of games played in most recent run.
+	 * @return 
+	 */
+	public long getNumGames() {
+		return xWins.sum() + oWins.sum() + draws.sum() + concessions.sum();
+	}
+	
+	/**
+	 * Get speed of most recent run.
+	 * @return games played per second
+	 */
+	public double getGamesPerSecond() {
+		return runNanos > 0 ? getNumGames() * 1e9 / runNanos : 0;
+	}
+	
+	/**
+	 * Get a summary of results of most recent run
+	 * @return 
+	 */
+	@Override
+	public String toString() {
+		return boardSize + "x" + boardSize + ": " + getNumGames() + " games on " + numThreads + " threads in "
+				+ (runNanos / 1000000) + " ms (" + (long) getGamesPerSecond() + " games/s): X won " + xWins.sum()
+				+ ", O won " + oWins.sum() + ", drawn " + draws.sum() + ", conceded " + concessions.sum();
+	}
+	
+	/**
+	 * Main method: run self-play training
+	 * @param args board size, number of games, and number of threads (defaults 3, 10000, all cores)
+	 * @throws InterruptedException 
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		int boardSize = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+		int numGames = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+		int numThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		try (BoardStateStore losingMoves = new ConcurrentBoardStateStore(new BoardStateRepository())) {
+			SelfPlaySimulator simulator = new SelfPlaySimulator(losingMoves, boardSize, numThreads);
+			simulator.run(numGames);
+			System.out.println(simulator);
+			System.out.println("Losing moves stored: " + losingMoves.size());
+		}
+	}
+}
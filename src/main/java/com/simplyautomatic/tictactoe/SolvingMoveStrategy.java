@@ -0,0 +1,54 @@
+package com.simplyautomatic.tictactoe;
+
+import java.awt.Point;
+
+/**
+ * Strategy which plays perfectly, with an exact solver, on boards small enough to
+ * solve, and uses another strategy on larger boards, and optionally another on
+ * boards too large to encode, such as huge sparse boards, where strategies which
+ * learn from stored board states, or visit every cell, cannot be used.
+ */
+public class SolvingMoveStrategy implements MoveStrategy {
+	private final NegamaxSolver solver;
+	private final MoveStrategy largeBoardStrategy;
+	private final MoveStrategy hugeBoardStrategy;
+
+	/**
+	 * Construct a strategy
+	 * @param solver solver for small boards, which may be shared
+	 * @param largeBoardStrategy strategy for boards too large to solve
+	 */
+	public SolvingMoveStrategy(NegamaxSolver solver, MoveStrategy largeBoardStrategy) {
+		this(solver, largeBoardStrategy, largeBoardStrategy);
+	}
+	
+	/**
+	 * Construct a strategy
+	 * @param solver solver for small boards, which may be shared
+	 * @param largeBoardStrategy strategy for boards too large to solve
+	 * @param hugeBoardStrategy strategy for boards too large to encode (see {@link BoardEncoding#canEncode(int, int)})
+	 */
+	public SolvingMoveStrategy(NegamaxSolver solver, MoveStrategy largeBoardStrategy, MoveStrategy hugeBoardStrategy) {
+		this.solver = solver;
+		this.largeBoardStrategy = largeBoardStrategy;
+		this.hugeBoardStrategy = hugeBoardStrategy;
+	}
+	
+	/**
+	 * Choose the best move for specified player, or the best found by the deadline
+	 * @param board
+	 * @param token
+	 * @param deadlineNanos
+	 * @return 
+	 */
+	@Override
+	public Point selectMove(GameBoard board, Token token, long deadlineNanos) {
+		if (NegamaxSolver.canSolve(board)) {
+			return solver.findBestMove(board, token, deadlineNanos);
+		}
+		if (!BoardEncoding.canEncode(board.getNumRows(), board.getNumColumns())) {
+			return hugeBoardStrategy.selectMove(board, token, deadlineNanos);
+		}
+		return largeBoardStrategy.selectMove(board, token, deadlineNanos);
+	}
+}
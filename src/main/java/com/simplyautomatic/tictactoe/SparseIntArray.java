@@ -0,0 +1,133 @@
+package com.simplyautomatic.tictactoe;
+
+import java.util.Arrays;
+
+/**
+ * A virtual int array, in which every element initially holds its own index, as in
+ * the identity permutation. Only elements set to other values are stored, in an
+ * open-addressing hash table of primitive ints (linear probing, with backward-shift
+ * deletion), so a permutation of a huge array which differs from the identity in
+ * few places, such as the free cell list of a huge board, takes little memory.
+ */
+public class SparseIntArray {
+	private static final int INITIAL_CAPACITY = 16;
+	private static final int EMPTY = -1;
+
+	private int[] indexes;
+	private int[] values;
+	private int numStored;
+
+	/**
+	 * Construct an identity array
+	 */
+	public SparseIntArray() {
+		this.indexes = new int[INITIAL_CAPACITY];
+		this.values = new int[INITIAL_CAPACITY];
+		Arrays.fill(indexes, EMPTY);
+	}
+	
+	/**
+	 * Copy-constructor, to make a new array identical to existing one
+	 * @param other 
+	 */
+	public SparseIntArray(SparseIntArray other) {
+		this.indexes = other.indexes.clone();
+		this.values = other.values.clone();
+		this.numStored = other.numStored;
+	}
+	
+	/**
+	 * Get an element
+	 * @param index non-negative index
+	 * @return value set, or the index itself if never set
+	 */
+	public int get(int index) {
+		int mask = indexes.length - 1;
+		for (int slot = hash(index) & mask; indexes[slot] != EMPTY; slot = (slot + 1) & mask) {
+			if (indexes[slot] == index) {
+				return values[slot];
+			}
+		}
+		return index;
+	}
+	
+	/**
+	 * Set an element. Setting an element back to its own index removes it from storage.
+	 * @param index non-negative index
+	 * @param value 
+	 */
+	public void set(int index, int value) {
+		int mask = indexes.length - 1;
+		int slot = hash(index) & mask;
+		while (indexes[slot] != EMPTY && indexes[slot] != index) {
+			slot = (slot + 1) & mask;
+		}
+		if (value == index) {
+			if (indexes[slot] == index) {
+				remove(slot);
+			}
+			return;
+		}
+		if (indexes[slot] == EMPTY) {
+			indexes[slot] = index;
+			values[slot] = value;
+			if (++numStored * 2 > indexes.length) {
+				resize();
+			}
+			return;
+		}
+		values[slot] = value;
+	}
+	
+	/**
+	 * Get number of elements stored: those not holding their own index
+	 * @return 
+	 */
+	public int getNumStored() {
+		return numStored;
+	}
+	
+	// Helper to empty a slot, shifting back any later entries of its probe sequence
+	// into the gap, so no entry is left unreachable
+	private void remove(int slot) {
+		int mask = indexes.length - 1;
+		int gap = slot;
+		for (int next = (gap + 1) & mask; indexes[next] != EMPTY; next = (next + 1) & mask) {
+			int home = hash(indexes[next]) & mask;
+			// Move the entry if its home slot is not between the gap and its slot (cyclically)
+			if (((next - home) & mask) >= ((next - gap) & mask)) {
+				indexes[gap] = indexes[next];
+				values[gap] = values[next];
+				gap = next;
+			}
+		}
+		indexes[gap] = EMPTY;
+		numStored--;
+	}
+	
+	// Helper to double the table, re-inserting every entry
+	private void resize() {
+		int[] oldIndexes = indexes;
+		int[] oldValues = values;
+		indexes = new int[oldIndexes.length * 2];
+		values = new int[oldValues.length * 2];
+		Arrays.fill(indexes, EMPTY);
+		int mask = indexes.length - 1;
+		for (int oldSlot = 0; oldSlot < oldIndexes.length; oldSlot++) {
+			if (oldIndexes[oldSlot] != EMPTY) {
+				int slot = hash(oldIndexes[oldSlot]) & mask;
+				while (indexes[slot] != EMPTY) {
+					slot = (slot + 1) & mask;
+				}
+				indexes[slot] = oldIndexes[oldSlot];
+				values[slot] = oldValues[oldSlot];
+			}
+		}
+	}
+	
+	// Helper to spread the bits of an index, so runs of nearby indexes do not cluster
+	private static int hash(int index) {
+		int hash = index * 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+}
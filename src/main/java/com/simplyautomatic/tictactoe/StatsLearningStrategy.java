@@ -0,0 +1,112 @@
+package com.simplyautomatic.tictactoe;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Learning A.I. from game results: plays the move leading to the position with the
+ * best score in past games (see {@link PositionStats#getScore()}), choosing at
+ * random between equal scores, so unplayed moves are tried before moves which have
+ * only lost. Moves leading to a board state recorded as a losing move are never
+ * played, as in {@link RandomLearningStrategy}. The results of every move are read
+ * in one batched lookup.
+ * <p>
+ * On large boards, only a random sample of moves is considered, so each move has a
+ * bounded number of keys to build and look up.
+ */
+public class StatsLearningStrategy implements MoveStrategy {
+	public static final int MAX_CANDIDATES = 256;
+	private static final GameMetrics METRICS = GameMetrics.getInstance();
+
+	private final PositionStatsRepository positionStats;
+	private final BoardStateStore losingMoves;
+
+	/**
+	 * Construct a strategy, which learns from game results in specified repository
+	 * @param positionStats 
+	 */
+	public StatsLearningStrategy(PositionStatsRepository positionStats) {
+		this(positionStats, null);
+	}
+	
+	/**
+	 * Construct a strategy, which learns from game results in specified repository,
+	 * and avoids moves in specified store of losing moves
+	 * @param positionStats
+	 * @param losingMoves store of losing board states, or null not to avoid them
+	 */
+	public StatsLearningStrategy(PositionStatsRepository positionStats, BoardStateStore losingMoves) {
+		this.positionStats = positionStats;
+		this.losingMoves = losingMoves;
+	}
+	
+	/**
+	 * Choose the move with the best results for specified player, placing each
+	 * candidate token on the board and then removing it, so the board is not copied.
+	 * Known losing moves are skipped. If the deadline passes, only the moves
+	 * considered so far are scored; if the thread is interrupted, a random move is
+	 * played without looking up any results.
+	 * @param board
+	 * @param token
+	 * @param deadlineNanos
+	 * @return best move, or null if board is full, or conceding, as every move is a known losing move
+	 */
+	@Override
+	public Point selectMove(GameBoard board, Token token, long deadlineNanos) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int[] candidateCells = board.getFreeCells();
+		List<byte[]> candidateKeys = new ArrayList<>(Math.min(candidateCells.length, MAX_CANDIDATES));
+		int firstCell = -1;
+		for (int index = 0; index < candidateCells.length && candidateKeys.size() < MAX_CANDIDATES; index++) {
+			// Choose a random untried cell (a Fisher-Yates shuffle, one step at a time)
+			int swapIndex = index + random.nextInt(candidateCells.length - index);
+			int cell = candidateCells[swapIndex];
+			candidateCells[swapIndex] = candidateCells[index];
+			if (firstCell < 0) {
+				firstCell = cell;
+			}
+
+			// Find the key of the position after this move, unless it is a known losing move
+			int row = cell / board.getNumColumns() + 1;
+			int column = cell % board.getNumColumns() + 1;
+			board.placeToken(token, row, column);
+			try {
+				if (losingMoves != null && losingMoves.contains(board.getCanonicalKey())) {
+					METRICS.recordLosingMoveRejected();
+				} else {
+					// Keep candidate cells in the same order as their keys
+					candidateCells[candidateKeys.size()] = cell;
+					candidateKeys.add(board.getCanonicalKey(token));
+				}
+			} finally {
+				board.removeToken(row, column);
+			}
+			if (System.nanoTime() - deadlineNanos >= 0 || Thread.currentThread().isInterrupted()) {
+				// Out of time: score the moves found so far, or else play the first move tried
+				if (candidateKeys.isEmpty()) {
+					return new Point(firstCell / board.getNumColumns() + 1, firstCell % board.getNumColumns() + 1);
+				}
+				break;
+			}
+		}
+		if (candidateKeys.isEmpty()) {
+			return null;
+		}
+		if (Thread.currentThread().isInterrupted()) {
+			return new Point(candidateCells[0] / board.getNumColumns() + 1, candidateCells[0] % board.getNumColumns() + 1);
+		}
+
+		// Choose the best-scoring move, breaking ties at random (the candidates are shuffled)
+		PositionStats[] stats = positionStats.getStats(candidateKeys);
+		int bestIndex = 0;
+		for (int index = 1; index < stats.length; index++) {
+			if (stats[index].getScore() > stats[bestIndex].getScore()) {
+				bestIndex = index;
+			}
+		}
+		int bestCell = candidateCells[bestIndex];
+		return new Point(bestCell / board.getNumColumns() + 1, bestCell % board.getNumColumns() + 1);
+	}
+}
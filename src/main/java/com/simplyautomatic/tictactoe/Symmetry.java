@@ -0,0 +1,151 @@
+package com.simplyautomatic.tictactoe;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Symmetries of a square board: the 8 rotations, mirrors and transposes that map
+ * a board onto an equivalent one, optionally combined with a token-swap (switching
+ * X and O), for 16 symmetries in total. Symmetries are numbered 0-15: the low 3 bits
+ * select the transform, and values of 8 and up also swap tokens. Symmetry 0 is the
+ * identity. Cells are 0-indexed in row-major order.
+ * <p>
+ * Rectangular boards have only 4 of the transforms: identity, rotation by 180
+ * degrees, mirror and flip.
+ * <p>
+ * For speed, the cell mapping of every transform is precomputed, once per board
+ * shape, as a permutation table (see {@link #getPermutations(int, int)}), so
+ * transforming a board is a single pass of array lookups.
+ */
+public final class Symmetry {
+	public static final int NUM_TRANSFORMS = 8;
+	public static final int NUM_SYMMETRIES = 2 * NUM_TRANSFORMS;
+	public static final int IDENTITY = 0;
+	
+	private static final Map<Long, int[][]> PERMUTATIONS = new ConcurrentHashMap<>();
+
+	private Symmetry() {
+	}
+	
+	/**
+	 * Get the permutation tables of all transforms for a board of specified shape,
+	 * indexed by transform: element [transform][cell] is the cell of the original 
+	 * board that appears at that cell of the transformed board (see 
+	 * {@link #getSourceCell(int, int, int, int)}). Tables of transforms which are not
+	 * valid for the shape are null. Tables are built on first use and shared, so 
+	 * must not be modified.
+	 * @param numRows
+	 * @param numColumns
+	 * @return 
+	 */
+	public static int[][] getPermutations(int numRows, int numColumns) {
+		return PERMUTATIONS.computeIfAbsent(((long) numRows << 32) | numColumns,
+				shape -> createPermutations(numRows, numColumns));
+	}
+	
+	// Helper to build the permutation tables for a board shape
+	private static int[][] createPermutations(int numRows, int numColumns) {
+		int[][] permutations = new int[NUM_TRANSFORMS][];
+		for (int transform = 0; transform < NUM_TRANSFORMS; transform++) {
+			if (!isValid(transform, numRows, numColumns)) {
+				continue;
+			}
+			permutations[transform] = new int[numRows * numColumns];
+			for (int cell = 0; cell < numRows * numColumns; cell++) {
+				permutations[transform][cell] = getSourceCell(transform, cell, numRows, numColumns);
+			}
+		}
+		return permutations;
+	}
+	
+	/**
+	 * Get the transform (0-7) applied by a symmetry.
+	 * @param symmetry
+	 * @return 
+	 */
+	public static int getTransform(int symmetry) {
+		return symmetry & (NUM_TRANSFORMS - 1);
+	}
+	
+	/**
+	 * Determine whether a symmetry swaps X and O.
+	 * @param symmetry
+	 * @return 
+	 */
+	public static boolean isTokenSwap(int symmetry) {
+		return symmetry >= NUM_TRANSFORMS;
+	}
+	
+	/**
+	 * Get the transform which undoes specified transform.
+	 * @param transform
+	 * @return 
+	 */
+	public static int getInverse(int transform) {
+		return transform == 1 ? 3 : transform == 3 ? 1 : transform;
+	}
+	
+	/**
+	 * Determine whether a transform maps a board of specified shape onto itself:
+	 * all transforms do for square boards, but only 0, 2, 4 and 5 for rectangular.
+	 * @param transform
+	 * @param numRows
+	 * @param numColumns
+	 * @return 
+	 */
+	public static boolean isValid(int transform, int numRows, int numColumns) {
+		return numRows == numColumns || transform == 0 || transform == 2 || transform == 4 || transform == 5;
+	}
+	
+	/**
+	 * Get the cell of the original board that appears at specified cell of the
+	 * transformed board. Transforms are: 0 identity, 1-3 rotations 90/180/270 degrees
+	 * clockwise, 4 mirror horizontally, 5 flip vertically, 6 transpose over main
+	 * diagonal, 7 transpose over antidiagonal.
+	 * @param transform
+	 * @param cell cell of transformed board
+	 * @param size board width/height
+	 * @return cell of original board
+	 */
+	public static int getSourceCell(int transform, int cell, int size) {
+		int row = cell / size;
+		int column = cell % size;
+		int last = size - 1;
+		switch (transform) {
+			case 0: return cell;
+			case 1: return (last - column) * size + row;
+			case 2: return (last - row) * size + (last - column);
+			case 3: return column * size + (last - row);
+			case 4: return row * size + (last - column);
+			case 5: return (last - row) * size + column;
+			case 6: return column * size + row;
+			case 7: return (last - column) * size + (last - row);
+			default: throw new IllegalArgumentException("Invalid transform: " + transform);
+		}
+	}
+	
+	/**
+	 * Get the cell of the original board that appears at specified cell of the
+	 * transformed board, for a board of any shape (see {@link #isValid(int, int, int)}).
+	 * @param transform
+	 * @param cell cell of transformed board
+	 * @param numRows
+	 * @param numColumns
+	 * @return cell of original board
+	 * @throws IllegalArgumentException if transform is not valid for board shape
+	 */
+	public static int getSourceCell(int transform, int cell, int numRows, int numColumns) throws IllegalArgumentException {
+		if (numRows == numColumns) {
+			return getSourceCell(transform, cell, numRows);
+		}
+		int row = cell / numColumns;
+		int column = cell % numColumns;
+		switch (transform) {
+			case 0: return cell;
+			case 2: return (numRows - 1 - row) * numColumns + (numColumns - 1 - column);
+			case 4: return row * numColumns + (numColumns - 1 - column);
+			case 5: return (numRows - 1 - row) * numColumns + column;
+			default: throw new IllegalArgumentException("Invalid transform for rectangular board: " + transform);
+		}
+	}
+}
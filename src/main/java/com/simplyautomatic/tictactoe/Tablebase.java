@@ -0,0 +1,146 @@
+package com.simplyautomatic.tictactoe;
+
+import java.awt.Point;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A precomputed table of the value and best move of every position reachable in
+ * games on one board shape, read from a memory-mapped file (see
+ * {@link TablebaseGenerator}), so lookups use no heap memory, and no allocation.
+ * <p>
+ * Positions are keyed by the canonical board as seen by the player to move (see
+ * {@link GameBoard#getCanonicalSymmetry(Token)}), packed in base 3 (see
+ * {@link BoardEncoding#pack(GameBoard, int)}), plus 1, so 0 marks an empty slot.
+ * The file is an open-addressing hash table: a header, then an array of keys
+ * (8 bytes each), then an array of entries (2 bytes each: score, as in
+ * {@link NegamaxSolver}, and best move, as a cell of the canonical board).
+ */
+public class Tablebase {
+	static final int MAGIC = 0x54545442;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 32;
+	static final int KEY_SIZE = 8;
+	static final int ENTRY_SIZE = 2;
+	public static final int NOT_FOUND = Integer.MIN_VALUE;
+
+	private final MappedByteBuffer buffer;
+	private final int numRows;
+	private final int numColumns;
+	private final int winLength;
+	private final int tableBits;
+	private final long count;
+	private final int entriesOffset;
+
+	// Map a tablebase from an open file
+	private Tablebase(MappedByteBuffer buffer) throws IOException {
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+			throw new IOException("Not a tablebase");
+		}
+		this.buffer = buffer;
+		this.numRows = buffer.get(8) & 0xFF;
+		this.numColumns = buffer.get(9) & 0xFF;
+		this.winLength = buffer.get(10) & 0xFF;
+		this.tableBits = buffer.get(11);
+		this.count = buffer.getLong(16);
+		this.entriesOffset = HEADER_SIZE + (KEY_SIZE << tableBits);
+		if (buffer.capacity() != entriesOffset + (ENTRY_SIZE << tableBits)) {
+			throw new IOException("Tablebase is truncated");
+		}
+	}
+	
+	/**
+	 * Open and map a tablebase file. The file is closed once mapped.
+	 * @param file
+	 * @return
+	 * @throws IOException if file cannot be read, or is not a valid tablebase
+	 */
+	public static Tablebase open(File file) throws IOException {
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+			FileChannel channel = randomAccessFile.getChannel();
+			return new Tablebase(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+	
+	/**
+	 * Get the name of the tablebase file for a board shape.
+	 * @param numRows
+	 * @param numColumns
+	 * @param winLength
+	 * @return 
+	 */
+	public static String getFilename(int numRows, int numColumns, int winLength) {
+		return "tablebase-" + numRows + "x" + numColumns + "-" + winLength + ".tb";
+	}
+	
+	/**
+	 * Determine whether this tablebase is for the shape of specified board.
+	 * @param board
+	 * @return 
+	 */
+	public boolean isFor(GameBoard board) {
+		return board.getNumRows() == numRows && board.getNumColumns() == numColumns && board.getWinLength() == winLength;
+	}
+	
+	/**
+	 * Get number of positions in tablebase.
+	 * @return 
+	 */
+	public long size() {
+		return count;
+	}
+	
+	/**
+	 * Get the score of a position for the player to move, with perfect play by both
+	 * players (see {@link NegamaxSolver}).
+	 * @param board
+	 * @param token player to move
+	 * @return score, or {@link #NOT_FOUND} if position is not in tablebase
+	 */
+	public int getScore(GameBoard board, Token token) {
+		int slot = findSlot(board, board.getCanonicalSymmetry(token));
+		return slot < 0 ? NOT_FOUND : buffer.get(entriesOffset + slot * ENTRY_SIZE);
+	}
+	
+	/**
+	 * Get the best move in a position.
+	 * @param board
+	 * @param token player to move
+	 * @return best move, or null if position is not in tablebase
+	 */
+	public Point getBestMove(GameBoard board, Token token) {
+		int symmetry = board.getCanonicalSymmetry(token);
+		int slot = findSlot(board, symmetry);
+		if (slot < 0) {
+			return null;
+		}
+		int canonicalCell = buffer.get(entriesOffset + slot * ENTRY_SIZE + 1) & 0xFF;
+		int cell = Symmetry.getSourceCell(Symmetry.getTransform(symmetry), canonicalCell, numRows, numColumns);
+		return new Point(cell / numColumns + 1, cell % numColumns + 1);
+	}
+	
+	// Helper to find the slot of a position, transformed by specified symmetry, or -1 if not found
+	private int findSlot(GameBoard board, int symmetry) {
+		if (!isFor(board)) {
+			return -1;
+		}
+		long key = BoardEncoding.pack(board, symmetry) + 1;
+		int mask = (1 << tableBits) - 1;
+		for (int slot = getSlot(key, tableBits); ; slot = (slot + 1) & mask) {
+			long slotKey = buffer.getLong(HEADER_SIZE + slot * KEY_SIZE);
+			if (slotKey == key) {
+				return slot;
+			} else if (slotKey == 0) {
+				return -1;
+			}
+		}
+	}
+	
+	// Get the first slot to probe for a key, in a table of 2^tableBits slots
+	static int getSlot(long key, int tableBits) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> (Long.SIZE - tableBits));
+	}
+}
@@ -0,0 +1,178 @@
+package com.simplyautomatic.tictactoe;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Generator of {@link Tablebase} files. Enumerates every position reachable from
+ * the empty board, finding its exact value and best move by a full minimax search,
+ * with each canonical position searched once. Feasible for boards of up to 4x4.
+ */
+public class TablebaseGenerator {
+	private static final int INITIAL_TABLE_BITS = 10;
+	private static final double MAX_LOAD_FACTOR = 0.5;
+
+	private final int numRows;
+	private final int numColumns;
+	private final int winLength;
+
+	// Open-addressing table of positions found so far
+	private int tableBits;
+	private long[] keys;
+	private byte[] scores;
+	private byte[] moves;
+	private int count;
+
+	/**
+	 * Construct a generator for specified board shape
+	 * @param numRows
+	 * @param numColumns
+	 * @param winLength number of tokens in a row needed to win
+	 * @throws IllegalArgumentException if board has too many cells
+	 */
+	public TablebaseGenerator(int numRows, int numColumns, int winLength) throws IllegalArgumentException {
+		if (numRows * numColumns > BoardEncoding.MAX_PACKED_CELLS) {
+			throw new IllegalArgumentException("Board too large for tablebase: " + numRows + "x" + numColumns);
+		}
+		this.numRows = numRows;
+		this.numColumns = numColumns;
+		this.winLength = winLength;
+	}
+	
+	/**
+	 * Generate the tablebase, and write it to specified file
+	 * @param file
+	 * @return number of positions written
+	 * @throws IOException 
+	 */
+	public int generate(File file) throws IOException {
+		tableBits = INITIAL_TABLE_BITS;
+		keys = new long[1 << tableBits];
+		scores = new byte[1 << tableBits];
+		moves = new byte[1 << tableBits];
+		count = 0;
+		solve(new GameBoard(numRows, numColumns, winLength), Token.X);
+		write(file);
+		return count;
+	}
+	
+	// Helper to find the score of a position for the player to move, storing it, and the best move
+	private int solve(GameBoard board, Token token) {
+		int emptyCells = numRows * numColumns - board.getNumMoves();
+		if (board.isWon()) {
+			return -(emptyCells + 1);
+		} else if (emptyCells == 0) {
+			return 0;
+		}
+		int symmetry = board.getCanonicalSymmetry(token);
+		long key = BoardEncoding.pack(board, symmetry) + 1;
+		int slot = findSlot(key);
+		if (keys[slot] == key) {
+			return scores[slot];
+		}
+
+		// Search every move
+		int bestScore = -Integer.MAX_VALUE;
+		int bestCell = -1;
+		for (int cell = 0; cell < numRows * numColumns; cell++) {
+			int row = cell / numColumns + 1;
+			int column = cell % numColumns + 1;
+			if (board.getTokenAt(row, column) != null) {
+				continue;
+			}
+			board.placeToken(token, row, column);
+			int score = -solve(board, token.getOpponent());
+			board.removeToken(row, column);
+			if (score > bestScore) {
+				bestScore = score;
+				bestCell = cell;
+			}
+		}
+
+		// Store result, with best move mapped onto canonical board
+		int transform = Symmetry.getTransform(symmetry);
+		int canonicalCell = Symmetry.getSourceCell(Symmetry.getInverse(transform), bestCell, numRows, numColumns);
+		add(key, bestScore, canonicalCell);
+		return bestScore;
+	}
+	
+	// Helper to find the slot holding a key, or the empty slot where it belongs
+	private int findSlot(long key) {
+		int mask = (1 << tableBits) - 1;
+		int slot = Tablebase.getSlot(key, tableBits);
+		while (keys[slot] != 0 && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+	
+	// Helper to add a position to the table, doubling the table if it becomes too full
+	private void add(long key, int score, int canonicalCell) {
+		if (count + 1 > MAX_LOAD_FACTOR * keys.length) {
+			long[] oldKeys = keys;
+			byte[] oldScores = scores;
+			byte[] oldMoves = moves;
+			tableBits++;
+			keys = new long[1 << tableBits];
+			scores = new byte[1 << tableBits];
+			moves = new byte[1 << tableBits];
+			for (int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++) {
+				if (oldKeys[oldSlot] != 0) {
+					int slot = findSlot(oldKeys[oldSlot]);
+					keys[slot] = oldKeys[oldSlot];
+					scores[slot] = oldScores[oldSlot];
+					moves[slot] = oldMoves[oldSlot];
+				}
+			}
+		}
+		int slot = findSlot(key);
+		keys[slot] = key;
+		scores[slot] = (byte) score;
+		moves[slot] = (byte) canonicalCell;
+		count++;
+	}
+	
+	// Helper to write the table to a file
+	private void write(File file) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(Tablebase.MAGIC);
+			out.writeInt(Tablebase.VERSION);
+			out.writeByte(numRows);
+			out.writeByte(numColumns);
+			out.writeByte(winLength);
+			out.writeByte(tableBits);
+			out.writeInt(0);
+			out.writeLong(count);
+			out.writeLong(0);
+			for (long key : keys) {
+				out.writeLong(key);
+			}
+			for (int slot = 0; slot < keys.length; slot++) {
+				out.writeByte(scores[slot]);
+				out.writeByte(moves[slot]);
+			}
+		}
+	}
+	
+	/**
+	 * Main method: generate a tablebase, in the current directory
+	 * @param args board size, or rows and columns, and number in a row to win (defaults 3, 3, 3)
+	 * @throws IOException 
+	 */
+	public static void main(String[] args) throws IOException {
+		int numRows = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+		int numColumns = args.length > 1 ? Integer.parseInt(args[1]) : numRows;
+		int winLength = args.length > 2 ? Integer.parseInt(args[2]) : Math.min(numRows, numColumns);
+		File file = new File(Tablebase.getFilename(numRows, numColumns, winLength));
+		long startNanos = System.nanoTime();
+		int count = new TablebaseGenerator(numRows, numColumns, winLength).generate(file);
+		System.out.println("Wrote " + count + " positions to " + file + " (" + file.length() + " bytes) in "
+				+ (System.nanoTime() - startNanos) / 1000000 + " ms");
+		Tablebase tablebase = Tablebase.open(file);
+		GameBoard board = new GameBoard(numRows, numColumns, winLength);
+		System.out.println("empty board: score " + tablebase.getScore(board, Token.X) + ", best move " + tablebase.getBestMove(board, Token.X));
+	}
+}
@@ -0,0 +1,67 @@
+package com.simplyautomatic.tictactoe;
+
+import java.awt.Point;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Strategy which plays the best move from a precomputed {@link Tablebase}, for
+ * boards which have one, and uses another strategy otherwise. Tablebase files are
+ * looked for in a directory, by name (see {@link Tablebase#getFilename(int, int, int)}),
+ * and mapped the first time a board of their shape is played.
+ */
+public class TablebaseStrategy implements MoveStrategy {
+	private final File directory;
+	private final MoveStrategy otherStrategy;
+	private final Map<String, Optional<Tablebase>> tablebases = new ConcurrentHashMap<>();
+
+	/**
+	 * Construct a strategy
+	 * @param directory directory holding tablebase files
+	 * @param otherStrategy strategy for positions not in a tablebase
+	 */
+	public TablebaseStrategy(File directory, MoveStrategy otherStrategy) {
+		this.directory = directory;
+		this.otherStrategy = otherStrategy;
+	}
+	
+	/**
+	 * Choose the best move from the tablebase, if the position is in one, otherwise
+	 * choose using the other strategy
+	 * @param board
+	 * @param token
+	 * @param deadlineNanos
+	 * @return 
+	 */
+	@Override
+	public Point selectMove(GameBoard board, Token token, long deadlineNanos) {
+		Optional<Tablebase> tablebase = getTablebase(board);
+		if (tablebase.isPresent()) {
+			Point move = tablebase.get().getBestMove(board, token);
+			if (move != null) {
+				return move;
+			}
+		}
+		return otherStrategy.selectMove(board, token, deadlineNanos);
+	}
+	
+	// Helper to get the tablebase for a board's shape, opening it the first time, if it exists
+	private Optional<Tablebase> getTablebase(GameBoard board) {
+		String filename = Tablebase.getFilename(board.getNumRows(), board.getNumColumns(), board.getWinLength());
+		return tablebases.computeIfAbsent(filename, name -> {
+			File file = new File(directory, name);
+			if (!file.isFile()) {
+				return Optional.empty();
+			}
+			try {
+				return Optional.of(Tablebase.open(file));
+			} catch (IOException e) {
+				e.printStackTrace();
+				return Optional.empty();
+			}
+		});
+	}
+}
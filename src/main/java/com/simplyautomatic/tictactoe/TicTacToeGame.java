@@ -1,28 +1,24 @@
 package com.simplyautomatic.tictactoe;
 
-import java.awt.Point;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
-import java.util.List;
 import java.util.Scanner;
 
 /**
- * Main class for tic-tac-toe game.
+ * Main class for tic-tac-toe game. A game constructed without a move strategy
+ * creates its own, whose search threads are shut down when the game is closed.
  */
-public class TicTacToeGame {
+public class TicTacToeGame implements AutoCloseable {
 	// I/O:
 	private final InputStream in;
 	private final PrintStream out;
 	private final Scanner scanner;
 	
 	// Game state:
-	private GameBoard board;
-	private Token playerToken;
-	private Token cpuToken;
-	private Token currentTurnToken;
-	
-	// AI:
-	private final BoardStateRepository losingMoves;
+	private final GameSession session;
+	private final LazySmpStrategy ownedSearch;
 
 	/**
 	 * Construct a new tic-tac-toe game
@@ -30,205 +26,142 @@ public class TicTacToeGame {
 	 * @param outStream output stream to print results and errors from commands
 	 */
 	public TicTacToeGame(InputStream inStream, PrintStream outStream) {
-		in = inStream;
-		out = outStream;
-		scanner = new Scanner(in);
-		losingMoves = new BoardStateRepository();
+		this(inStream, outStream, new CachedBoardStateRepository(new BoardStateRepository()), new PositionStatsRepository());
 	}
 	
 	/**
-	 * Start the main game loop
+	 * Construct a new tic-tac-toe game, remembering losing moves in specified store
+	 * @param inStream input stream to use for user input of commands
+	 * @param outStream output stream to print results and errors from commands
+	 * @param losingMoveStore store of losing board states
 	 */
-	public void start() {
-		out.println("Welcome to tic-tac-toe. Shall we play a game?");
-		
-		while (true) {
-		
-			// Get board size, create board
-			out.println("Enter desired board size.");
-			int boardSize = 0;
-			while (true) {
-				String input = scanner.nextLine();
-				if (input != null && input.trim().matches("\\d+")) {
-					boardSize = Integer.parseInt(input.trim());
-				}
-				if (boardSize > 2) {
-					break;
-				} else {
-					out.println("Please enter a valid number, larger than 2.");
-				}
-			}
-			board = new GameBoard(boardSize);
-			GameBoard lastMoveBoard = new GameBoard(board);
-
-			// Get token preference
-			out.println("Would you like to play as X or O? (X goes first)");
-			while (true) {
-				String input = scanner.nextLine();
-				if (input != null && input.equalsIgnoreCase("X")) {
-					playerToken = Token.X;
-					cpuToken = Token.O;
-					break;
-				} else if (input != null && input.equalsIgnoreCase("O")) {
-					playerToken = Token.O;
-					cpuToken = Token.X;
-					break;
-				} else {
-					out.println("Please enter X or O.");
-				}
-			}
-			currentTurnToken = Token.X;
-
-			// Display initial empty board
-			out.println("Let's play!");
-			out.println(board.toString());
-			
-			// Main game loop
-			while(true) {
-				// Get move from player or CPU
-				Point move;
-				if (currentTurnToken == playerToken) {
-					move = getPlayerMove();
-				} else {
-					move = getCpuMove();
-				}
-				
-				// If CPU conceded, tell player
-				if (move == null) {
-					out.println("I concede! The only winning move is not to play.");
-					break;
-				}
-
-				// Place token, display board
-				board.placeToken(currentTurnToken, (int)move.getX(), (int)move.getY());
-				out.println(board.toString());
-				
-				// If CPU move, remember board state, in case this is a losing move
-				if (currentTurnToken == cpuToken) {
-					lastMoveBoard = new GameBoard(board);
-				}
-
-				// Check for win/draw
-				if (board.isWon()) {
-					Token winningToken = board.getWinningToken();
-					if (winningToken == playerToken) {
-						out.println("You won! Congratulations!");
-						// If player won, save last board state (the CPU's losing move)
-						recordLosingMove(lastMoveBoard);
-					} else {
-						out.println("You lost! How about a nice game of chess?");
-					}
-					break;
-				} else if (board.isDrawn()) {
-					out.println("The game is a draw. Good game!");
-					break;
-				}
-
-				// Pass turn
-				if (currentTurnToken == playerToken) {
-					currentTurnToken = cpuToken;
-				} else {
-					currentTurnToken = playerToken;
-				}
-			}
-			
-			out.println("Would you like to play again?");
-			String input = scanner.nextLine();
-			if (input == null || !input.trim().matches("[yY].*")) {
-				return;
-			}
-		}
+	public TicTacToeGame(InputStream inStream, PrintStream outStream, BoardStateStore losingMoveStore) {
+		this(inStream, outStream, losingMoveStore, null, new LazySmpStrategy());
 	}
 	
 	/**
-	 * Get the player's move, ensuring it is a valid move
-	 * @return 
+	 * Construct a new tic-tac-toe game, remembering losing moves in specified store,
+	 * and the results of games in specified repository, to choose moves on large boards
+	 * @param inStream input stream to use for user input of commands
+	 * @param outStream output stream to print results and errors from commands
+	 * @param losingMoveStore store of losing board states
+	 * @param positionStats repository of results by position
 	 */
-	private Point getPlayerMove() {
-		out.println("Where would you like to place your " + playerToken + "? Enter coordinates like 1, 1.");
-		while (true) {
-			String input = scanner.nextLine();
-			// Parse entered coordinates
-			String[] coordinates = input.split(",");
-			if (coordinates == null || coordinates.length != 2
-					|| !coordinates[0].trim().matches("\\d+") || !coordinates[1].trim().matches("\\d+")) {
-				out.println("Please enter coordinates like 1, 1.");
-				continue;
-			}
-			int row = Integer.parseInt(coordinates[0].trim());
-			int column = Integer.parseInt(coordinates[1].trim());
-			
-			// Validate coordinates
-			if (row <= 0 || row > board.getBoardSize()
-					|| column <= 0 || column > board.getBoardSize()) {
-				out.println("Please enter coordinates between 1 and " + board.getBoardSize() + ".");
-				continue;
-			}
-			if (board.getTokenAt(row, column) != null) {
-				out.println("Please enter coordinates of an empty position.");
-				continue;
-			}
-			return new Point(row, column);
-		}
+	public TicTacToeGame(InputStream inStream, PrintStream outStream, BoardStateStore losingMoveStore,
+			PositionStatsRepository positionStats) {
+		this(inStream, outStream, losingMoveStore, positionStats, new LazySmpStrategy());
+	}
+	
+	// Constructor for a game with the default strategy, using, and closing, specified search
+	private TicTacToeGame(InputStream inStream, PrintStream outStream, BoardStateStore losingMoveStore,
+			PositionStatsRepository positionStats, LazySmpStrategy search) {
+		this(inStream, outStream, losingMoveStore, positionStats, null,
+				GameSession.createDefaultStrategy(losingMoveStore, positionStats, new NegamaxSolver(), search, null),
+				GameSession.DEFAULT_MOVE_MILLIS, search);
+	}
+	
+	/**
+	 * Construct a new tic-tac-toe game, remembering losing moves in specified store,
+	 * with the computer's moves chosen by specified strategy
+	 * @param inStream input stream to use for user input of commands
+	 * @param outStream output stream to print results and errors from commands
+	 * @param losingMoveStore store of losing board states
+	 * @param cpuStrategy strategy to choose the computer's moves
+	 * @param moveMillis time allowed for each of the computer's moves
+	 */
+	public TicTacToeGame(InputStream inStream, PrintStream outStream, BoardStateStore losingMoveStore, MoveStrategy cpuStrategy, long moveMillis) {
+		this(inStream, outStream, losingMoveStore, null, cpuStrategy, moveMillis);
 	}
 	
 	/**
-	 * Get the computer's move, random, but valid
-	 * @return valid move, or null if conceding
+	 * Construct a new tic-tac-toe game, remembering losing moves in specified store,
+	 * and the results of games in specified repository, with the computer's moves
+	 * chosen by specified strategy
+	 * @param inStream input stream to use for user input of commands
+	 * @param outStream output stream to print results and errors from commands
+	 * @param losingMoveStore store of losing board states
+	 * @param positionStats repository of results by position, or null not to record results
+	 * @param cpuStrategy strategy to choose the computer's moves
+	 * @param moveMillis time allowed for each of the computer's moves
 	 */
-	private Point getCpuMove() {
-		int moveAttempts = 0;
-		while (true) {
-			// If cannot find a valid, non-losing move, then concede
-			if (++moveAttempts > 10 * board.getBoardSize() * board.getBoardSize()) {
-				return null;
-			}
-			
-			// Choose a random (valid) move
-			int row = (int) Math.floor(Math.random() * board.getBoardSize()) + 1;
-			int column = (int) Math.floor(Math.random() * board.getBoardSize()) + 1;
-			if (board.getTokenAt(row, column) != null) {
-				continue;
-			}
-			
-			// Check to see if this move is a losing move, that was previously recorded
-			GameBoard proposedGameState = new GameBoard(board);
-			proposedGameState.placeToken(cpuToken, row, column);
-			if (isLosingMove(proposedGameState)) {
-				//System.out.println("Avoiding losing move:\n" + proposedGameState.toString());
-				continue;
-			}
-			
-			out.println("The computer places a token:");
-			return new Point(row, column);
-		}
+	public TicTacToeGame(InputStream inStream, PrintStream outStream, BoardStateStore losingMoveStore,
+			PositionStatsRepository positionStats, MoveStrategy cpuStrategy, long moveMillis) {
+		this(inStream, outStream, losingMoveStore, positionStats, null, cpuStrategy, moveMillis);
+	}
+	
+	/**
+	 * Construct a new tic-tac-toe game, remembering losing moves in specified store,
+	 * the results of games in specified repository, and the moves of games in
+	 * specified journal, with the computer's moves chosen by specified strategy
+	 * @param inStream input stream to use for user input of commands
+	 * @param outStream output stream to print results and errors from commands
+	 * @param losingMoveStore store of losing board states
+	 * @param positionStats repository of results by position, or null not to record results
+	 * @param journal journal to append each finished game to, or null not to journal games
+	 * @param cpuStrategy strategy to choose the computer's moves
+	 * @param moveMillis time allowed for each of the computer's moves
+	 */
+	public TicTacToeGame(InputStream inStream, PrintStream outStream, BoardStateStore losingMoveStore,
+			PositionStatsRepository positionStats, GameJournal journal, MoveStrategy cpuStrategy, long moveMillis) {
+		this(inStream, outStream, losingMoveStore, positionStats, journal, cpuStrategy, moveMillis, null);
+	}
+	
+	// Constructor for a game, closing specified search, if not null, when closed
+	private TicTacToeGame(InputStream inStream, PrintStream outStream, BoardStateStore losingMoveStore,
+			PositionStatsRepository positionStats, GameJournal journal, MoveStrategy cpuStrategy, long moveMillis,
+			LazySmpStrategy ownedSearch) {
+		in = inStream;
+		out = outStream;
+		scanner = new Scanner(in);
+		session = new GameSession(out, losingMoveStore, positionStats, journal, cpuStrategy, moveMillis);
+		this.ownedSearch = ownedSearch;
 	}
 	
 	/**
-	 * Record a board state as having lost, to avoid in the future.
-	 * @param board Board state with most-recent losing CPU move
+	 * Start the main game loop
 	 */
-	private void recordLosingMove(GameBoard board) {
-		//System.out.println("Recording losing move:\n" + board.toString());
-		losingMoves.add(board.getBoardString());
+	public void start() {
+		session.start();
+		while (!session.isFinished()) {
+			session.handleInput(scanner.nextLine());
+		}
 	}
 	
 	/**
-	 * Check whether a proposed board state was previously recorded as a losing move
-	 * @param board
-	 * @return 
+	 * Shut down the search threads of the game's own strategy, if it created one. The
+	 * store, repository and journal are not closed.
 	 */
-	private boolean isLosingMove(GameBoard board) {
-		List<String> equivalentBoards = board.getAllEquivalentBoardStrings();
-		return equivalentBoards.stream().anyMatch(equivalentBoard -> (losingMoves.contains(equivalentBoard)));
+	@Override
+	public void close() {
+		if (ownedSearch != null) {
+			ownedSearch.close();
+		}
 	}
 	
 	/**
-	 * Main method: create and start the game
-	 * @param args 
+	 * Main method: create and start the game, journaling every game played
+	 * @param args "mcts" to search with MCTS on large boards, optionally followed by time per move in ms
+	 * @throws IOException if journal cannot be opened
 	 */
-	public static void main(String[] args) {
-		TicTacToeGame game = new TicTacToeGame(System.in, System.out);
-		game.start();
+	public static void main(String[] args) throws IOException {
+		BoardStateStore losingMoves = new CachedBoardStateRepository(new BoardStateRepository());
+		PositionStatsRepository positionStats = new PositionStatsRepository();
+		MctsStrategy mcts = null;
+		long moveMillis = GameSession.DEFAULT_MOVE_MILLIS;
+		if (args.length > 0 && args[0].equalsIgnoreCase("mcts")) {
+			long searchMillis = args.length > 1 ? Long.parseLong(args[1]) : MctsStrategy.DEFAULT_MOVE_MILLIS;
+			mcts = new MctsStrategy(Runtime.getRuntime().availableProcessors(), searchMillis, Long.MAX_VALUE);
+			moveMillis = searchMillis + TimeoutMoveStrategy.DEFAULT_RESERVE_MILLIS;
+		}
+		LazySmpStrategy search = new LazySmpStrategy();
+		MoveStrategy cpuStrategy = GameSession.createDefaultStrategy(losingMoves, positionStats, new NegamaxSolver(), search, mcts);
+		try (GameJournal journal = new GameJournal(new File(GameJournal.DEFAULT_FILENAME))) {
+			new TicTacToeGame(System.in, System.out, losingMoves, positionStats, journal, cpuStrategy, moveMillis).start();
+		} finally {
+			search.close();
+			if (mcts != null) {
+				mcts.close();
+			}
+		}
 	}
 }
@@ -0,0 +1,206 @@
+package com.simplyautomatic.tictactoe;
+
+import java.awt.Point;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Strategy which guarantees a move by the deadline. Another strategy chooses the
+ * move, on a separate thread, with a deadline slightly earlier than the real one.
+ * If it has not returned by then (e.g. if it is stuck waiting for the database),
+ * or it fails, it is interrupted, and a cheap fallback strategy chooses the move
+ * instead. The fallback runs on the calling thread, so it must not wait for anything
+ * the strategy may be holding, such as a store (see {@link QuickMoveStrategy}).
+ * <p>
+ * Strategies run on a bounded pool of threads. A strategy which has timed out may
+ * keep its thread until it next checks its deadline, or for interruption; if every
+ * thread is busy, and the queue is full, the fallback strategy moves at once.
+ * Moves may also be chosen without waiting (see {@link #selectMoveAsync}), in which
+ * case a timer thread stops the strategy, and runs the fallback, at the deadline.
+ */
+public class TimeoutMoveStrategy implements MoveStrategy {
+	public static final long DEFAULT_RESERVE_MILLIS = 20;
+	private static final int MAX_THREADS = 2 * Runtime.getRuntime().availableProcessors();
+	private static final long IDLE_THREAD_SECONDS = 60;
+	private static final GameMetrics METRICS = GameMetrics.getInstance();
+
+	// Shared threads, to run strategies, which do not keep the JVM running, and stop when idle
+	private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS,
+			IDLE_THREAD_SECONDS, TimeUnit.SECONDS, new ArrayBlockingQueue<>(MAX_THREADS), runnable -> {
+				Thread thread = new Thread(runnable, "move-strategy");
+				thread.setDaemon(true);
+				return thread;
+			});
+	// Shared thread, to time out strategies choosing moves asynchronously
+	private static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, runnable -> {
+		Thread thread = new Thread(runnable, "move-timer");
+		thread.setDaemon(true);
+		return thread;
+	});
+	static {
+		EXECUTOR.allowCoreThreadTimeOut(true);
+		TIMER.setRemoveOnCancelPolicy(true);
+	}
+	
+	private final MoveStrategy strategy;
+	private final MoveStrategy fallbackStrategy;
+	private final long reserveNanos;
+
+	// Statistics:
+	private final LongAdder numMoves = new LongAdder();
+	private final LongAdder numFallbacks = new LongAdder();
+
+	/**
+	 * Construct a strategy, with default time reserved for the fallback strategy
+	 * @param strategy strategy to choose moves
+	 * @param fallbackStrategy strategy to choose moves on timeout, which must not block, and should return at once if deadline has passed
+	 */
+	public TimeoutMoveStrategy(MoveStrategy strategy, MoveStrategy fallbackStrategy) {
+		this(strategy, fallbackStrategy, DEFAULT_RESERVE_MILLIS);
+	}
+	
+	/**
+	 * Construct a strategy
+	 * @param strategy strategy to choose moves
+	 * @param fallbackStrategy strategy to choose moves on timeout, which must not block, and should return at once if deadline has passed
+	 * @param reserveMillis time before deadline to stop waiting for the strategy
+	 */
+	public TimeoutMoveStrategy(MoveStrategy strategy, MoveStrategy fallbackStrategy, long reserveMillis) {
+		this.strategy = strategy;
+		this.fallbackStrategy = fallbackStrategy;
+		this.reserveNanos = reserveMillis * 1000000;
+	}
+	
+	/**
+	 * Choose a move for specified player, using the fallback strategy if the
+	 * strategy does not return in time
+	 * @param board
+	 * @param token
+	 * @param deadlineNanos
+	 * @return 
+	 */
+	@Override
+	public Point selectMove(GameBoard board, Token token, long deadlineNanos) {
+		numMoves.increment();
+		// The strategy may outlive this call, so give it its own copy of the board
+		GameBoard strategyBoard = new GameBoard(board);
+		long strategyDeadlineNanos = deadlineNanos - reserveNanos;
+		Future<Point> move;
+		try {
+			move = EXECUTOR.submit(() -> strategy.selectMove(strategyBoard, token, strategyDeadlineNanos));
+		} catch (RejectedExecutionException e) {
+			// Every thread busy, and queue full
+			return selectFallbackMove(board, token, deadlineNanos);
+		}
+		try {
+			// Wait past the strategy's deadline by up to half the reserve, leaving the rest for the fallback
+			return move.get(Math.max(0, strategyDeadlineNanos + reserveNanos / 2 - System.nanoTime()), TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			move.cancel(true);
+		} catch (ExecutionException e) {
+			e.getCause().printStackTrace();
+		} catch (InterruptedException e) {
+			move.cancel(true);
+			Thread.currentThread().interrupt();
+		}
+		return selectFallbackMove(board, token, deadlineNanos);
+	}
+	
+	/**
+	 * Choose a move for specified player without waiting for it, using the fallback
+	 * strategy, on the timer thread, if the strategy does not return in time. Both
+	 * strategies are given copies of the board, so it may change once the move is
+	 * chosen.
+	 * @param board
+	 * @param token
+	 * @param deadlineNanos
+	 * @return future move, completed on the strategy's thread, or the timer thread
+	 */
+	@Override
+	public CompletableFuture<Point> selectMoveAsync(GameBoard board, Token token, long deadlineNanos) {
+		numMoves.increment();
+		CompletableFuture<Point> move = new CompletableFuture<>();
+		// Either strategy may outlive the move, once the board has moved on, so give each its own copy
+		GameBoard strategyBoard = new GameBoard(board);
+		GameBoard fallbackBoard = new GameBoard(board);
+		long strategyDeadlineNanos = deadlineNanos - reserveNanos;
+		Future<?> strategyMove;
+		try {
+			strategyMove = EXECUTOR.submit(() -> {
+				try {
+					move.complete(strategy.selectMove(strategyBoard, token, strategyDeadlineNanos));
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+					completeWithFallbackMove(move, fallbackBoard, token, deadlineNanos);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// Every thread busy, and queue full
+			completeWithFallbackMove(move, fallbackBoard, token, deadlineNanos);
+			return move;
+		}
+		// Give up on the strategy past its deadline by up to half the reserve, leaving the rest for the fallback
+		ScheduledFuture<?> timeout = TIMER.schedule(() -> {
+			if (!move.isDone()) {
+				strategyMove.cancel(true);
+				completeWithFallbackMove(move, fallbackBoard, token, deadlineNanos);
+			}
+		}, Math.max(0, strategyDeadlineNanos + reserveNanos / 2 - System.nanoTime()), TimeUnit.NANOSECONDS);
+		move.whenComplete((result, e) -> timeout.cancel(false));
+		return move;
+	}
+	
+	// Helper to complete a future move with the fallback strategy's move, counting it
+	// unless the strategy's move completed it first
+	private void completeWithFallbackMove(CompletableFuture<Point> move, GameBoard board, Token token, long deadlineNanos) {
+		try {
+			if (move.complete(fallbackStrategy.selectMove(board, token, deadlineNanos))) {
+				numFallbacks.increment();
+				METRICS.recordTimeoutFallback();
+			}
+		} catch (RuntimeException e) {
+			move.completeExceptionally(e);
+		}
+	}
+	
+	// Helper to choose a move with the fallback strategy, counting it
+	private Point selectFallbackMove(GameBoard board, Token token, long deadlineNanos) {
+		numFallbacks.increment();
+		METRICS.recordTimeoutFallback();
+		return fallbackStrategy.selectMove(board, token, deadlineNanos);
+	}
+	
+	/**
+	 * Get number of moves chosen
+	 * @return 
+	 */
+	public long getNumMoves() {
+		return numMoves.sum();
+	}
+	
+	/**
+	 * Get number of moves chosen by the fallback strategy, after a timeout or failure, or with every thread busy
+	 * @return 
+	 */
+	public long getNumFallbacks() {
+		return numFallbacks.sum();
+	}
+	
+	/**
+	 * Get a summary of statistics
+	 * @return 
+	 */
+	@Override
+	public String toString() {
+		return "moves=" + numMoves.sum() + ", fallbacks=" + numFallbacks.sum();
+	}
+}
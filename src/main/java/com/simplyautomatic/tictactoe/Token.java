@@ -25,6 +25,14 @@ public enum Token {
 		return value;
 	}
 	
+	/**
+	 * Get the token of the opposing player
+	 * @return 
+	 */
+	public Token getOpponent() {
+		return this == X ? O : X;
+	}
+	
 	/**
 	 * Get the token that matches specified value
 	 * @param value
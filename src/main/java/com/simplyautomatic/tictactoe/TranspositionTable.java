@@ -0,0 +1,193 @@
+package com.simplyautomatic.tictactoe;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size transposition table, shared without locks by many search threads (see
+ * {@link LazySmpStrategy}). Each entry is a position's 64-bit key and its data
+ * (score, bound, depth, best move, and the generation of the search which stored
+ * it) packed into a long, stored side by side in one long array, so both are read
+ * from the same cache line. Entries are read and written without synchronization, so
+ * one thread may read an entry half-written by another: to detect this, the key is
+ * stored XORed with the data, and an entry is only used if the data read XORs back
+ * to the key looked up. A torn entry is treated as missing, never as another
+ * position's result.
+ * <p>
+ * Each search starts a new generation. An entry is replaced only by a search of at
+ * least its depth, less one ply for each generation it is older than the current
+ * one: so one table may be shared by searches running at once, each of which starts
+ * its own generation, without them replacing each other's deep entries, while
+ * entries of past moves age and give way.
+ */
+public class TranspositionTable {
+	public static final int DEFAULT_TABLE_BITS = 20;
+
+	// Bounds: the score is exact, or at least or at most the true score
+	public static final int EXACT = 1;
+	public static final int LOWER_BOUND = 2;
+	public static final int UPPER_BOUND = 3;
+
+	// Layout of packed data: score in the low 32 bits, then bound, depth, generation and move + 1
+	private static final int BOUND_SHIFT = 32;
+	private static final int DEPTH_SHIFT = 34;
+	private static final int GENERATION_SHIFT = 42;
+	private static final int MOVE_SHIFT = 50;
+	private static final int DEPTH_MASK = 0xFF;
+	private static final int GENERATION_MASK = 0xFF;
+	public static final int MAX_MOVE = (1 << (Long.SIZE - MOVE_SHIFT)) - 2;
+
+	private final long[] entries;
+	private final int tableShift;
+	private volatile int generation;
+
+	/**
+	 * Construct a table, with the default number of entries.
+	 */
+	public TranspositionTable() {
+		this(DEFAULT_TABLE_BITS);
+	}
+	
+	/**
+	 * Construct a table, with 2^tableBits entries, of 16 bytes each.
+	 * @param tableBits 
+	 */
+	public TranspositionTable(int tableBits) {
+		this.entries = new long[2 << tableBits];
+		this.tableShift = Long.SIZE - tableBits;
+	}
+	
+	/**
+	 * Start a new generation, so entries stored by earlier searches may be replaced.
+	 * Should be called once per move searched, before searching.
+	 */
+	public synchronized void newGeneration() {
+		generation = (generation + 1) & GENERATION_MASK;
+	}
+	
+	/**
+	 * Remove every entry. Not safe while any search is using the table.
+	 */
+	public void clear() {
+		Arrays.fill(entries, 0);
+	}
+	
+	/**
+	 * Look up the entry for a position.
+	 * @param key Zobrist hash of the position
+	 * @return packed data, to read with the static getters, or 0 if none (or torn)
+	 */
+	public long probe(long key) {
+		int index = getIndex(key);
+		long data = entries[index + 1];
+		if ((entries[index] ^ data) != key) {
+			return 0;
+		}
+		return data;
+	}
+	
+	/**
+	 * Store the result of searching a position, unless its entry holds a deeper
+	 * search, once reduced by its age in generations.
+	 * @param key Zobrist hash of the position
+	 * @param score score for the player to move
+	 * @param bound {@link #EXACT}, {@link #LOWER_BOUND} or {@link #UPPER_BOUND}
+	 * @param depth depth searched, up to 255
+	 * @param move best move found, from 0 to {@link #MAX_MOVE}, or -1 if none
+	 */
+	public void store(long key, int score, int bound, int depth, int move) {
+		int index = getIndex(key);
+		int currentGeneration = generation;
+		long oldData = entries[index + 1];
+		if (oldData != 0) {
+			int age = (currentGeneration - getGeneration(oldData)) & GENERATION_MASK;
+			if (getDepth(oldData) - age > depth) {
+				return;
+			}
+		}
+		long data = (score & 0xFFFFFFFFL) | ((long) bound << BOUND_SHIFT) | ((long) Math.min(depth, DEPTH_MASK) << DEPTH_SHIFT)
+				| ((long) currentGeneration << GENERATION_SHIFT) | ((long) (move + 1) << MOVE_SHIFT);
+		entries[index] = key ^ data;
+		entries[index + 1] = data;
+	}
+	
+	/**
+	 * Get the score of an entry.
+	 * @param data packed data, from {@link #probe(long)}
+	 * @return 
+	 */
+	public static int getScore(long data) {
+		return (int) data;
+	}
+	
+	/**
+	 * Get the bound of an entry's score.
+	 * @param data packed data, from {@link #probe(long)}
+	 * @return {@link #EXACT}, {@link #LOWER_BOUND} or {@link #UPPER_BOUND}
+	 */
+	public static int getBound(long data) {
+		return (int) (data >>> BOUND_SHIFT) & 3;
+	}
+	
+	/**
+	 * Get the depth searched for an entry.
+	 * @param data packed data, from {@link #probe(long)}
+	 * @return 
+	 */
+	public static int getDepth(long data) {
+		return (int) (data >>> DEPTH_SHIFT) & DEPTH_MASK;
+	}
+	
+	/**
+	 * Get the best move of an entry.
+	 * @param data packed data, from {@link #probe(long)}
+	 * @return move, or -1 if none
+	 */
+	public static int getMove(long data) {
+		return (int) (data >>> MOVE_SHIFT) - 1;
+	}
+	
+	// Helper to get the generation of the search which stored an entry
+	private static int getGeneration(long data) {
+		return (int) (data >>> GENERATION_SHIFT) & GENERATION_MASK;
+	}
+	
+	// Helper to get the array index of the entry for a key
+	private int getIndex(long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> tableShift) << 1;
+	}
+	
+	/**
+	 * Get the fraction of entries in use, from a sample of the table.
+	 * @return 
+	 */
+	public double getFillRatio() {
+		int numSampled = Math.min(entries.length / 2, 1 << 16);
+		int numUsed = 0;
+		for (int index = 0; index < numSampled * 2; index += 2) {
+			if (entries[index + 1] != 0) {
+				numUsed++;
+			}
+		}
+		return (double) numUsed / numSampled;
+	}
+	
+	/**
+	 * Main method, for testing
+	 * @param args 
+	 */
+	public static void main(String[] args) {
+		TranspositionTable table = new TranspositionTable(16);
+		table.newGeneration();
+		table.store(12345L, -42, LOWER_BOUND, 7, 35);
+		long data = table.probe(12345L);
+		System.out.println("score " + getScore(data) + ", bound " + getBound(data) + ", depth " + getDepth(data)
+				+ ", move " + getMove(data) + "; other key: " + table.probe(54321L));
+		table.store(12345L, 0, EXACT, 3, -1);
+		System.out.println("shallower store, same key: depth " + getDepth(table.probe(12345L)) + ", move " + getMove(table.probe(12345L)));
+		for (int i = 0; i < 4; i++) {
+			table.newGeneration();
+		}
+		table.store(12345L, 0, EXACT, 3, -1);
+		System.out.println("same store, 4 generations later: depth " + getDepth(table.probe(12345L)) + ", move " + getMove(table.probe(12345L)));
+	}
+}